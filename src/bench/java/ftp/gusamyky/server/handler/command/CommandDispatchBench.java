@@ -0,0 +1,153 @@
+package ftp.gusamyky.server.handler.command;
+
+import ftp.gusamyky.server.common.model.ServerFileModel;
+import ftp.gusamyky.server.config.DatabaseConfig;
+import ftp.gusamyky.server.config.MetadataStoreType;
+import ftp.gusamyky.server.config.ServerConfig;
+import ftp.gusamyky.server.handler.FramedInputStream;
+import ftp.gusamyky.server.handler.codec.ProtocolCodec;
+import ftp.gusamyky.server.handler.codec.TextCodec;
+import ftp.gusamyky.server.service.ServiceFactory;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of text command dispatch, built with the {@code bench} profile:
+ * {@code [files] [seconds per run]}. Needs no database.
+ * <p>
+ * Feeds an endless pipelined stream of {@code ECHO} or {@code LIST} requests
+ * to a session's {@link TextCodec}, which resolves each one through the
+ * {@link CommandTable} and runs it the way {@code ClientHandler} does, with
+ * replies buffered and then discarded. No socket is involved, so the numbers
+ * are the server's own cost per command. LIST runs for a client owning
+ * {@code files} files in the embedded metadata store and records a history
+ * entry like on a live server. Each command is run for one warm-up round and
+ * then five measured rounds; the median commands per second and the bytes
+ * allocated per command are reported.
+ */
+public final class CommandDispatchBench {
+    private static final int RUNS = 5;
+
+    private CommandDispatchBench() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        Logger root = Logger.getLogger("");
+        root.setLevel(Level.WARNING);
+        for (Handler handler : root.getHandlers()) {
+            handler.setLevel(Level.WARNING);
+        }
+
+        Path dir = Files.createTempDirectory("dispatch-bench");
+        ServerConfig config = new ServerConfig(2121, dir.toString(), null);
+        DatabaseConfig dbConfig = new DatabaseConfig("", "", "", dir.toString(), "");
+        dbConfig.setMetadataStore(MetadataStoreType.EMBEDDED);
+        dbConfig.setEmbeddedDir(dir.resolve("metadata").toString());
+        ServiceFactory serviceFactory = new ServiceFactory(dbConfig, config);
+        serviceFactory.getUserService().register("bench", "bench");
+        int clientId = serviceFactory.getUserService().findUserByUsername("bench").getId();
+        for (int i = 0; i < files; i++) {
+            serviceFactory.getFileService().saveFile(new ServerFileModel(0, "file-" + i + ".bin", 1024, clientId,
+                    LocalDateTime.now()));
+        }
+
+        for (String request : new String[] { "ECHO hello world", "LIST" }) {
+            double[] rates = new double[RUNS];
+            double[] allocations = new double[RUNS];
+            run(serviceFactory, clientId, request, seconds);
+            for (int i = 0; i < RUNS; i++) {
+                double[] result = run(serviceFactory, clientId, request, seconds);
+                rates[i] = result[0];
+                allocations[i] = result[1];
+            }
+            Arrays.sort(rates);
+            Arrays.sort(allocations);
+            System.out.printf("%s: median %.0f commands/s, %.0f bytes allocated per command%s%n",
+                    request, rates[RUNS / 2], allocations[RUNS / 2],
+                    request.equals("LIST") ? " (" + files + " files)" : "");
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Dispatches the request repeatedly for the given time on one session.
+     *
+     * @return The commands per second and the bytes allocated per command
+     */
+    private static double[] run(ServiceFactory serviceFactory, int clientId, String request, int seconds)
+            throws IOException {
+        FramedInputStream input = new FramedInputStream(new RepeatingInputStream(request + "\n"));
+        ProtocolCodec codec = new TextCodec(input, new BufferedWriter(Writer.nullWriter()),
+                CommandTable.getInstance());
+        CommandContext context = new CommandContext(serviceFactory, codec, "127.0.0.1", input,
+                OutputStream.nullOutputStream(), null);
+        context.updateLoginState(true, "bench", clientId);
+        Command[] pending = new Command[1];
+        String[] pendingArgs = new String[1];
+        ProtocolCodec.RequestSink sink = (command, args) -> {
+            pending[0] = command;
+            pendingArgs[0] = args;
+        };
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedStart = threads.getCurrentThreadAllocatedBytes();
+        long count = 0;
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+            codec.readRequest(sink);
+            pending[0].execute(context, pendingArgs[0]);
+            if (!codec.hasRequest()) {
+                codec.flush();
+            }
+            count++;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedStart;
+        return new double[] { count / elapsed, (double) allocated / count };
+    }
+
+    /**
+     * Stream that repeats one request line forever, a client pipelining
+     * without pause.
+     */
+    private static final class RepeatingInputStream extends InputStream {
+        private final byte[] line;
+        private int position;
+
+        RepeatingInputStream(String line) {
+            this.line = line.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public int read() {
+            int b = line[position];
+            position = (position + 1) % line.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                buffer[offset + i] = line[position];
+                position = (position + 1) % line.length;
+            }
+            return length;
+        }
+    }
+}
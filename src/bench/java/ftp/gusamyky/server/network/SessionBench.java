@@ -0,0 +1,234 @@
+package ftp.gusamyky.server.network;
+
+import ftp.gusamyky.server.config.DatabaseConfig;
+import ftp.gusamyky.server.config.IoMode;
+import ftp.gusamyky.server.config.MetadataStoreType;
+import ftp.gusamyky.server.config.ServerConfig;
+import ftp.gusamyky.server.config.ThreadMode;
+import ftp.gusamyky.server.service.ServiceFactory;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of concurrent client sessions, built with the {@code bench}
+ * profile: {@code <PLATFORM|VIRTUAL> [max sessions] [loaders]}.
+ * <p>
+ * Starts the server in BLOCKING mode on the given thread mode with the
+ * embedded metadata store, so no database is needed, and opens idle sessions
+ * in steps that double up to the maximum. At each step {@code loaders}
+ * threads send {@code ECHO} round trips over all open sessions and the
+ * p50/p99 latency, throughput and live platform thread count are reported.
+ * The run stops at the first step the server cannot reach, which gives the
+ * maximum number of concurrent sessions. Client and server share the JVM and
+ * both ends of every connection use a descriptor, so {@code ulimit -n} caps
+ * the reachable sessions at about half its value.
+ */
+public final class SessionBench {
+    private static final int FIRST_STEP = 500;
+    private static final int COMMANDS_PER_STEP = 20000;
+    private static final int TIMEOUT_MS = 10000;
+    private static final byte[] ECHO = "ECHO ping\n".getBytes(StandardCharsets.US_ASCII);
+    private static final String ECHO_REPLY = "OK: ping";
+
+    private SessionBench() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SessionBench <PLATFORM|VIRTUAL> [max sessions] [loaders]");
+            System.exit(2);
+        }
+        ThreadMode threadMode = ThreadMode.valueOf(args[0].toUpperCase());
+        int maxSessions = args.length > 1 ? Integer.parseInt(args[1]) : 8000;
+        int loaders = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        Logger root = Logger.getLogger("");
+        root.setLevel(Level.WARNING);
+        for (Handler handler : root.getHandlers()) {
+            handler.setLevel(Level.WARNING);
+        }
+
+        int port = startServer(threadMode);
+        List<Session> sessions = new ArrayList<>();
+        try {
+            for (int step = Math.min(FIRST_STEP, maxSessions); ; step = Math.min(step * 2, maxSessions)) {
+                long start = System.nanoTime();
+                try {
+                    while (sessions.size() < step) {
+                        sessions.add(new Session(port));
+                    }
+                } catch (IOException | OutOfMemoryError e) {
+                    System.out.printf("%s: stopped at %d sessions: %s%n", threadMode, sessions.size(), e);
+                    break;
+                }
+                long openMs = (System.nanoTime() - start) / 1_000_000;
+                measure(threadMode, sessions, loaders, openMs);
+                if (step == maxSessions) {
+                    break;
+                }
+            }
+            System.out.printf("%s: %d concurrent sessions reached%n", threadMode, sessions.size());
+        } finally {
+            for (Session session : sessions) {
+                session.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return The port the server listens on
+     */
+    private static int startServer(ThreadMode threadMode) throws Exception {
+        Path dir = Files.createTempDirectory("session-bench");
+        int port;
+        try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = probe.getLocalPort();
+        }
+        ServerConfig config = new ServerConfig(port, dir.toString(), InetAddress.getLoopbackAddress().getHostAddress());
+        config.setIoMode(IoMode.BLOCKING);
+        config.setThreadMode(threadMode);
+        config.setMaxSessions(0);
+        config.setMaxSessionsPerIp(0);
+        DatabaseConfig dbConfig = new DatabaseConfig("", "", "", dir.toString(), "");
+        dbConfig.setMetadataStore(MetadataStoreType.EMBEDDED);
+        dbConfig.setEmbeddedDir(dir.resolve("metadata").toString());
+        ServerNetworkService server = new ServerNetworkService(config, new ServiceFactory(dbConfig, config));
+        Thread thread = new Thread(server::start, "BenchServer");
+        thread.setDaemon(true);
+        thread.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (true) {
+            try (Socket probe = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                return port;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    /**
+     * Sends ECHO round trips from {@code loaders} threads, each over its own
+     * share of the sessions in turn, so every open session takes part.
+     */
+    private static void measure(ThreadMode threadMode, List<Session> sessions, int loaders, long openMs)
+            throws InterruptedException {
+        int perLoader = COMMANDS_PER_STEP / loaders;
+        long[] latencies = new long[perLoader * loaders];
+        Thread[] threads = new Thread[loaders];
+        long start = System.nanoTime();
+        for (int l = 0; l < loaders; l++) {
+            int loader = l;
+            threads[l] = new Thread(() -> {
+                int share = loader;
+                for (int i = 0; i < perLoader; i++) {
+                    Session session = sessions.get(share);
+                    long sent = System.nanoTime();
+                    session.echo();
+                    latencies[loader * perLoader + i] = System.nanoTime() - sent;
+                    share += loaders;
+                    if (share >= sessions.size()) {
+                        share = loader;
+                    }
+                }
+            }, "BenchLoader-" + l);
+            threads[l].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies);
+        System.out.printf("%s, %d sessions (opened in %d ms, %d live platform threads): ECHO p50 %.0f us, "
+                + "p99 %.0f us, %.0f commands/s%n", threadMode, sessions.size(), openMs,
+                ManagementFactory.getThreadMXBean().getThreadCount(), latencies[latencies.length / 2] / 1e3,
+                latencies[(int) (latencies.length * 0.99)] / 1e3, latencies.length / seconds);
+    }
+
+    /**
+     * Client end of one session, reading replies through a small buffer so
+     * thousands of them stay cheap.
+     */
+    private static final class Session {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final byte[] buffer = new byte[128];
+        private int position;
+        private int limit;
+
+        Session(int port) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), TIMEOUT_MS);
+                socket.setSoTimeout(TIMEOUT_MS);
+                socket.setTcpNoDelay(true);
+                in = socket.getInputStream();
+                out = socket.getOutputStream();
+                // The greeting ends with END once the session's thread runs
+                while (!readLine().equals("END")) {
+                    // Skip the greeting
+                }
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        void echo() {
+            try {
+                out.write(ECHO);
+                String reply = readLine();
+                if (!reply.equals(ECHO_REPLY)) {
+                    throw new IllegalStateException("Unexpected reply " + reply);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Session failed", e);
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit < 0) {
+                        throw new EOFException("Server closed the session");
+                    }
+                }
+                byte b = buffer[position++];
+                if (b == '\n') {
+                    return line.toString();
+                }
+                line.append((char) b);
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing at the end of the run
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ftp.gusamyky.server.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of download sending, built with the {@code bench} profile:
+ * {@code [MiB]}. Needs no database.
+ * <p>
+ * Sends a temporary file over a loopback connection with
+ * {@link FileSender#send(Path, long, long, SocketChannel, java.io.OutputStream)},
+ * once through the socket channel, which takes the {@code transferTo} path,
+ * and once through the socket's output stream only, which takes the buffered
+ * copy loop. A thread on the other end reads and discards the data. Each case
+ * runs five times after a warm-up and the median is reported, together with
+ * the CPU time the sending thread used per GiB. The file was just written, so
+ * it is read from the page cache.
+ */
+public final class FileSenderBench {
+    private static final int RUNS = 5;
+    private static final int TIMEOUT_MS = 30000;
+
+    private FileSenderBench() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int mib = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        long count = (long) mib << 20;
+        Path path = Files.createTempFile("sender-bench", ".bin");
+        try {
+            writeFile(path, count);
+            // Warm up both paths so neither pays for the JIT
+            sendOverLoopback(path, count, true);
+            sendOverLoopback(path, count, false);
+            for (boolean zeroCopy : new boolean[] { true, false }) {
+                double[] throughput = new double[RUNS];
+                double[] cpu = new double[RUNS];
+                for (int run = 0; run < RUNS; run++) {
+                    double[] result = sendOverLoopback(path, count, zeroCopy);
+                    throughput[run] = result[0];
+                    cpu[run] = result[1];
+                }
+                Arrays.sort(throughput);
+                Arrays.sort(cpu);
+                System.out.printf("%s: median %.0f MB/s, %.0f ms sender CPU per GiB over %d downloads of %d MiB%n",
+                        zeroCopy ? "transferTo (socket channel)" : "buffered copy (output stream)",
+                        throughput[RUNS / 2], cpu[RUNS / 2], RUNS, mib);
+            }
+        } finally {
+            Files.delete(path);
+        }
+        System.exit(0);
+    }
+
+    private static void writeFile(Path path, long count) throws IOException {
+        byte[] block = new byte[1 << 20];
+        new Random(1).nextBytes(block);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < count; written += block.length) {
+                file.write(ByteBuffer.wrap(block, 0, (int) Math.min(block.length, count - written)));
+            }
+        }
+    }
+
+    /**
+     * Sends the file to a reading thread over a loopback connection.
+     *
+     * @return The throughput in MB/s and the sender's CPU time in ms per GiB
+     */
+    private static double[] sendOverLoopback(Path path, long count, boolean zeroCopy) throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(loopback, 0));
+            AtomicLong received = new AtomicLong();
+            Thread receiver = new Thread(() -> received.set(receive(loopback, server.socket().getLocalPort())),
+                    "BenchReceiver");
+            receiver.start();
+            try (SocketChannel channel = server.accept()) {
+                channel.socket().setSoTimeout(TIMEOUT_MS);
+                long cpuStart = threadCpuNanos();
+                long start = System.nanoTime();
+                long sent = zeroCopy
+                        ? FileSender.send(path, 0, count, channel, channel.socket().getOutputStream())
+                        : FileSender.send(path, 0, count, null, channel.socket().getOutputStream());
+                channel.shutdownOutput();
+                receiver.join();
+                double mbps = received.get() / 1048576.0 / ((System.nanoTime() - start) / 1e9);
+                double cpuMsPerGib = (threadCpuNanos() - cpuStart) / 1e6 / (count / (double) (1 << 30));
+                if (sent != count || received.get() != count) {
+                    throw new IllegalStateException("Sent " + sent + " and received " + received.get() + " of "
+                            + count + " bytes");
+                }
+                return new double[] { mbps, cpuMsPerGib };
+            }
+        }
+    }
+
+    private static long receive(InetAddress address, int port) {
+        try (Socket socket = new Socket(address, port)) {
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[256 * 1024];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+            return total;
+        } catch (IOException e) {
+            throw new IllegalStateException("Receiving failed", e);
+        }
+    }
+
+    private static long threadCpuNanos() {
+        return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+    }
+}
@@ -0,0 +1,287 @@
+package ftp.gusamyky.server.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Benchmark of the upload pipeline, built with the {@code bench} profile.
+ * Needs no database. Two modes:
+ * <ul>
+ * <li>{@code model [network MB/s] [disk MB/s]} paces the network and the disk
+ * with sleeps and receives 256 MiB once on a single thread and once through an
+ * {@link UploadPipeline}. The single thread should reach about the harmonic
+ * mean of the two speeds, the pipeline about the slower of them.</li>
+ * <li>{@code loopback [MiB]} uploads over a loopback socket into a temporary
+ * file with {@link FileReceiver#receive(Path, long, long, InputStream,
+ * SocketChannel, int, int)} at pipeline depth 0 and 4, through the session
+ * stream as in BLOCKING mode and through the socket channel as in NIO mode.
+ * Each case runs five times and the median is reported.</li>
+ * </ul>
+ */
+public final class UploadPipelineBench {
+    private static final int MODEL_MIB = 256;
+    private static final int RUNS = 5;
+    private static final int TIMEOUT_MS = 30000;
+    private static final int PIPELINE_DEPTH = 4;
+
+    private UploadPipelineBench() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "model";
+        if (mode.equals("model")) {
+            model(args.length > 1 ? Double.parseDouble(args[1]) : 100,
+                    args.length > 2 ? Double.parseDouble(args[2]) : 60);
+        } else if (mode.equals("loopback")) {
+            loopback(args.length > 1 ? Integer.parseInt(args[1]) : 512);
+        } else {
+            System.err.println("Usage: UploadPipelineBench model [network MB/s] [disk MB/s] | loopback [MiB]");
+            System.exit(2);
+        }
+        System.exit(0);
+    }
+
+    private static void model(double networkMbps, double diskMbps) throws IOException {
+        long total = (long) MODEL_MIB << 20;
+        Path path = Files.createTempFile("pipeline-bench", ".bin");
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(UploadPipeline.BUFFER_SIZE);
+            long start = System.nanoTime();
+            for (long position = 0; position < total; position += buffer.capacity()) {
+                buffer.clear();
+                receive(buffer, networkMbps);
+                buffer.flip();
+                pace(buffer.remaining(), diskMbps);
+                file.write(buffer, position);
+            }
+            double sequential = mbps(total, start);
+
+            int stalls;
+            start = System.nanoTime();
+            try (UploadPipeline pipeline = new UploadPipeline(new PacedChannel(file, diskMbps), 0, PIPELINE_DEPTH)) {
+                for (long position = 0; position < total; position += UploadPipeline.BUFFER_SIZE) {
+                    ByteBuffer next = pipeline.take();
+                    receive(next, networkMbps);
+                    next.flip();
+                    pipeline.put(next);
+                }
+                if (pipeline.finish() != total) {
+                    throw new IllegalStateException("Pipeline wrote a wrong number of bytes");
+                }
+                stalls = pipeline.getStalls();
+            }
+            double pipelined = mbps(total, start);
+            System.out.printf("network %.0f MB/s, disk %.0f MB/s: sequential %.1f MB/s (harmonic bound %.1f), "
+                    + "pipelined %.1f MB/s (bound %.1f), %d stalls%n", networkMbps, diskMbps, sequential,
+                    1 / (1 / networkMbps + 1 / diskMbps), pipelined, Math.min(networkMbps, diskMbps), stalls);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void loopback(int mib) throws Exception {
+        long count = (long) mib << 20;
+        byte[] block = new byte[1 << 20];
+        new Random(1).nextBytes(block);
+        Path path = Files.createTempFile("pipeline-bench", ".bin");
+        try {
+            for (boolean useChannel : new boolean[] { false, true }) {
+                for (int depth : new int[] { 0, PIPELINE_DEPTH }) {
+                    double[] results = new double[RUNS];
+                    for (int run = 0; run < RUNS; run++) {
+                        results[run] = receiveOverLoopback(path, count, block, useChannel, depth);
+                    }
+                    Arrays.sort(results);
+                    System.out.printf("%s, depth %d: median %.0f MB/s over %d uploads of %d MiB%n",
+                            useChannel ? "socket channel (NIO)" : "session stream (BLOCKING)", depth,
+                            results[RUNS / 2], RUNS, mib);
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Sends {@code count} bytes from another thread over a loopback connection
+     * and receives them into the file.
+     *
+     * @return The throughput in MB/s
+     */
+    private static double receiveOverLoopback(Path path, long count, byte[] block, boolean useChannel, int depth)
+            throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(loopback, 0));
+            Thread sender = new Thread(() -> send(loopback, server.socket().getLocalPort(), count, block),
+                    "BenchSender");
+            sender.start();
+            try (SocketChannel channel = server.accept()) {
+                Socket socket = channel.socket();
+                socket.setSoTimeout(TIMEOUT_MS);
+                long start = System.nanoTime();
+                long received = useChannel
+                        ? FileReceiver.receive(path, 0, count, InputStream.nullInputStream(), channel, TIMEOUT_MS,
+                                depth)
+                        : FileReceiver.receive(path, 0, count, socket.getInputStream(), null, TIMEOUT_MS, depth);
+                double result = mbps(received, start);
+                if (received != count) {
+                    throw new IllegalStateException("Received " + received + " of " + count + " bytes");
+                }
+                return result;
+            } finally {
+                sender.join();
+            }
+        }
+    }
+
+    private static void send(InetAddress address, int port, long count, byte[] block) {
+        try (Socket socket = new Socket(address, port)) {
+            OutputStream out = socket.getOutputStream();
+            for (long sent = 0; sent < count; sent += block.length) {
+                out.write(block, 0, (int) Math.min(block.length, count - sent));
+            }
+            out.flush();
+            // Keep the connection open until the receiver is done
+            socket.getInputStream().read();
+        } catch (IOException e) {
+            throw new IllegalStateException("Sending failed", e);
+        }
+    }
+
+    private static void receive(ByteBuffer buffer, double mbps) throws IOException {
+        pace(buffer.remaining(), mbps);
+        buffer.position(buffer.limit());
+    }
+
+    private static void pace(long bytes, double mbps) throws IOException {
+        try {
+            Thread.sleep((long) (bytes / (mbps * 1048.576)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static double mbps(long bytes, long startNanos) {
+        return bytes / 1048576.0 / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    /**
+     * File channel whose positional writes are paced like a disk of the given
+     * speed. The pipeline uses nothing else.
+     */
+    private static final class PacedChannel extends FileChannel {
+        private final FileChannel file;
+        private final double mbps;
+
+        PacedChannel(FileChannel file, double mbps) {
+            this.file = file;
+            this.mbps = mbps;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            pace(src.remaining(), mbps);
+            return file.write(src, position);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long position() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long size() throws IOException {
+            return file.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void force(boolean metaData) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void implCloseChannel() {
+            // The underlying file is closed by its owner
+        }
+    }
+}
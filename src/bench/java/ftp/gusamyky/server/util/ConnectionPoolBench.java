@@ -0,0 +1,129 @@
+package ftp.gusamyky.server.util;
+
+import ftp.gusamyky.server.config.DatabaseConfig;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmark of {@link ConnectionPool} against opening a connection per query
+ * with {@link DriverManager#getConnection(String, String, String)}, built with
+ * the {@code bench} profile: {@code [jdbc url] [user] [password] [threads]}.
+ * <p>
+ * Each of {@code threads} threads borrows a connection, runs
+ * {@code SELECT 1} and closes the connection, as a repository call does, for
+ * a fixed time. The pool holds as many connections as there are threads.
+ * Both cases get a warm-up round and three measured rounds; the median
+ * queries per second and p50/p99 latency of connect plus query are reported.
+ * The JDBC driver has to be on the classpath. The default URL is an in-memory
+ * H2 database, where opening a connection costs no network round trip; a
+ * server URL such as {@code jdbc:h2:tcp://...} or {@code jdbc:mysql://...}
+ * shows the cost a real deployment avoids.
+ */
+public final class ConnectionPoolBench {
+    private static final int RUNS = 3;
+    private static final long RUN_NANOS = 3_000_000_000L;
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    private ConnectionPoolBench() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "jdbc:h2:mem:poolbench;DB_CLOSE_DELAY=-1";
+        String user = args.length > 1 ? args[1] : "sa";
+        String password = args.length > 2 ? args[2] : "";
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        Logger root = Logger.getLogger("");
+        root.setLevel(Level.WARNING);
+        for (Handler handler : root.getHandlers()) {
+            handler.setLevel(Level.WARNING);
+        }
+
+        DatabaseConfig config = new DatabaseConfig(url, user, password, ".", url);
+        config.setMaxConnections(threads);
+        ConnectionPool pool = new ConnectionPool(config);
+        pool.start();
+        try {
+            measure("ConnectionPool", threads, pool::getConnection);
+            measure("DriverManager", threads, () -> DriverManager.getConnection(url, user, password));
+            System.out.println(pool);
+        } finally {
+            pool.shutdown();
+        }
+        System.exit(0);
+    }
+
+    private static void measure(String name, int threads, ConnectionSource source) throws Exception {
+        round(threads, source);
+        double[] rates = new double[RUNS];
+        double[] p50 = new double[RUNS];
+        double[] p99 = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            double[] result = round(threads, source);
+            rates[i] = result[0];
+            p50[i] = result[1];
+            p99[i] = result[2];
+        }
+        Arrays.sort(rates);
+        Arrays.sort(p50);
+        Arrays.sort(p99);
+        System.out.printf("%s, %d threads: median %.0f queries/s, p50 %.0f us, p99 %.0f us%n", name, threads,
+                rates[RUNS / 2], p50[RUNS / 2], p99[RUNS / 2]);
+    }
+
+    /**
+     * @return The queries per second and the p50 and p99 latency in
+     *         microseconds
+     */
+    private static double[] round(int threads, ConnectionSource source) throws InterruptedException {
+        long[][] samples = new long[threads][MAX_SAMPLES / threads];
+        int[] counts = new int[threads];
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        long deadline = start + RUN_NANOS;
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                long[] latencies = samples[worker];
+                int count = 0;
+                while (count < latencies.length && System.nanoTime() < deadline) {
+                    long begin = System.nanoTime();
+                    try (Connection connection = source.get();
+                            Statement statement = connection.createStatement();
+                            ResultSet rs = statement.executeQuery("SELECT 1")) {
+                        rs.next();
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Query failed", e);
+                    }
+                    latencies[count++] = System.nanoTime() - begin;
+                }
+                counts[worker] = count;
+            }, "BenchWorker-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int total = Arrays.stream(counts).sum();
+        long[] all = new long[total];
+        int offset = 0;
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(samples[t], 0, all, offset, counts[t]);
+            offset += counts[t];
+        }
+        Arrays.sort(all);
+        return new double[] { total / seconds, all[total / 2] / 1e3, all[(int) (total * 0.99)] / 1e3 };
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection get() throws SQLException;
+    }
+}
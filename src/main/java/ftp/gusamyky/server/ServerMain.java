@@ -3,6 +3,7 @@ package ftp.gusamyky.server;
 import ftp.gusamyky.server.config.ConfigLoader;
 import ftp.gusamyky.server.config.ServerConfig;
 import ftp.gusamyky.server.config.DatabaseConfig;
+import ftp.gusamyky.server.config.MetadataStoreType;
 import ftp.gusamyky.server.service.ServiceFactory;
 import ftp.gusamyky.server.util.DatabaseInitializer;
 import ftp.gusamyky.server.network.ServerNetworkService;
@@ -25,12 +26,14 @@ public class ServerMain {
             ServerConfig serverConfig = ConfigLoader.loadServerConfig();
             DatabaseConfig dbConfig = ConfigLoader.loadDatabaseConfig();
 
-            // Verify database connection
-            LOGGER.info("Verifying database connection...");
-            verifyDatabaseConnection(dbConfig);
+            if (dbConfig.getMetadataStore() == MetadataStoreType.MYSQL) {
+                // Verify database connection
+                LOGGER.info("Verifying database connection...");
+                verifyDatabaseConnection(dbConfig);
+                DatabaseInitializer.initialize(dbConfig);
+            }
 
             // Initialize services
-            DatabaseInitializer.initialize(dbConfig);
             ServiceFactory serviceFactory = new ServiceFactory(dbConfig, serverConfig);
             networkService = new ServerNetworkService(serverConfig, serviceFactory);
 
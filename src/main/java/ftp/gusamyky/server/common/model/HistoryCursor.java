@@ -0,0 +1,70 @@
+package ftp.gusamyky.server.common.model;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Position in a client's history, newest first, handed to clients as an
+ * opaque token. A page that continues from a cursor starts with the first
+ * operation older than the one the cursor was taken from, so concurrent inserts
+ * never shift or repeat entries between pages.
+ * <p>
+ * The token is the URL-safe Base64 encoding of the operation's timestamp
+ * (epoch seconds i64, nanoseconds i32) and id (i32).
+ */
+public class HistoryCursor {
+    private static final int ENCODED_SIZE = 16;
+    private final LocalDateTime timestamp;
+    private final int id;
+
+    public HistoryCursor(LocalDateTime timestamp, int id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * @param operation The last operation of a page
+     * @return The cursor the next page continues from
+     */
+    public static HistoryCursor after(OperationHistoryModel operation) {
+        return new HistoryCursor(operation.getTimestamp(), operation.getId());
+    }
+
+    /**
+     * @param token A token produced by {@link #encode()}
+     * @return The decoded cursor
+     * @throws IllegalArgumentException If the token is malformed
+     */
+    public static HistoryCursor decode(String token) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length != ENCODED_SIZE) {
+            throw new IllegalArgumentException("Cursor has " + bytes.length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        int id = buffer.getInt();
+        if (nano < 0 || nano > 999_999_999) {
+            throw new IllegalArgumentException("Cursor has an invalid timestamp");
+        }
+        return new HistoryCursor(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC), id);
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_SIZE)
+                .putLong(timestamp.toEpochSecond(ZoneOffset.UTC))
+                .putInt(timestamp.getNano())
+                .putInt(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,62 @@
+package ftp.gusamyky.server.common.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * One page of a client's operation history: the operations matching the
+ * filters, newest first, starting after an optional cursor. Filters that are
+ * null are not applied.
+ */
+public class HistoryQuery {
+    private final int clientId;
+    private final OperationType type;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final HistoryCursor after;
+    private final int limit;
+
+    /**
+     * @param clientId The client whose history to read
+     * @param type     Only operations of this type
+     * @param from     Only operations at or after this time
+     * @param to       Only operations before this time
+     * @param after    Only operations older than this position
+     * @param limit    The maximum number of operations to read
+     */
+    public HistoryQuery(int clientId, OperationType type, LocalDateTime from, LocalDateTime to,
+            HistoryCursor after, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("History query limit must be at least 1");
+        }
+        this.clientId = clientId;
+        this.type = type;
+        this.from = from;
+        this.to = to;
+        this.after = after;
+        this.limit = limit;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public HistoryCursor getAfter() {
+        return after;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
@@ -5,13 +5,37 @@ import java.time.LocalDateTime;
 public class OperationHistoryModel {
     private int id;
     private int clientId;
-    private String operation;
+    private OperationType type;
+    private OperationResult result;
+    private String filename;
+    private Long bytes;
+    private Long durationMs;
+    private String clientIp;
     private LocalDateTime timestamp;
 
-    public OperationHistoryModel(int id, int clientId, String operation, LocalDateTime timestamp) {
+    /**
+     * Creates a history entry.
+     *
+     * @param id         The database ID, or 0 for a new entry
+     * @param clientId   The ID of the client that performed the operation
+     * @param type       The kind of operation
+     * @param result     The outcome of the operation
+     * @param filename   The file the operation concerned, or null
+     * @param bytes      The number of bytes transferred, or null
+     * @param durationMs How long the operation took in milliseconds, or null
+     * @param clientIp   The IP address the client connected from, or null
+     * @param timestamp  When the operation was performed
+     */
+    public OperationHistoryModel(int id, int clientId, OperationType type, OperationResult result, String filename,
+            Long bytes, Long durationMs, String clientIp, LocalDateTime timestamp) {
         this.id = id;
         this.clientId = clientId;
-        this.operation = operation;
+        this.type = type;
+        this.result = result;
+        this.filename = filename;
+        this.bytes = bytes;
+        this.durationMs = durationMs;
+        this.clientIp = clientIp;
         this.timestamp = timestamp;
     }
 
@@ -23,8 +47,28 @@ public class OperationHistoryModel {
         return clientId;
     }
 
-    public String getOperation() {
-        return operation;
+    public OperationType getType() {
+        return type;
+    }
+
+    public OperationResult getResult() {
+        return result;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public Long getBytes() {
+        return bytes;
+    }
+
+    public Long getDurationMs() {
+        return durationMs;
+    }
+
+    public String getClientIp() {
+        return clientIp;
     }
 
     public LocalDateTime getTimestamp() {
@@ -39,21 +83,64 @@ public class OperationHistoryModel {
         this.clientId = clientId;
     }
 
-    public void setOperation(String operation) {
-        this.operation = operation;
+    public void setType(OperationType type) {
+        this.type = type;
+    }
+
+    public void setResult(OperationResult result) {
+        this.result = result;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public void setBytes(Long bytes) {
+        this.bytes = bytes;
+    }
+
+    public void setDurationMs(Long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public void setClientIp(String clientIp) {
+        this.clientIp = clientIp;
     }
 
     public void setTimestamp(LocalDateTime timestamp) {
         this.timestamp = timestamp;
     }
 
+    /**
+     * @return A one-line description such as
+     *         {@code UPLOAD OK report.pdf 1024 B 12 ms}
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder().append(type).append(' ').append(result);
+        if (filename != null) {
+            sb.append(' ').append(filename);
+        }
+        if (bytes != null) {
+            sb.append(' ').append(bytes).append(" B");
+        }
+        if (durationMs != null) {
+            sb.append(' ').append(durationMs).append(" ms");
+        }
+        return sb.toString();
+    }
+
     @Override
     public String toString() {
         return "OperationHistoryModel{" +
                 "id=" + id +
                 ", clientId=" + clientId +
-                ", operation='" + operation + '\'' +
+                ", type=" + type +
+                ", result=" + result +
+                ", filename='" + filename + '\'' +
+                ", bytes=" + bytes +
+                ", durationMs=" + durationMs +
+                ", clientIp='" + clientIp + '\'' +
                 ", timestamp=" + timestamp +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,37 @@
+package ftp.gusamyky.server.common.model;
+
+/**
+ * Outcome of an operation recorded in the operation history.
+ */
+public enum OperationResult {
+    OK,
+    NO_FILENAME,
+    NO_SIZE,
+    INVALID_SIZE,
+    FILE_NOT_FOUND,
+    FILE_NOT_FOUND_ON_SERVER,
+    ACCESS_DENIED,
+    TRANSFER_ERROR,
+    IO_ERROR,
+    INVALID_OFFSET,
+
+    /**
+     * A failure whose reason could not be recognized.
+     */
+    ERROR;
+
+    /**
+     * Looks up a result by name, falling back to {@link #ERROR}.
+     *
+     * @param name The result name
+     * @return The result
+     */
+    public static OperationResult fromName(String name) {
+        for (OperationResult result : values()) {
+            if (result.name().equalsIgnoreCase(name)) {
+                return result;
+            }
+        }
+        return ERROR;
+    }
+}
@@ -0,0 +1,66 @@
+package ftp.gusamyky.server.common.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregated operation history of one client for one operation type and
+ * result, as computed by the database.
+ */
+public class OperationSummaryModel {
+    private final OperationType type;
+    private final OperationResult result;
+    private final long count;
+    private final long totalBytes;
+    private final Double averageDurationMs;
+    private final LocalDateTime lastTimestamp;
+
+    public OperationSummaryModel(OperationType type, OperationResult result, long count, long totalBytes,
+            Double averageDurationMs, LocalDateTime lastTimestamp) {
+        this.type = type;
+        this.result = result;
+        this.count = count;
+        this.totalBytes = totalBytes;
+        this.averageDurationMs = averageDurationMs;
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    public OperationResult getResult() {
+        return result;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return The average duration in milliseconds, or null if no entry
+     *         recorded one
+     */
+    public Double getAverageDurationMs() {
+        return averageDurationMs;
+    }
+
+    public LocalDateTime getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationSummaryModel{" +
+                "type=" + type +
+                ", result=" + result +
+                ", count=" + count +
+                ", totalBytes=" + totalBytes +
+                ", averageDurationMs=" + averageDurationMs +
+                ", lastTimestamp=" + lastTimestamp +
+                '}';
+    }
+}
@@ -0,0 +1,32 @@
+package ftp.gusamyky.server.common.model;
+
+/**
+ * Kind of operation recorded in the operation history.
+ */
+public enum OperationType {
+    LIST,
+    UPLOAD,
+    DOWNLOAD,
+    LOGOUT,
+
+    /**
+     * An operation recorded before history entries were typed whose kind could
+     * not be recognized.
+     */
+    OTHER;
+
+    /**
+     * Looks up a type by name, ignoring case.
+     *
+     * @param name The type name
+     * @return The type, or null if there is none with that name
+     */
+    public static OperationType fromName(String name) {
+        for (OperationType type : values()) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
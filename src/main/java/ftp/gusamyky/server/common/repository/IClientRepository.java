@@ -5,6 +5,11 @@ import ftp.gusamyky.server.common.model.ClientModel;
 public interface IClientRepository {
     ClientModel findById(int id);
 
+    /**
+     * @return The client of that name, or null if there is none
+     * @throws ftp.gusamyky.server.common.exception.DatabaseException If the
+     *         lookup fails, so that a failure is not taken for a missing client
+     */
     ClientModel findByUsername(String username);
 
     void save(ClientModel client);
@@ -12,5 +12,17 @@ public interface IFileRepository {
 
     void delete(int id);
 
+    /**
+     * @return A file of that name, or null if there is none
+     * @throws ftp.gusamyky.server.common.exception.DatabaseException If the
+     *         lookup fails, so that a failure is not taken for a missing file
+     */
     ServerFileModel findByFilename(String filename);
+
+    /**
+     * @return The owner's file of that name, or null if there is none
+     * @throws ftp.gusamyky.server.common.exception.DatabaseException If the
+     *         lookup fails, so that a failure is not taken for a missing file
+     */
+    ServerFileModel findByOwnerAndFilename(int ownerId, String filename);
 }
\ No newline at end of file
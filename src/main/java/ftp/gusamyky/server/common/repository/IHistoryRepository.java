@@ -1,10 +1,80 @@
 package ftp.gusamyky.server.common.repository;
 
+import ftp.gusamyky.server.common.model.HistoryQuery;
 import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationSummaryModel;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface IHistoryRepository {
-    List<OperationHistoryModel> findByClientId(int clientId);
+    /**
+     * Receives history rows one at a time while they are read.
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        void accept(OperationHistoryModel operation) throws IOException;
+    }
+
+    /**
+     * Reads a page of a client's history, newest first, and hands each row to
+     * the handler as soon as it arrives from the database, so no more than one
+     * row is held in memory.
+     *
+     * @param query   The filters, cursor and limit of the page
+     * @param handler Receives the rows
+     * @throws IOException If the handler fails; the query is abandoned
+     * @throws ftp.gusamyky.server.common.exception.DatabaseException If the
+     *                                                                query
+     *                                                                fails
+     */
+    void streamByClientId(HistoryQuery query, RowHandler handler) throws IOException;
+
+    /**
+     * Aggregates a client's history per operation type and result in the
+     * database, from the daily totals of purged days and the individual
+     * operations of recent ones.
+     *
+     * @param clientId The client whose history to summarize
+     * @param from     The first day to include, or null for no lower bound
+     * @param to       The first day to exclude, or null for no upper bound
+     * @return One summary per operation type and result
+     * @throws ftp.gusamyky.server.common.exception.DatabaseException If the
+     *                                                                history
+     *                                                                could not
+     *                                                                be read
+     */
+    List<OperationSummaryModel> summarizeByClientId(int clientId, LocalDate from, LocalDate to);
+
+    /**
+     * Adds the oldest operations recorded before the cutoff to the daily totals
+     * and deletes them, in one transaction, so every operation is counted
+     * exactly once whether it has been purged or not. Operations without a
+     * client are deleted without being added to any totals, since no report
+     * can include them.
+     *
+     * @param cutoff Operations recorded before this time are purged
+     * @param limit  The maximum number of operations to purge
+     * @return The number of operations purged; less than the limit once no
+     *         older operations are left
+     * @throws ftp.gusamyky.server.common.exception.DatabaseException If the
+     *                                                                chunk
+     *                                                                could not
+     *                                                                be purged
+     */
+    int rollUpAndPurge(LocalDateTime cutoff, int limit);
 
     void save(OperationHistoryModel operation);
-}
\ No newline at end of file
+
+    /**
+     * Inserts the operations in one transaction using a JDBC batch.
+     *
+     * @param operations The operations to insert
+     * @throws ftp.gusamyky.server.common.exception.DatabaseException If the
+     *                                                                batch
+     *                                                                could not
+     *                                                                be written
+     */
+    void saveBatch(List<OperationHistoryModel> operations);
+}
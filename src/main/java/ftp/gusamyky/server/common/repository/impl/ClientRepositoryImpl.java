@@ -1,10 +1,10 @@
 package ftp.gusamyky.server.common.repository.impl;
 
+import ftp.gusamyky.server.common.exception.DatabaseException;
 import ftp.gusamyky.server.common.model.ClientModel;
 import ftp.gusamyky.server.common.repository.IClientRepository;
-import ftp.gusamyky.server.config.DatabaseConfig;
+import ftp.gusamyky.server.util.ConnectionPool;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -13,14 +13,14 @@ import java.util.logging.Level;
 
 public class ClientRepositoryImpl implements IClientRepository {
     private static final Logger LOGGER = Logger.getLogger(ClientRepositoryImpl.class.getName());
-    private final DatabaseConfig config;
+    private final ConnectionPool connectionPool;
 
-    public ClientRepositoryImpl(DatabaseConfig config) {
-        this.config = config;
+    public ClientRepositoryImpl(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
     }
 
     private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword());
+        return connectionPool.getConnection();
     }
 
     @Override
@@ -58,7 +58,7 @@ public class ClientRepositoryImpl implements IClientRepository {
                 }
             }
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error finding client by username: " + username, e);
+            throw new DatabaseException("Error finding client by username: " + username, e);
         }
         return null;
     }
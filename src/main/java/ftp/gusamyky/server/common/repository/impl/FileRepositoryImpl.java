@@ -1,10 +1,10 @@
 package ftp.gusamyky.server.common.repository.impl;
 
+import ftp.gusamyky.server.common.exception.DatabaseException;
 import ftp.gusamyky.server.common.model.ServerFileModel;
 import ftp.gusamyky.server.common.repository.IFileRepository;
-import ftp.gusamyky.server.config.DatabaseConfig;
+import ftp.gusamyky.server.util.ConnectionPool;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -15,14 +15,14 @@ import java.util.logging.Level;
 
 public class FileRepositoryImpl implements IFileRepository {
     private static final Logger LOGGER = Logger.getLogger(FileRepositoryImpl.class.getName());
-    private final DatabaseConfig config;
+    private final ConnectionPool connectionPool;
 
-    public FileRepositoryImpl(DatabaseConfig config) {
-        this.config = config;
+    public FileRepositoryImpl(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
     }
 
     private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword());
+        return connectionPool.getConnection();
     }
 
     @Override
@@ -132,7 +132,30 @@ public class FileRepositoryImpl implements IFileRepository {
                 }
             }
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error finding file by name: " + filename, e);
+            throw new DatabaseException("Error finding file by name: " + filename, e);
+        }
+        return null;
+    }
+
+    @Override
+    public ServerFileModel findByOwnerAndFilename(int ownerId, String filename) {
+        String sql = "SELECT id, filename, size, owner_id, created_at FROM Pliki WHERE owner_id = ? AND filename = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, ownerId);
+            stmt.setString(2, filename);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new ServerFileModel(
+                            rs.getInt("id"),
+                            rs.getString("filename"),
+                            rs.getLong("size"),
+                            rs.getInt("owner_id"),
+                            rs.getTimestamp("created_at").toLocalDateTime());
+                }
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Error finding file " + filename + " of owner ID: " + ownerId, e);
         }
         return null;
     }
@@ -1,51 +1,237 @@
 package ftp.gusamyky.server.common.repository.impl;
 
+import ftp.gusamyky.server.common.exception.DatabaseException;
+import ftp.gusamyky.server.common.model.HistoryCursor;
+import ftp.gusamyky.server.common.model.HistoryQuery;
 import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationSummaryModel;
+import ftp.gusamyky.server.common.model.OperationType;
 import ftp.gusamyky.server.common.repository.IHistoryRepository;
-import ftp.gusamyky.server.config.DatabaseConfig;
+import ftp.gusamyky.server.util.ConnectionPool;
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
 public class HistoryRepositoryImpl implements IHistoryRepository {
     private static final Logger LOGGER = Logger.getLogger(HistoryRepositoryImpl.class.getName());
-    private final DatabaseConfig config;
+    private static final String COLUMNS = "id, client_id, op_type, result_code, filename, bytes, duration_ms, "
+            + "client_ip, timestamp";
+    private static final String INSERT_SQL = "INSERT INTO HistoriaOperacji (client_id, op_type, result_code, "
+            + "filename, bytes, duration_ms, client_ip, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_EXPIRED_SQL = "SELECT id, client_id, op_type, result_code, bytes, "
+            + "duration_ms, timestamp FROM HistoriaOperacji WHERE timestamp < ? ORDER BY timestamp, id LIMIT ?";
+    private static final String UPSERT_DAILY_SQL = "INSERT INTO HistoriaDzienna (client_id, op_day, op_type, "
+            + "result_code, operations, total_bytes, total_duration_ms, timed_operations, last_timestamp) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+            + "operations = operations + VALUES(operations), total_bytes = total_bytes + VALUES(total_bytes), "
+            + "total_duration_ms = total_duration_ms + VALUES(total_duration_ms), "
+            + "timed_operations = timed_operations + VALUES(timed_operations), "
+            + "last_timestamp = GREATEST(last_timestamp, VALUES(last_timestamp))";
+    private final ConnectionPool connectionPool;
+    private final int fetchSize;
 
-    public HistoryRepositoryImpl(DatabaseConfig config) {
-        this.config = config;
+    /**
+     * @param connectionPool The pool to borrow connections from
+     * @param fetchSize      How many rows of a history page the driver fetches
+     *                       per round trip
+     */
+    public HistoryRepositoryImpl(ConnectionPool connectionPool, int fetchSize) {
+        this.connectionPool = connectionPool;
+        this.fetchSize = fetchSize;
     }
 
     private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword());
+        return connectionPool.getConnection();
     }
 
+    /**
+     * Pages by keyset: a cursor turns into a {@code (timestamp, id)} bound, so
+     * every page is a range scan on the index on
+     * {@code (client_id[, op_type], timestamp, id)} however deep it is.
+     */
     @Override
-    public List<OperationHistoryModel> findByClientId(int clientId) {
-        String sql = "SELECT id, client_id, operation, timestamp FROM HistoriaOperacji WHERE client_id = ? ORDER BY timestamp DESC";
-        List<OperationHistoryModel> history = new ArrayList<>();
+    public void streamByClientId(HistoryQuery query, RowHandler handler) throws IOException {
+        HistoryCursor after = query.getAfter();
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+                .append(" FROM HistoriaOperacji WHERE client_id = ?");
+        if (query.getType() != null) {
+            sql.append(" AND op_type = ?");
+        }
+        if (query.getFrom() != null) {
+            sql.append(" AND timestamp >= ?");
+        }
+        if (query.getTo() != null) {
+            sql.append(" AND timestamp < ?");
+        }
+        if (after != null) {
+            sql.append(" AND (timestamp < ? OR (timestamp = ? AND id < ?))");
+        }
+        sql.append(" ORDER BY timestamp DESC, id DESC LIMIT ?");
+
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(fetchSize);
+            int index = 1;
+            stmt.setInt(index++, query.getClientId());
+            if (query.getType() != null) {
+                stmt.setString(index++, query.getType().name());
+            }
+            if (query.getFrom() != null) {
+                stmt.setObject(index++, query.getFrom());
+            }
+            if (query.getTo() != null) {
+                stmt.setObject(index++, query.getTo());
+            }
+            if (after != null) {
+                stmt.setObject(index++, after.getTimestamp());
+                stmt.setObject(index++, after.getTimestamp());
+                stmt.setInt(index++, after.getId());
+            }
+            stmt.setInt(index, query.getLimit());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.accept(mapRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Error reading history for client ID: " + query.getClientId(), e);
+        }
+    }
+
+    @Override
+    public List<OperationSummaryModel> summarizeByClientId(int clientId, LocalDate from, LocalDate to) {
+        String sql = "SELECT op_type, result_code, SUM(operations) AS operations, SUM(total_bytes) AS total_bytes, "
+                + "SUM(total_duration_ms) / NULLIF(SUM(timed_operations), 0) AS avg_duration_ms, "
+                + "MAX(last_timestamp) AS last_timestamp FROM ("
+                + "SELECT op_type, result_code, COUNT(*) AS operations, COALESCE(SUM(bytes), 0) AS total_bytes, "
+                + "COALESCE(SUM(duration_ms), 0) AS total_duration_ms, COUNT(duration_ms) AS timed_operations, "
+                + "MAX(timestamp) AS last_timestamp FROM HistoriaOperacji WHERE client_id = ?"
+                + (from != null ? " AND timestamp >= ?" : "") + (to != null ? " AND timestamp < ?" : "")
+                + " GROUP BY op_type, result_code"
+                + " UNION ALL SELECT op_type, result_code, operations, total_bytes, total_duration_ms, "
+                + "timed_operations, last_timestamp FROM HistoriaDzienna WHERE client_id = ?"
+                + (from != null ? " AND op_day >= ?" : "") + (to != null ? " AND op_day < ?" : "")
+                + ") totals GROUP BY op_type, result_code ORDER BY op_type, result_code";
+        List<OperationSummaryModel> summary = new ArrayList<>();
 
         try (Connection conn = getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, clientId);
+            int index = 1;
+            stmt.setInt(index++, clientId);
+            if (from != null) {
+                stmt.setObject(index++, from.atStartOfDay());
+            }
+            if (to != null) {
+                stmt.setObject(index++, to.atStartOfDay());
+            }
+            stmt.setInt(index++, clientId);
+            if (from != null) {
+                stmt.setObject(index++, from);
+            }
+            if (to != null) {
+                stmt.setObject(index, to);
+            }
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    history.add(new OperationHistoryModel(
-                            rs.getInt("id"),
-                            rs.getInt("client_id"),
-                            rs.getString("operation"),
-                            rs.getTimestamp("timestamp").toLocalDateTime()));
+                    double avgDuration = rs.getDouble("avg_duration_ms");
+                    Double averageDurationMs = rs.wasNull() ? null : avgDuration;
+                    Timestamp last = rs.getTimestamp("last_timestamp");
+                    summary.add(new OperationSummaryModel(
+                            parseType(rs.getString("op_type")),
+                            OperationResult.fromName(rs.getString("result_code")),
+                            rs.getLong("operations"),
+                            rs.getLong("total_bytes"),
+                            averageDurationMs,
+                            last != null ? last.toLocalDateTime() : null));
                 }
             }
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error finding history for client ID: " + clientId, e);
+            throw new DatabaseException("Error summarizing history for client ID: " + clientId, e);
+        }
+        return summary;
+    }
+
+    /**
+     * Reads the chunk through the index on {@code (timestamp, id)} and deletes
+     * it by primary key, so each transaction only locks the rows it purges.
+     */
+    @Override
+    public int rollUpAndPurge(LocalDateTime cutoff, int limit) {
+        Map<DailyKey, DailyTotals> totals = new HashMap<>();
+        int[] ids = new int[limit];
+        int count = 0;
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT_EXPIRED_SQL)) {
+                stmt.setObject(1, cutoff);
+                stmt.setInt(2, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids[count++] = rs.getInt("id");
+                        int clientId = rs.getInt("client_id");
+                        if (rs.wasNull()) {
+                            // Not attributable to any client: no report can include it and the
+                            // daily totals need a client, so it is purged without being rolled up
+                            continue;
+                        }
+                        long bytes = rs.getLong("bytes");
+                        long duration = rs.getLong("duration_ms");
+                        boolean timed = !rs.wasNull();
+                        LocalDateTime timestamp = rs.getTimestamp("timestamp").toLocalDateTime();
+                        DailyKey key = new DailyKey(clientId, timestamp.toLocalDate(), rs.getString("op_type"),
+                                rs.getString("result_code"));
+                        totals.computeIfAbsent(key, k -> new DailyTotals()).add(bytes, duration, timed, timestamp);
+                    }
+                }
+            }
+            if (count == 0) {
+                return 0;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(UPSERT_DAILY_SQL)) {
+                for (Map.Entry<DailyKey, DailyTotals> entry : totals.entrySet()) {
+                    DailyKey key = entry.getKey();
+                    DailyTotals daily = entry.getValue();
+                    stmt.setInt(1, key.clientId());
+                    stmt.setObject(2, key.day());
+                    stmt.setString(3, key.type());
+                    stmt.setString(4, key.result());
+                    stmt.setLong(5, daily.operations);
+                    stmt.setLong(6, daily.bytes);
+                    stmt.setLong(7, daily.durationMs);
+                    stmt.setLong(8, daily.timedOperations);
+                    stmt.setObject(9, daily.last);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            String delete = "DELETE FROM HistoriaOperacji WHERE id IN ("
+                    + String.join(", ", Collections.nCopies(count, "?")) + ")";
+            try (PreparedStatement stmt = conn.prepareStatement(delete)) {
+                for (int i = 0; i < count; i++) {
+                    stmt.setInt(i + 1, ids[i]);
+                }
+                stmt.executeUpdate();
+            }
+            conn.commit();
+            return count;
+        } catch (SQLException e) {
+            throw new DatabaseException("Error purging operation history recorded before " + cutoff, e);
         }
-        return history;
     }
 
     @Override
@@ -55,16 +241,100 @@ public class HistoryRepositoryImpl implements IHistoryRepository {
             return;
         }
 
-        String sql = "INSERT INTO HistoriaOperacji (client_id, operation, timestamp) VALUES (?, ?, ?)";
         try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, history.getClientId());
-            stmt.setString(2, history.getOperation());
-            stmt.setObject(3, history.getTimestamp());
+                PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            bind(stmt, history);
             stmt.executeUpdate();
             LOGGER.info("Successfully saved operation history for client ID: " + history.getClientId());
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "Error saving operation history for client ID: " + history.getClientId(), e);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void saveBatch(List<OperationHistoryModel> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            conn.setAutoCommit(false);
+            for (OperationHistoryModel history : operations) {
+                bind(stmt, history);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            conn.commit();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Saved batch of " + operations.size() + " operation history records");
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Error saving batch of " + operations.size() + " operation history records",
+                    e);
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, OperationHistoryModel history) throws SQLException {
+        stmt.setInt(1, history.getClientId());
+        stmt.setString(2, history.getType().name());
+        stmt.setString(3, history.getResult().name());
+        stmt.setString(4, history.getFilename());
+        setNullableLong(stmt, 5, history.getBytes());
+        setNullableLong(stmt, 6, history.getDurationMs());
+        stmt.setString(7, history.getClientIp());
+        stmt.setObject(8, history.getTimestamp());
+    }
+
+    private static void setNullableLong(PreparedStatement stmt, int index, Long value) throws SQLException {
+        if (value != null) {
+            stmt.setLong(index, value);
+        } else {
+            stmt.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private static OperationHistoryModel mapRow(ResultSet rs) throws SQLException {
+        long bytes = rs.getLong("bytes");
+        Long nullableBytes = rs.wasNull() ? null : bytes;
+        long duration = rs.getLong("duration_ms");
+        Long nullableDuration = rs.wasNull() ? null : duration;
+        return new OperationHistoryModel(
+                rs.getInt("id"),
+                rs.getInt("client_id"),
+                parseType(rs.getString("op_type")),
+                OperationResult.fromName(rs.getString("result_code")),
+                rs.getString("filename"),
+                nullableBytes,
+                nullableDuration,
+                rs.getString("client_ip"),
+                rs.getTimestamp("timestamp").toLocalDateTime());
+    }
+
+    private static OperationType parseType(String name) {
+        OperationType type = OperationType.fromName(name);
+        return type != null ? type : OperationType.OTHER;
+    }
+
+    private record DailyKey(int clientId, LocalDate day, String type, String result) {
+    }
+
+    private static final class DailyTotals {
+        private long operations;
+        private long bytes;
+        private long durationMs;
+        private long timedOperations;
+        private LocalDateTime last;
+
+        private void add(long bytes, long durationMs, boolean timed, LocalDateTime timestamp) {
+            operations++;
+            this.bytes += bytes;
+            if (timed) {
+                this.durationMs += durationMs;
+                timedOperations++;
+            }
+            if (last == null || timestamp.isAfter(last)) {
+                last = timestamp;
+            }
+        }
+    }
+}
@@ -15,4 +15,18 @@ public interface IFileService {
     List<ServerFileModel> getFilesByOwnerId(int ownerId);
 
     ServerFileModel getFileByName(String filename);
+
+    /**
+     * Looks up a client's file by name.
+     *
+     * @param ownerId  The client owning the file
+     * @param filename The file name
+     * @return The file, or null if the client has no file of that name
+     */
+    ServerFileModel getFileByOwnerAndName(int ownerId, String filename);
+
+    /**
+     * @return Hit and miss counts of the file metadata cache
+     */
+    String getCacheStatistics();
 }
\ No newline at end of file
@@ -1,10 +1,35 @@
 package ftp.gusamyky.server.common.service;
 
+import ftp.gusamyky.server.common.model.HistoryQuery;
 import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationSummaryModel;
+import ftp.gusamyky.server.common.repository.IHistoryRepository.RowHandler;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
 
 public interface IHistoryService {
-    List<OperationHistoryModel> getHistoryByClientId(int clientId);
+    /**
+     * Streams a page of a client's history, newest first.
+     *
+     * @param query   The filters, cursor and limit of the page
+     * @param handler Receives the operations one at a time
+     * @throws IOException If the handler fails
+     * @throws ftp.gusamyky.server.common.exception.DatabaseException If the
+     *                                                                history
+     *                                                                could not
+     *                                                                be read
+     */
+    void streamHistory(HistoryQuery query, RowHandler handler) throws IOException;
+
+    /**
+     * @param clientId The client whose history to summarize
+     * @param from     The first day to include, or null for no lower bound
+     * @param to       The first day to exclude, or null for no upper bound
+     * @return Operation counts, bytes and durations per operation type and
+     *         result
+     */
+    List<OperationSummaryModel> getSummaryByClientId(int clientId, LocalDate from, LocalDate to);
 
     void addOperation(OperationHistoryModel operation);
-}
\ No newline at end of file
+}
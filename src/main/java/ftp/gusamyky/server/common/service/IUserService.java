@@ -10,4 +10,10 @@ public interface IUserService {
     String login(String username, String password);
 
     String register(String username, String password);
+
+    /**
+     * @return Counts of database lookups, shared lookups and remembered
+     *         missing usernames
+     */
+    String getLookupStatistics();
 }
\ No newline at end of file
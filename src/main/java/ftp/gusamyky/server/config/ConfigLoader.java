@@ -37,13 +37,90 @@ public class ConfigLoader {
             String host = props.getProperty("server.host", DEFAULT_HOST);
 
             LOGGER.info("Loaded configuration - Port: " + port + ", FilesDir: " + filesDir + ", Host: " + host);
-            return new ServerConfig(port, filesDir, host);
+            ServerConfig config = new ServerConfig(port, filesDir, host);
+            applyNetworkSettings(config, props);
+            return config;
         } catch (NumberFormatException e) {
             LOGGER.severe("Invalid port number in configuration");
             throw new IllegalStateException("Invalid port number in configuration", e);
         }
     }
 
+    private static void applyNetworkSettings(ServerConfig config, Properties props) {
+        String ioMode = props.getProperty("server.io_mode");
+        if (ioMode != null) {
+            try {
+                config.setIoMode(IoMode.valueOf(ioMode.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Unknown server.io_mode '" + ioMode + "', falling back to " + config.getIoMode());
+            }
+        }
+        config.setReactorThreads(intProperty(props, "server.reactor_threads", config.getReactorThreads()));
+        String threadMode = props.getProperty("server.thread_mode");
+        if (threadMode != null) {
+            try {
+                config.setThreadMode(ThreadMode.valueOf(threadMode.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Unknown server.thread_mode '" + threadMode + "', falling back to "
+                        + config.getThreadMode());
+            }
+        }
+        config.setCpuThreads(intProperty(props, "server.cpu_threads", config.getCpuThreads()));
+        config.setAuthQueueSize(intProperty(props, "server.auth_queue_size", config.getAuthQueueSize()));
+        config.setLoginAttemptsPerIp(intProperty(props, "server.login_attempts_per_ip",
+                config.getLoginAttemptsPerIp()));
+        config.setLoginAttemptsPerUser(intProperty(props, "server.login_attempts_per_user",
+                config.getLoginAttemptsPerUser()));
+        config.setMaxSessions(intProperty(props, "server.max_sessions", config.getMaxSessions()));
+        config.setMaxSessionsPerIp(intProperty(props, "server.max_sessions_per_ip", config.getMaxSessionsPerIp()));
+        config.setAdmissionQueueSize(intProperty(props, "server.admission_queue_size",
+                config.getAdmissionQueueSize()));
+        config.setAdmissionQueueTimeoutMs(longProperty(props, "server.admission_queue_timeout_ms",
+                config.getAdmissionQueueTimeoutMs()));
+        config.setBusyRetryMs(longProperty(props, "server.busy_retry_ms", config.getBusyRetryMs()));
+        config.setTransferThreads(intProperty(props, "server.transfer_threads", config.getTransferThreads()));
+        config.setTransferQueueSize(intProperty(props, "server.transfer_queue_size", config.getTransferQueueSize()));
+        config.setMaxDownloadsPerUser(intProperty(props, "server.max_downloads_per_user",
+                config.getMaxDownloadsPerUser()));
+        config.setUploadPipelineDepth(intProperty(props, "server.upload_pipeline_depth",
+                config.getUploadPipelineDepth()));
+        config.setMaxUploadSize(longProperty(props, "server.max_upload_size", config.getMaxUploadSize()));
+        config.setMaxChunkSize(intProperty(props, "server.max_chunk_size", config.getMaxChunkSize()));
+        config.setMaxChunkedUploadSize(longProperty(props, "server.max_chunked_upload_size",
+                config.getMaxChunkedUploadSize()));
+        config.setStagingDir(props.getProperty("server.staging_dir"));
+        config.setStagingExpiryMs(longProperty(props, "server.staging_expiry_ms", config.getStagingExpiryMs()));
+        LOGGER.info("Network settings - IO mode: " + config.getIoMode() + ", Reactor threads: "
+                + config.getReactorThreads() + ", Thread mode: " + config.getThreadMode() + ", CPU threads: "
+                + config.getCpuThreads());
+    }
+
+    private static long longProperty(Properties props, String key, long defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid value for " + key + ": '" + value + "', using default " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static int intProperty(Properties props, String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid value for " + key + ": '" + value + "', using default " + defaultValue);
+            return defaultValue;
+        }
+    }
+
     private static ServerConfig createDefaultConfig() {
         LOGGER.info("Creating default configuration");
         return new ServerConfig(
@@ -66,6 +143,61 @@ public class ConfigLoader {
         String password = prop.getProperty("db.password", "");
         String filesDirectory = prop.getProperty("db.files_directory", "server_files");
         String urlNoDb = prop.getProperty("db.urlNoDb", "jdbc:mysql://localhost:3306/");
-        return new DatabaseConfig(url, user, password, filesDirectory, urlNoDb);
+        DatabaseConfig config = new DatabaseConfig(url, user, password, filesDirectory, urlNoDb);
+        config.setMaxConnections(intProperty(prop, "db.max_connections", config.getMaxConnections()));
+        config.setConnectionTimeoutMs(longProperty(prop, "db.connection_timeout", config.getConnectionTimeoutMs()));
+        config.setLeakDetectionThresholdMs(longProperty(prop, "db.leak_detection_threshold",
+                config.getLeakDetectionThresholdMs()));
+        LOGGER.info("Connection pool settings - Max connections: " + config.getMaxConnections()
+                + ", Connection timeout: " + config.getConnectionTimeoutMs() + " ms, Leak detection threshold: "
+                + config.getLeakDetectionThresholdMs() + " ms");
+        config.setHistoryQueueSize(intProperty(prop, "db.history_queue_size", config.getHistoryQueueSize()));
+        config.setHistoryBatchSize(intProperty(prop, "db.history_batch_size", config.getHistoryBatchSize()));
+        config.setHistoryFlushIntervalMs(longProperty(prop, "db.history_flush_interval",
+                config.getHistoryFlushIntervalMs()));
+        String overflowPolicy = prop.getProperty("db.history_overflow_policy");
+        if (overflowPolicy != null) {
+            try {
+                config.setHistoryOverflowPolicy(HistoryOverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Unknown db.history_overflow_policy '" + overflowPolicy + "', falling back to "
+                        + config.getHistoryOverflowPolicy());
+            }
+        }
+        config.setHistoryJournalDir(prop.getProperty("db.history_journal_dir", config.getHistoryJournalDir()));
+        config.setHistoryJournalSegmentSize(longProperty(prop, "db.history_journal_segment_size",
+                config.getHistoryJournalSegmentSize()));
+        config.setHistoryFetchSize(intProperty(prop, "db.history_fetch_size", config.getHistoryFetchSize()));
+        config.setHistoryRetentionDays(intProperty(prop, "db.history_retention_days",
+                config.getHistoryRetentionDays()));
+        config.setHistoryPurgeChunkSize(intProperty(prop, "db.history_purge_chunk_size",
+                config.getHistoryPurgeChunkSize()));
+        config.setHistoryPurgeIntervalMs(longProperty(prop, "db.history_purge_interval",
+                config.getHistoryPurgeIntervalMs()));
+        config.setFileCacheSize(intProperty(prop, "db.file_cache_size", config.getFileCacheSize()));
+        config.setFileCacheTtlMs(longProperty(prop, "db.file_cache_ttl", config.getFileCacheTtlMs()));
+        config.setNegativeCacheSize(intProperty(prop, "db.negative_cache_size", config.getNegativeCacheSize()));
+        config.setNegativeCacheTtlMs(longProperty(prop, "db.negative_cache_ttl", config.getNegativeCacheTtlMs()));
+        String metadataStore = prop.getProperty("db.metadata_store");
+        if (metadataStore != null) {
+            try {
+                config.setMetadataStore(MetadataStoreType.valueOf(metadataStore.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Unknown db.metadata_store '" + metadataStore + "', falling back to "
+                        + config.getMetadataStore());
+            }
+        }
+        config.setEmbeddedDir(prop.getProperty("db.embedded_dir", config.getEmbeddedDir()));
+        config.setEmbeddedCompactionThreshold(longProperty(prop, "db.embedded_compaction_threshold",
+                config.getEmbeddedCompactionThreshold()));
+        LOGGER.info("Metadata store: " + config.getMetadataStore()
+                + (config.getMetadataStore() == MetadataStoreType.EMBEDDED ? " in " + config.getEmbeddedDir() : ""));
+        LOGGER.info("History writer settings - Queue size: " + config.getHistoryQueueSize() + ", Batch size: "
+                + config.getHistoryBatchSize() + ", Flush interval: " + config.getHistoryFlushIntervalMs()
+                + " ms, Overflow policy: " + config.getHistoryOverflowPolicy() + ", Journal: "
+                + (config.getHistoryJournalDir().isEmpty() ? "disabled" : config.getHistoryJournalDir())
+                + ", Fetch size: " + config.getHistoryFetchSize() + ", Retention: "
+                + (config.getHistoryRetentionDays() > 0 ? config.getHistoryRetentionDays() + " days" : "unlimited"));
+        return config;
     }
 }
\ No newline at end of file
@@ -1,11 +1,51 @@
 package ftp.gusamyky.server.config;
 
 public class DatabaseConfig {
+    private static final int DEFAULT_MAX_CONNECTIONS = 10;
+    private static final long DEFAULT_CONNECTION_TIMEOUT_MS = 30000;
+    private static final long DEFAULT_LEAK_DETECTION_THRESHOLD_MS = 60000;
+    private static final int DEFAULT_HISTORY_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_HISTORY_BATCH_SIZE = 100;
+    private static final long DEFAULT_HISTORY_FLUSH_INTERVAL_MS = 100;
+    private static final String DEFAULT_HISTORY_JOURNAL_DIR = "history_journal";
+    private static final long DEFAULT_HISTORY_JOURNAL_SEGMENT_SIZE = 8L * 1024 * 1024;
+    private static final long MIN_HISTORY_JOURNAL_SEGMENT_SIZE = 64L * 1024;
+    private static final int DEFAULT_HISTORY_FETCH_SIZE = 100;
+    private static final int DEFAULT_HISTORY_RETENTION_DAYS = 90;
+    private static final int DEFAULT_HISTORY_PURGE_CHUNK_SIZE = 1000;
+    private static final long DEFAULT_HISTORY_PURGE_INTERVAL_MS = 3600000;
+    private static final int DEFAULT_FILE_CACHE_SIZE = 10000;
+    private static final long DEFAULT_FILE_CACHE_TTL_MS = 300000;
+    private static final int DEFAULT_NEGATIVE_CACHE_SIZE = 10000;
+    private static final long DEFAULT_NEGATIVE_CACHE_TTL_MS = 5000;
+    private static final String DEFAULT_EMBEDDED_DIR = "metadata";
+    private static final long DEFAULT_EMBEDDED_COMPACTION_THRESHOLD = 16L * 1024 * 1024;
+    private static final long MIN_EMBEDDED_COMPACTION_THRESHOLD = 64L * 1024;
     private String url;
     private String user;
     private String password;
     private String filesDirectory;
     private String urlNoDb;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private long connectionTimeoutMs = DEFAULT_CONNECTION_TIMEOUT_MS;
+    private long leakDetectionThresholdMs = DEFAULT_LEAK_DETECTION_THRESHOLD_MS;
+    private int historyQueueSize = DEFAULT_HISTORY_QUEUE_SIZE;
+    private int historyBatchSize = DEFAULT_HISTORY_BATCH_SIZE;
+    private long historyFlushIntervalMs = DEFAULT_HISTORY_FLUSH_INTERVAL_MS;
+    private HistoryOverflowPolicy historyOverflowPolicy = HistoryOverflowPolicy.CALLER_RUNS;
+    private String historyJournalDir = DEFAULT_HISTORY_JOURNAL_DIR;
+    private long historyJournalSegmentSize = DEFAULT_HISTORY_JOURNAL_SEGMENT_SIZE;
+    private int historyFetchSize = DEFAULT_HISTORY_FETCH_SIZE;
+    private int historyRetentionDays = DEFAULT_HISTORY_RETENTION_DAYS;
+    private int historyPurgeChunkSize = DEFAULT_HISTORY_PURGE_CHUNK_SIZE;
+    private long historyPurgeIntervalMs = DEFAULT_HISTORY_PURGE_INTERVAL_MS;
+    private int fileCacheSize = DEFAULT_FILE_CACHE_SIZE;
+    private long fileCacheTtlMs = DEFAULT_FILE_CACHE_TTL_MS;
+    private int negativeCacheSize = DEFAULT_NEGATIVE_CACHE_SIZE;
+    private long negativeCacheTtlMs = DEFAULT_NEGATIVE_CACHE_TTL_MS;
+    private MetadataStoreType metadataStore = MetadataStoreType.MYSQL;
+    private String embeddedDir = DEFAULT_EMBEDDED_DIR;
+    private long embeddedCompactionThreshold = DEFAULT_EMBEDDED_COMPACTION_THRESHOLD;
 
     public DatabaseConfig(String url, String user, String password, String filesDirectory, String urlNoDb) {
         this.url = url;
@@ -54,4 +94,293 @@ public class DatabaseConfig {
     public void setUrlNoDb(String urlNoDb) {
         this.urlNoDb = urlNoDb;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return The maximum number of pooled database connections
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Max connections must be at least 1");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @return How long a caller waits for a free pooled connection, in
+     *         milliseconds
+     */
+    public long getConnectionTimeoutMs() {
+        return connectionTimeoutMs;
+    }
+
+    public void setConnectionTimeoutMs(long connectionTimeoutMs) {
+        if (connectionTimeoutMs < 0) {
+            throw new IllegalArgumentException("Connection timeout must not be negative");
+        }
+        this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+
+    /**
+     * @return How long a connection may stay borrowed before it is reported as a
+     *         possible leak, in milliseconds; 0 disables leak detection
+     */
+    public long getLeakDetectionThresholdMs() {
+        return leakDetectionThresholdMs;
+    }
+
+    public void setLeakDetectionThresholdMs(long leakDetectionThresholdMs) {
+        if (leakDetectionThresholdMs < 0) {
+            throw new IllegalArgumentException("Leak detection threshold must not be negative");
+        }
+        this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+    }
+
+    /**
+     * @return How many operation history entries may wait to be written
+     */
+    public int getHistoryQueueSize() {
+        return historyQueueSize;
+    }
+
+    public void setHistoryQueueSize(int historyQueueSize) {
+        if (historyQueueSize < 1) {
+            throw new IllegalArgumentException("History queue size must be at least 1");
+        }
+        this.historyQueueSize = historyQueueSize;
+    }
+
+    /**
+     * @return The maximum number of history entries inserted in one JDBC batch
+     */
+    public int getHistoryBatchSize() {
+        return historyBatchSize;
+    }
+
+    public void setHistoryBatchSize(int historyBatchSize) {
+        if (historyBatchSize < 1) {
+            throw new IllegalArgumentException("History batch size must be at least 1");
+        }
+        this.historyBatchSize = historyBatchSize;
+    }
+
+    /**
+     * @return How long the history writer waits for a batch to fill before
+     *         writing it anyway, in milliseconds; 0 writes whatever is queued
+     *         immediately
+     */
+    public long getHistoryFlushIntervalMs() {
+        return historyFlushIntervalMs;
+    }
+
+    public void setHistoryFlushIntervalMs(long historyFlushIntervalMs) {
+        if (historyFlushIntervalMs < 0) {
+            throw new IllegalArgumentException("History flush interval must not be negative");
+        }
+        this.historyFlushIntervalMs = historyFlushIntervalMs;
+    }
+
+    public HistoryOverflowPolicy getHistoryOverflowPolicy() {
+        return historyOverflowPolicy;
+    }
+
+    public void setHistoryOverflowPolicy(HistoryOverflowPolicy historyOverflowPolicy) {
+        if (historyOverflowPolicy == null) {
+            throw new IllegalArgumentException("History overflow policy cannot be null");
+        }
+        this.historyOverflowPolicy = historyOverflowPolicy;
+    }
+
+    /**
+     * @return The directory of the local operation history journal, or an
+     *         empty string if history is inserted into the database directly
+     */
+    public String getHistoryJournalDir() {
+        return historyJournalDir;
+    }
+
+    public void setHistoryJournalDir(String historyJournalDir) {
+        this.historyJournalDir = historyJournalDir == null ? "" : historyJournalDir.trim();
+    }
+
+    /**
+     * @return Size in bytes after which a history journal segment is rolled
+     *         over
+     */
+    public long getHistoryJournalSegmentSize() {
+        return historyJournalSegmentSize;
+    }
+
+    public void setHistoryJournalSegmentSize(long historyJournalSegmentSize) {
+        if (historyJournalSegmentSize < MIN_HISTORY_JOURNAL_SEGMENT_SIZE) {
+            throw new IllegalArgumentException(
+                    "History journal segment size must be at least " + MIN_HISTORY_JOURNAL_SEGMENT_SIZE + " bytes");
+        }
+        this.historyJournalSegmentSize = historyJournalSegmentSize;
+    }
+
+    /**
+     * @return How many history rows the driver fetches per round trip while a
+     *         HISTORY page is streamed
+     */
+    public int getHistoryFetchSize() {
+        return historyFetchSize;
+    }
+
+    public void setHistoryFetchSize(int historyFetchSize) {
+        if (historyFetchSize < 1) {
+            throw new IllegalArgumentException("History fetch size must be at least 1");
+        }
+        this.historyFetchSize = historyFetchSize;
+    }
+
+    /**
+     * @return For how many days, besides today, individual operations are kept
+     *         before they are folded into daily totals; 0 keeps them forever
+     */
+    public int getHistoryRetentionDays() {
+        return historyRetentionDays;
+    }
+
+    public void setHistoryRetentionDays(int historyRetentionDays) {
+        if (historyRetentionDays < 0) {
+            throw new IllegalArgumentException("History retention must not be negative");
+        }
+        this.historyRetentionDays = historyRetentionDays;
+    }
+
+    /**
+     * @return The maximum number of history entries purged in one transaction
+     */
+    public int getHistoryPurgeChunkSize() {
+        return historyPurgeChunkSize;
+    }
+
+    public void setHistoryPurgeChunkSize(int historyPurgeChunkSize) {
+        if (historyPurgeChunkSize < 1) {
+            throw new IllegalArgumentException("History purge chunk size must be at least 1");
+        }
+        this.historyPurgeChunkSize = historyPurgeChunkSize;
+    }
+
+    /**
+     * @return Time between two history retention runs, in milliseconds
+     */
+    public long getHistoryPurgeIntervalMs() {
+        return historyPurgeIntervalMs;
+    }
+
+    public void setHistoryPurgeIntervalMs(long historyPurgeIntervalMs) {
+        if (historyPurgeIntervalMs < 1) {
+            throw new IllegalArgumentException("History purge interval must be positive");
+        }
+        this.historyPurgeIntervalMs = historyPurgeIntervalMs;
+    }
+
+    /**
+     * @return How many file lookups, and how many file lists, are cached; 0
+     *         disables the file metadata cache
+     */
+    public int getFileCacheSize() {
+        return fileCacheSize;
+    }
+
+    public void setFileCacheSize(int fileCacheSize) {
+        if (fileCacheSize < 0) {
+            throw new IllegalArgumentException("File cache size must not be negative");
+        }
+        this.fileCacheSize = fileCacheSize;
+    }
+
+    /**
+     * @return How long cached file metadata is used, in milliseconds; 0 keeps
+     *         it until it is evicted or the file changes
+     */
+    public long getFileCacheTtlMs() {
+        return fileCacheTtlMs;
+    }
+
+    public void setFileCacheTtlMs(long fileCacheTtlMs) {
+        if (fileCacheTtlMs < 0) {
+            throw new IllegalArgumentException("File cache time to live must not be negative");
+        }
+        this.fileCacheTtlMs = fileCacheTtlMs;
+    }
+
+    /**
+     * @return How many usernames and files that were looked up but do not exist
+     *         are remembered; 0 disables this
+     */
+    public int getNegativeCacheSize() {
+        return negativeCacheSize;
+    }
+
+    public void setNegativeCacheSize(int negativeCacheSize) {
+        if (negativeCacheSize < 0) {
+            throw new IllegalArgumentException("Negative cache size must not be negative");
+        }
+        this.negativeCacheSize = negativeCacheSize;
+    }
+
+    /**
+     * @return How long a missing username or file is remembered, in
+     *         milliseconds
+     */
+    public long getNegativeCacheTtlMs() {
+        return negativeCacheTtlMs;
+    }
+
+    public void setNegativeCacheTtlMs(long negativeCacheTtlMs) {
+        if (negativeCacheTtlMs < 1) {
+            throw new IllegalArgumentException("Negative cache time to live must be positive");
+        }
+        this.negativeCacheTtlMs = negativeCacheTtlMs;
+    }
+
+    /**
+     * @return Where clients, files and operation history are stored
+     */
+    public MetadataStoreType getMetadataStore() {
+        return metadataStore;
+    }
+
+    public void setMetadataStore(MetadataStoreType metadataStore) {
+        if (metadataStore == null) {
+            throw new IllegalArgumentException("Metadata store cannot be null");
+        }
+        this.metadataStore = metadataStore;
+    }
+
+    /**
+     * @return The directory of the embedded metadata store
+     */
+    public String getEmbeddedDir() {
+        return embeddedDir;
+    }
+
+    public void setEmbeddedDir(String embeddedDir) {
+        if (embeddedDir == null || embeddedDir.isBlank()) {
+            throw new IllegalArgumentException("Embedded store directory cannot be empty");
+        }
+        this.embeddedDir = embeddedDir.trim();
+    }
+
+    /**
+     * @return Size in bytes of the embedded store's log after which it is
+     *         compacted into a snapshot
+     */
+    public long getEmbeddedCompactionThreshold() {
+        return embeddedCompactionThreshold;
+    }
+
+    public void setEmbeddedCompactionThreshold(long embeddedCompactionThreshold) {
+        if (embeddedCompactionThreshold < MIN_EMBEDDED_COMPACTION_THRESHOLD) {
+            throw new IllegalArgumentException("Embedded store compaction threshold must be at least "
+                    + MIN_EMBEDDED_COMPACTION_THRESHOLD + " bytes");
+        }
+        this.embeddedCompactionThreshold = embeddedCompactionThreshold;
+    }
+}
@@ -0,0 +1,28 @@
+package ftp.gusamyky.server.config;
+
+/**
+ * What the operation history writer does with a new entry when its queue is
+ * full.
+ */
+public enum HistoryOverflowPolicy {
+    /**
+     * The recording thread waits until the writer has made room.
+     */
+    BLOCK,
+
+    /**
+     * The recording thread writes the entry to the database itself. Nothing is
+     * lost, but the command pays for a synchronous insert.
+     */
+    CALLER_RUNS,
+
+    /**
+     * The new entry is discarded.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The oldest queued entry is discarded to make room for the new one.
+     */
+    DROP_OLDEST
+}
@@ -0,0 +1,17 @@
+package ftp.gusamyky.server.config;
+
+/**
+ * Connection handling strategy used by the network service.
+ */
+public enum IoMode {
+    /**
+     * One thread per connection, blocking on {@code ServerSocket.accept()} and
+     * {@code readLine()}.
+     */
+    BLOCKING,
+
+    /**
+     * Selector based reactors; idle connections do not hold a thread.
+     */
+    NIO
+}
@@ -0,0 +1,17 @@
+package ftp.gusamyky.server.config;
+
+/**
+ * Where clients, files and operation history are stored.
+ */
+public enum MetadataStoreType {
+    /**
+     * The MySQL database configured with {@code db.url}.
+     */
+    MYSQL,
+
+    /**
+     * An embedded store in a local directory, kept in memory and persisted to
+     * an append-only log. Needs no database server.
+     */
+    EMBEDDED
+}
@@ -10,10 +10,34 @@ public class ServerConfig {
     private static final int MIN_PORT = 1024;
     private static final int MAX_PORT = 65535;
     private static final String DEFAULT_HOST = "localhost";
+    private static final int DEFAULT_REACTOR_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int DEFAULT_CPU_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final String STAGING_SUBDIR = ".staging";
 
     private final int port;
     private final String filesDir;
     private final String host;
+    private IoMode ioMode = IoMode.BLOCKING;
+    private int reactorThreads = DEFAULT_REACTOR_THREADS;
+    private ThreadMode threadMode = ThreadMode.PLATFORM;
+    private int cpuThreads = DEFAULT_CPU_THREADS;
+    private int authQueueSize = 256;
+    private int loginAttemptsPerIp = 60;
+    private int loginAttemptsPerUser = 10;
+    private int maxSessions = 1000;
+    private int maxSessionsPerIp = 50;
+    private int admissionQueueSize = 100;
+    private long admissionQueueTimeoutMs = 5000;
+    private long busyRetryMs = 1000;
+    private int transferThreads = 16;
+    private int transferQueueSize = 64;
+    private int maxDownloadsPerUser = 4;
+    private int uploadPipelineDepth = 4;
+    private long maxUploadSize = 64L * 1024 * 1024 * 1024;
+    private int maxChunkSize = 8 * 1024 * 1024;
+    private long maxChunkedUploadSize = 64L * 1024 * 1024 * 1024;
+    private String stagingDir;
+    private long stagingExpiryMs = 86400000;
 
     public ServerConfig(int port, String filesDir, String host) {
         validatePort(port);
@@ -59,12 +83,281 @@ public class ServerConfig {
         return host;
     }
 
+    public IoMode getIoMode() {
+        return ioMode;
+    }
+
+    public void setIoMode(IoMode ioMode) {
+        this.ioMode = ioMode != null ? ioMode : IoMode.BLOCKING;
+    }
+
+    public int getReactorThreads() {
+        return reactorThreads;
+    }
+
+    public void setReactorThreads(int reactorThreads) {
+        if (reactorThreads < 1) {
+            String msg = "Reactor thread count must be at least 1";
+            LOGGER.severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        this.reactorThreads = reactorThreads;
+    }
+
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public void setThreadMode(ThreadMode threadMode) {
+        this.threadMode = threadMode != null ? threadMode : ThreadMode.PLATFORM;
+    }
+
+    public int getCpuThreads() {
+        return cpuThreads;
+    }
+
+    public void setCpuThreads(int cpuThreads) {
+        if (cpuThreads < 1) {
+            String msg = "CPU thread count must be at least 1";
+            LOGGER.severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        this.cpuThreads = cpuThreads;
+    }
+
+    /**
+     * @return How many password hashes and verifications may wait for a CPU
+     *         thread before further ones are answered with BUSY
+     */
+    public int getAuthQueueSize() {
+        return authQueueSize;
+    }
+
+    public void setAuthQueueSize(int authQueueSize) {
+        this.authQueueSize = requireNonNegative(authQueueSize, "Auth queue size");
+    }
+
+    /**
+     * @return LOGIN and REGISTER attempts allowed per client IP and minute; 0
+     *         disables the limit
+     */
+    public int getLoginAttemptsPerIp() {
+        return loginAttemptsPerIp;
+    }
+
+    public void setLoginAttemptsPerIp(int loginAttemptsPerIp) {
+        this.loginAttemptsPerIp = requireNonNegative(loginAttemptsPerIp, "Login attempts per IP");
+    }
+
+    /**
+     * @return LOGIN attempts allowed per username and minute; 0 disables the
+     *         limit
+     */
+    public int getLoginAttemptsPerUser() {
+        return loginAttemptsPerUser;
+    }
+
+    public void setLoginAttemptsPerUser(int loginAttemptsPerUser) {
+        this.loginAttemptsPerUser = requireNonNegative(loginAttemptsPerUser, "Login attempts per user");
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = requireNonNegative(maxSessions, "Max sessions");
+    }
+
+    public int getMaxSessionsPerIp() {
+        return maxSessionsPerIp;
+    }
+
+    public void setMaxSessionsPerIp(int maxSessionsPerIp) {
+        this.maxSessionsPerIp = requireNonNegative(maxSessionsPerIp, "Max sessions per IP");
+    }
+
+    public int getAdmissionQueueSize() {
+        return admissionQueueSize;
+    }
+
+    public void setAdmissionQueueSize(int admissionQueueSize) {
+        this.admissionQueueSize = requireNonNegative(admissionQueueSize, "Admission queue size");
+    }
+
+    public long getAdmissionQueueTimeoutMs() {
+        return admissionQueueTimeoutMs;
+    }
+
+    public void setAdmissionQueueTimeoutMs(long admissionQueueTimeoutMs) {
+        this.admissionQueueTimeoutMs = requireNonNegative(admissionQueueTimeoutMs, "Admission queue timeout");
+    }
+
+    public long getBusyRetryMs() {
+        return busyRetryMs;
+    }
+
+    public void setBusyRetryMs(long busyRetryMs) {
+        this.busyRetryMs = requireNonNegative(busyRetryMs, "Busy retry delay");
+    }
+
+    public int getTransferThreads() {
+        return transferThreads;
+    }
+
+    public void setTransferThreads(int transferThreads) {
+        if (transferThreads < 1) {
+            String msg = "Transfer thread count must be at least 1";
+            LOGGER.severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        this.transferThreads = transferThreads;
+    }
+
+    public int getTransferQueueSize() {
+        return transferQueueSize;
+    }
+
+    public void setTransferQueueSize(int transferQueueSize) {
+        this.transferQueueSize = requireNonNegative(transferQueueSize, "Transfer queue size");
+    }
+
+    /**
+     * @return How many DOWNLOADs of one client may run at the same time, over
+     *         all its sessions; 0 disables the limit
+     */
+    public int getMaxDownloadsPerUser() {
+        return maxDownloadsPerUser;
+    }
+
+    public void setMaxDownloadsPerUser(int maxDownloadsPerUser) {
+        this.maxDownloadsPerUser = requireNonNegative(maxDownloadsPerUser, "Max downloads per user");
+    }
+
+    /**
+     * @return How many buffers an upload may fill from the network ahead of
+     *         the disk writes; 0 receives and writes on the same thread
+     */
+    public int getUploadPipelineDepth() {
+        return uploadPipelineDepth;
+    }
+
+    public void setUploadPipelineDepth(int uploadPipelineDepth) {
+        this.uploadPipelineDepth = requireNonNegative(uploadPipelineDepth, "Upload pipeline depth");
+    }
+
+    /**
+     * @return The largest file that may be uploaded with UPLOAD, in bytes
+     */
+    public long getMaxUploadSize() {
+        return maxUploadSize;
+    }
+
+    public void setMaxUploadSize(long maxUploadSize) {
+        if (maxUploadSize < 1) {
+            String msg = "Max upload size must be at least 1";
+            LOGGER.severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        this.maxUploadSize = maxUploadSize;
+    }
+
+    /**
+     * @return The largest chunk a CHUNK request may carry, in bytes; chunks are
+     *         held in memory until their checksum is verified
+     */
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    public void setMaxChunkSize(int maxChunkSize) {
+        if (maxChunkSize < 1) {
+            String msg = "Max chunk size must be at least 1";
+            LOGGER.severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /**
+     * @return The largest file that may be uploaded in chunks, in bytes; its
+     *         part file is extended to the full size by the first chunk
+     */
+    public long getMaxChunkedUploadSize() {
+        return maxChunkedUploadSize;
+    }
+
+    public void setMaxChunkedUploadSize(long maxChunkedUploadSize) {
+        if (maxChunkedUploadSize < 1) {
+            String msg = "Max chunked upload size must be at least 1";
+            LOGGER.severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        this.maxChunkedUploadSize = maxChunkedUploadSize;
+    }
+
+    /**
+     * @return The directory partial uploads are kept in, by default
+     *         {@code .staging} inside the files directory
+     */
+    public String getStagingDir() {
+        return stagingDir != null ? stagingDir : Paths.get(filesDir, STAGING_SUBDIR).toString();
+    }
+
+    public void setStagingDir(String stagingDir) {
+        this.stagingDir = stagingDir != null && !stagingDir.trim().isEmpty() ? stagingDir.trim() : null;
+    }
+
+    /**
+     * @return How long a partial upload nobody resumes is kept, in
+     *         milliseconds; 0 keeps it forever
+     */
+    public long getStagingExpiryMs() {
+        return stagingExpiryMs;
+    }
+
+    public void setStagingExpiryMs(long stagingExpiryMs) {
+        this.stagingExpiryMs = requireNonNegative(stagingExpiryMs, "Staging expiry");
+    }
+
+    private static int requireNonNegative(int value, String name) {
+        return (int) requireNonNegative((long) value, name);
+    }
+
+    private static long requireNonNegative(long value, String name) {
+        if (value < 0) {
+            String msg = name + " cannot be negative";
+            LOGGER.severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        return value;
+    }
+
     @Override
     public String toString() {
         return "ServerConfig{" +
                 "port=" + port +
                 ", filesDir='" + filesDir + '\'' +
                 ", host='" + host + '\'' +
+                ", ioMode=" + ioMode +
+                ", reactorThreads=" + reactorThreads +
+                ", threadMode=" + threadMode +
+                ", cpuThreads=" + cpuThreads +
+                ", authQueueSize=" + authQueueSize +
+                ", loginAttemptsPerIp=" + loginAttemptsPerIp +
+                ", loginAttemptsPerUser=" + loginAttemptsPerUser +
+                ", maxSessions=" + maxSessions +
+                ", maxSessionsPerIp=" + maxSessionsPerIp +
+                ", admissionQueueSize=" + admissionQueueSize +
+                ", transferThreads=" + transferThreads +
+                ", transferQueueSize=" + transferQueueSize +
+                ", maxDownloadsPerUser=" + maxDownloadsPerUser +
+                ", uploadPipelineDepth=" + uploadPipelineDepth +
+                ", maxUploadSize=" + maxUploadSize +
+                ", maxChunkSize=" + maxChunkSize +
+                ", maxChunkedUploadSize=" + maxChunkedUploadSize +
+                ", stagingDir='" + getStagingDir() + '\'' +
+                ", stagingExpiryMs=" + stagingExpiryMs +
                 '}';
     }
 }
\ No newline at end of file
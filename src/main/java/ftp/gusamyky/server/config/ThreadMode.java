@@ -0,0 +1,17 @@
+package ftp.gusamyky.server.config;
+
+/**
+ * Kind of thread a client session runs on.
+ */
+public enum ThreadMode {
+    /**
+     * A pooled platform thread per session.
+     */
+    PLATFORM,
+
+    /**
+     * A virtual thread per session. Blocking socket and JDBC calls park the
+     * virtual thread and release its carrier.
+     */
+    VIRTUAL
+}
@@ -1,13 +1,24 @@
 package ftp.gusamyky.server.database_handler.repository;
 
+import ftp.gusamyky.server.common.exception.DatabaseException;
+import ftp.gusamyky.server.common.model.HistoryQuery;
 import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationSummaryModel;
+import ftp.gusamyky.server.common.model.OperationType;
 import ftp.gusamyky.server.common.repository.IHistoryRepository;
 import ftp.gusamyky.server.config.DatabaseConfig;
+import java.io.IOException;
 import java.sql.*;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 public class HistoryRepositoryImpl implements IHistoryRepository {
+    private static final String INSERT_SQL = "INSERT INTO HistoriaOperacji (client_id, op_type, result_code, "
+            + "filename, bytes, duration_ms, client_ip, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
     private final DatabaseConfig config;
 
     public HistoryRepositoryImpl(DatabaseConfig config) {
@@ -19,38 +30,186 @@ public class HistoryRepositoryImpl implements IHistoryRepository {
     }
 
     @Override
-    public List<OperationHistoryModel> findByClientId(int clientId) {
-        List<OperationHistoryModel> ops = new ArrayList<>();
-        String sql = "SELECT * FROM HistoriaOperacji WHERE client_id = ?";
+    public void streamByClientId(HistoryQuery query, RowHandler handler) throws IOException {
+        String sql = "SELECT * FROM HistoriaOperacji WHERE client_id = ?"
+                + (query.getType() != null ? " AND op_type = ?" : "")
+                + (query.getFrom() != null ? " AND timestamp >= ?" : "")
+                + (query.getTo() != null ? " AND timestamp < ?" : "")
+                + (query.getAfter() != null ? " AND (timestamp < ? OR (timestamp = ? AND id < ?))" : "")
+                + " ORDER BY timestamp DESC, id DESC LIMIT ?";
         try (Connection conn = getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, clientId);
+            int index = 1;
+            stmt.setInt(index++, query.getClientId());
+            if (query.getType() != null) {
+                stmt.setString(index++, query.getType().name());
+            }
+            if (query.getFrom() != null) {
+                stmt.setTimestamp(index++, Timestamp.valueOf(query.getFrom()));
+            }
+            if (query.getTo() != null) {
+                stmt.setTimestamp(index++, Timestamp.valueOf(query.getTo()));
+            }
+            if (query.getAfter() != null) {
+                Timestamp afterTimestamp = Timestamp.valueOf(query.getAfter().getTimestamp());
+                stmt.setTimestamp(index++, afterTimestamp);
+                stmt.setTimestamp(index++, afterTimestamp);
+                stmt.setInt(index++, query.getAfter().getId());
+            }
+            stmt.setInt(index, query.getLimit());
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    ops.add(new OperationHistoryModel(
+                    long bytes = rs.getLong("bytes");
+                    Long nullableBytes = rs.wasNull() ? null : bytes;
+                    long duration = rs.getLong("duration_ms");
+                    Long nullableDuration = rs.wasNull() ? null : duration;
+                    OperationType opType = OperationType.fromName(rs.getString("op_type"));
+                    handler.accept(new OperationHistoryModel(
                             rs.getInt("id"),
                             rs.getInt("client_id"),
-                            rs.getString("operation"),
+                            opType != null ? opType : OperationType.OTHER,
+                            OperationResult.fromName(rs.getString("result_code")),
+                            rs.getString("filename"),
+                            nullableBytes,
+                            nullableDuration,
+                            rs.getString("client_ip"),
                             rs.getTimestamp("timestamp").toLocalDateTime()));
                 }
             }
+        } catch (SQLException e) {
+            throw new DatabaseException("Error reading operation history", e);
+        }
+    }
+
+    @Override
+    public List<OperationSummaryModel> summarizeByClientId(int clientId, LocalDate from, LocalDate to) {
+        List<OperationSummaryModel> summary = new ArrayList<>();
+        String sql = "SELECT op_type, result_code, SUM(n), SUM(b), SUM(d) / NULLIF(SUM(t), 0), MAX(l) FROM ("
+                + "SELECT op_type, result_code, COUNT(*) AS n, COALESCE(SUM(bytes), 0) AS b, "
+                + "COALESCE(SUM(duration_ms), 0) AS d, COUNT(duration_ms) AS t, MAX(timestamp) AS l "
+                + "FROM HistoriaOperacji WHERE client_id = ? AND timestamp >= ? AND timestamp < ? "
+                + "GROUP BY op_type, result_code UNION ALL "
+                + "SELECT op_type, result_code, operations, total_bytes, total_duration_ms, timed_operations, "
+                + "last_timestamp FROM HistoriaDzienna WHERE client_id = ? AND op_day >= ? AND op_day < ?"
+                + ") totals GROUP BY op_type, result_code";
+        LocalDate first = from != null ? from : LocalDate.of(1, 1, 1);
+        LocalDate end = to != null ? to : LocalDate.of(9999, 12, 31);
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, clientId);
+            stmt.setTimestamp(2, Timestamp.valueOf(first.atStartOfDay()));
+            stmt.setTimestamp(3, Timestamp.valueOf(end.atStartOfDay()));
+            stmt.setInt(4, clientId);
+            stmt.setDate(5, Date.valueOf(first));
+            stmt.setDate(6, Date.valueOf(end));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    double avgDuration = rs.getDouble(5);
+                    Double averageDurationMs = rs.wasNull() ? null : avgDuration;
+                    OperationType opType = OperationType.fromName(rs.getString(1));
+                    summary.add(new OperationSummaryModel(
+                            opType != null ? opType : OperationType.OTHER,
+                            OperationResult.fromName(rs.getString(2)),
+                            rs.getLong(3),
+                            rs.getLong(4),
+                            averageDurationMs,
+                            rs.getTimestamp(6).toLocalDateTime()));
+                }
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return ops;
+        return summary;
+    }
+
+    @Override
+    public int rollUpAndPurge(LocalDateTime cutoff, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        String upsert = "INSERT INTO HistoriaDzienna (client_id, op_day, op_type, result_code, operations, total_bytes, "
+                + "total_duration_ms, timed_operations, last_timestamp) VALUES (?, ?, ?, ?, 1, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE operations = operations + 1, "
+                + "total_bytes = total_bytes + VALUES(total_bytes), "
+                + "total_duration_ms = total_duration_ms + VALUES(total_duration_ms), "
+                + "timed_operations = timed_operations + VALUES(timed_operations), "
+                + "last_timestamp = GREATEST(last_timestamp, VALUES(last_timestamp))";
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement select = conn.prepareStatement("SELECT * FROM HistoriaOperacji "
+                    + "WHERE timestamp < ? ORDER BY timestamp, id LIMIT ?");
+                    PreparedStatement insert = conn.prepareStatement(upsert);
+                    PreparedStatement delete = conn.prepareStatement("DELETE FROM HistoriaOperacji WHERE id = ?")) {
+                select.setTimestamp(1, Timestamp.valueOf(cutoff));
+                select.setInt(2, limit);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt("id"));
+                        int clientId = rs.getInt("client_id");
+                        if (rs.wasNull()) {
+                            continue;
+                        }
+                        Timestamp timestamp = rs.getTimestamp("timestamp");
+                        long duration = rs.getLong("duration_ms");
+                        boolean timed = !rs.wasNull();
+                        insert.setInt(1, clientId);
+                        insert.setDate(2, Date.valueOf(timestamp.toLocalDateTime().toLocalDate()));
+                        insert.setString(3, rs.getString("op_type"));
+                        insert.setString(4, rs.getString("result_code"));
+                        insert.setLong(5, rs.getLong("bytes"));
+                        insert.setLong(6, duration);
+                        insert.setLong(7, timed ? 1 : 0);
+                        insert.setTimestamp(8, timestamp);
+                        insert.addBatch();
+                    }
+                }
+                for (int id : ids) {
+                    delete.setInt(1, id);
+                    delete.addBatch();
+                }
+                insert.executeBatch();
+                delete.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            throw new DatabaseException("Error purging operation history", e);
+        }
+        return ids.size();
     }
 
     @Override
     public void save(OperationHistoryModel operation) {
-        String sql = "INSERT INTO HistoriaOperacji (client_id, operation, timestamp) VALUES (?, ?, ?)";
         try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, operation.getClientId());
-            stmt.setString(2, operation.getOperation());
-            stmt.setTimestamp(3, Timestamp.valueOf(operation.getTimestamp()));
+                PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            bind(stmt, operation);
             stmt.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void saveBatch(List<OperationHistoryModel> operations) {
+        try (Connection conn = getConnection();
+                PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            conn.setAutoCommit(false);
+            for (OperationHistoryModel operation : operations) {
+                bind(stmt, operation);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            throw new DatabaseException("Error saving operation history batch", e);
+        }
+    }
+
+    private static void bind(PreparedStatement stmt, OperationHistoryModel operation) throws SQLException {
+        stmt.setInt(1, operation.getClientId());
+        stmt.setString(2, operation.getType().name());
+        stmt.setString(3, operation.getResult().name());
+        stmt.setString(4, operation.getFilename());
+        stmt.setObject(5, operation.getBytes(), Types.BIGINT);
+        stmt.setObject(6, operation.getDurationMs(), Types.BIGINT);
+        stmt.setString(7, operation.getClientIp());
+        stmt.setTimestamp(8, Timestamp.valueOf(operation.getTimestamp()));
+    }
+}
@@ -2,28 +2,38 @@ package ftp.gusamyky.server.handler;
 
 import ftp.gusamyky.server.service.ServiceFactory;
 import ftp.gusamyky.server.handler.command.Command;
-import ftp.gusamyky.server.handler.command.CommandFactory;
-import ftp.gusamyky.server.handler.command.LoginStateUpdater;
+import ftp.gusamyky.server.handler.command.CommandContext;
+import ftp.gusamyky.server.handler.command.CommandTable;
+import ftp.gusamyky.server.handler.codec.ProtocolCodec;
+import ftp.gusamyky.server.handler.codec.TextCodec;
+import ftp.gusamyky.server.transfer.TransferExecutor;
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
 /**
  * Handler for client connections.
  * This class is responsible for handling client connections and executing
- * commands.
+ * commands. Requests are decoded and replies rendered by the session's
+ * {@link ProtocolCodec}, which starts as the text protocol and can be switched
+ * to the binary protocol by the client.
  */
-public class ClientHandler implements Runnable, LoginStateUpdater {
+public class ClientHandler implements Runnable {
     private static final Logger LOGGER = Logger.getLogger(ClientHandler.class.getName());
-    private static final int SOCKET_TIMEOUT = 300000; // 5 minutes
+    public static final int SOCKET_TIMEOUT = 300000; // 5 minutes
     private static final int SOCKET_BUFFER_SIZE = 65536; // 64KB
+    private static final int RESPONSE_BUFFER_SIZE = 16384; // replies are flushed early once this fills
     private final Socket clientSocket;
-    private final CommandFactory commandFactory;
-    private boolean loggedIn;
-    private String loggedUsername;
-    private Integer loggedClientId;
+    private final BufferedWriter writer;
+    private final CommandContext context;
+    private final TransferExecutor transferExecutor;
+    private final long busyRetryMs;
+    private final ProtocolCodec.RequestSink requestSink = this::acceptRequest;
+    private Command pendingCommand;
+    private String pendingArgs;
 
     /**
      * Creates a new client handler instance.
@@ -33,10 +43,24 @@ public class ClientHandler implements Runnable, LoginStateUpdater {
      * @throws IOException If an I/O error occurs
      */
     public ClientHandler(Socket clientSocket, ServiceFactory serviceFactory) throws IOException {
+        this(clientSocket, new FramedInputStream(clientSocket.getInputStream()), serviceFactory);
+    }
+
+    /**
+     * Creates a new client handler that reads client data through the given
+     * decoder. Used when part of the incoming data has already been buffered by
+     * the caller.
+     *
+     * @param clientSocket   The client socket to handle
+     * @param input          The decoder to read commands and payload from
+     * @param serviceFactory The service factory to use
+     * @throws IOException If an I/O error occurs
+     */
+    public ClientHandler(Socket clientSocket, FramedInputStream input, ServiceFactory serviceFactory)
+            throws IOException {
         this.clientSocket = clientSocket;
-        this.loggedIn = false;
-        this.loggedUsername = null;
-        this.loggedClientId = null;
+        this.transferExecutor = serviceFactory.getTransferExecutor();
+        this.busyRetryMs = serviceFactory.getServerConfig().getBusyRetryMs();
 
         // Configure socket
         clientSocket.setSoTimeout(SOCKET_TIMEOUT);
@@ -45,43 +69,25 @@ public class ClientHandler implements Runnable, LoginStateUpdater {
         clientSocket.setKeepAlive(true);
         clientSocket.setTcpNoDelay(true);
 
-        this.commandFactory = new CommandFactory(
+        this.writer = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream()),
+                RESPONSE_BUFFER_SIZE);
+        this.context = new CommandContext(
                 serviceFactory,
-                new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream())),
+                new TextCodec(input, writer, CommandTable.getInstance()),
                 clientSocket.getInetAddress().getHostAddress(),
-                loggedIn,
-                loggedUsername,
-                loggedClientId,
-                this,
-                clientSocket.getInputStream(),
-                clientSocket.getOutputStream());
+                input,
+                clientSocket.getOutputStream(),
+                clientSocket.getChannel());
         LOGGER.info(String.format("Created client handler for %s", clientSocket.getRemoteSocketAddress()));
     }
 
     @Override
     public void run() {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream()))) {
-            sendWelcomeMessage(writer);
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    handleCommand(line, writer);
-                } catch (IOException e) {
-                    if (e instanceof SocketException) {
-                        LOGGER.info(String.format("Client %s disconnected during command execution",
-                                clientSocket.getRemoteSocketAddress()));
-                        break;
-                    }
-                    LOGGER.log(Level.SEVERE, String.format("Error handling command from client %s",
-                            clientSocket.getRemoteSocketAddress()), e);
-                    try {
-                        writer.write("ERROR: Internal server error\n");
-                        writer.flush();
-                    } catch (IOException ex) {
-                        LOGGER.log(Level.SEVERE, "Error sending error message to client", ex);
-                        break;
-                    }
+        try {
+            sendWelcomeMessage();
+            while (context.getCodec().readRequest(requestSink)) {
+                if (!dispatch()) {
+                    break;
                 }
             }
         } catch (SocketException e) {
@@ -90,58 +96,128 @@ public class ClientHandler implements Runnable, LoginStateUpdater {
             LOGGER.log(Level.SEVERE, String.format("Error handling client %s", clientSocket.getRemoteSocketAddress()),
                     e);
         } finally {
+            close();
+        }
+    }
+
+    /**
+     * Executes every complete request the decoder has already buffered, without
+     * reading from the socket.
+     *
+     * @return false if the connection is no longer usable and should be closed
+     * @throws IOException If a request is malformed
+     */
+    public boolean processBufferedCommands() throws IOException {
+        while (context.getCodec().pollRequest(requestSink)) {
+            if (!dispatch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if a complete request is buffered
+     * @throws IOException If the buffered request is malformed
+     */
+    public boolean hasBufferedRequest() throws IOException {
+        return context.getCodec().hasRequest();
+    }
+
+    /**
+     * Executes the most recently decoded request. Replies are only flushed
+     * when no further complete command is buffered, so a client that pipelines
+     * several commands receives their replies in as few packets as possible.
+     *
+     * @return false if the connection is no longer usable and should be closed
+     */
+    private boolean dispatch() {
+        try {
+            if (pendingCommand != null) {
+                handleCommand(pendingCommand, pendingArgs);
+            }
+            ProtocolCodec codec = context.getCodec();
+            if (context.isCloseRequested()) {
+                codec.flush();
+                LOGGER.info(String.format("Closing connection to client %s after a malformed request",
+                        clientSocket.getRemoteSocketAddress()));
+                return false;
+            }
+            if (!codec.hasRequest()) {
+                codec.flush();
+            }
+            return true;
+        } catch (IOException e) {
+            if (e instanceof SocketException) {
+                LOGGER.info(String.format("Client %s disconnected during command execution",
+                        clientSocket.getRemoteSocketAddress()));
+                return false;
+            }
+            LOGGER.log(Level.SEVERE, String.format("Error handling command from client %s",
+                    clientSocket.getRemoteSocketAddress()), e);
             try {
-                clientSocket.close();
-                LOGGER.info(String.format("Client %s disconnected", clientSocket.getRemoteSocketAddress()));
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Error closing client socket", e);
+                context.getCodec().writeError("Internal server error");
+                context.getCodec().flush();
+                return true;
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Error sending error message to client", ex);
+                return false;
             }
         }
     }
 
-    private void sendWelcomeMessage(BufferedWriter writer) throws IOException {
+    /**
+     * Closes the client connection.
+     */
+    public void close() {
+        try {
+            clientSocket.close();
+            LOGGER.info(String.format("Client %s disconnected", clientSocket.getRemoteSocketAddress()));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error closing client socket", e);
+        }
+    }
+
+    /**
+     * Sends the greeting and the list of supported commands to the client.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void sendWelcomeMessage() throws IOException {
         LOGGER.info(String.format("Sending welcome message to client %s", clientSocket.getRemoteSocketAddress()));
         writer.write("Welcome to FTP Server\n");
-        writer.write("Available commands: LOGIN, REGISTER, LOGOUT, UPLOAD, DOWNLOAD, LIST, HISTORY, REPORT, ECHO\n");
+        writer.write("Available commands: LOGIN, REGISTER, LOGOUT, UPLOAD, DOWNLOAD, LIST, HISTORY, REPORT, ECHO, "
+                + "BINARY, RESUME, CHUNK, COMMIT\n");
         writer.write("END\n");
         writer.flush();
     }
 
-    private void handleCommand(String line, BufferedWriter writer) throws IOException {
-        LOGGER.info(String.format("Received command from client %s: %s", clientSocket.getRemoteSocketAddress(), line));
-        if (line == null || line.trim().isEmpty()) {
-            return;
-        }
-        String[] parts = line.split(" ", 2);
-        String commandName = parts[0].toUpperCase();
-        String args = parts.length > 1 ? parts[1] : "";
+    private void acceptRequest(Command command, String args) {
+        pendingCommand = command;
+        pendingArgs = args;
+    }
 
+    private void handleCommand(Command command, String args) throws IOException {
         try {
-            Command command = commandFactory.createCommand(commandName, args);
-            command.execute();
+            if (command.isTransfer()) {
+                transferExecutor.execute(command, context, args);
+            } else {
+                command.execute(context, args);
+            }
+        } catch (RejectedExecutionException e) {
+            command.reject(context, args);
+            context.getCodec().writeError("BUSY, retry after " + busyRetryMs + " ms");
         } catch (IOException e) {
             if (e instanceof SocketException) {
                 LOGGER.info(String.format("Client %s disconnected during command execution",
                         clientSocket.getRemoteSocketAddress()));
                 throw e;
             }
-            LOGGER.log(Level.SEVERE, String.format("Error executing command %s", commandName), e);
-            writer.write("ERROR: Internal server error\n");
-            writer.flush();
+            LOGGER.log(Level.SEVERE, String.format("Error executing command %s", command.getCommandName()), e);
+            context.getCodec().writeError("Internal server error");
         } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, String.format("Error executing command %s", commandName), e);
-            writer.write("ERROR: Internal server error\n");
-            writer.flush();
+            LOGGER.log(Level.SEVERE, String.format("Error executing command %s", command.getCommandName()), e);
+            context.getCodec().writeError("Internal server error");
         }
     }
-
-    @Override
-    public void update(boolean loggedIn, String username, Integer clientId) {
-        LOGGER.info(String.format("Updating login state for client %s - Logged in: %b, Username: %s, Client ID: %d",
-                clientSocket.getRemoteSocketAddress(), loggedIn, username, clientId));
-        this.loggedIn = loggedIn;
-        this.loggedUsername = username;
-        this.loggedClientId = clientId;
-        commandFactory.updateLoginState(loggedIn, username, clientId);
-    }
-}
\ No newline at end of file
+}
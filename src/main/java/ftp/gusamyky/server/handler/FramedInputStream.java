@@ -0,0 +1,277 @@
+package ftp.gusamyky.server.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The single decoder for everything a client sends on its connection.
+ * Control lines and binary payload are read from the same buffer, so payload
+ * bytes that arrive together with a command or size line are never swallowed
+ * by a separate text reader. Large payload reads bypass the buffer once it is
+ * empty.
+ */
+public class FramedInputStream extends InputStream {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final InputStream source;
+    private final byte[] buffer;
+    private int start;
+    private int end;
+
+    public FramedInputStream(InputStream source) {
+        this(source, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param source     The stream to read from when the buffer is empty
+     * @param bufferSize Buffer size, which is also the maximum line length
+     */
+    public FramedInputStream(InputStream source, int bufferSize) {
+        this.source = source;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Receives a line straight from the decoder's buffer, without copying it
+     * into a String first.
+     */
+    @FunctionalInterface
+    public interface LineConsumer {
+        /**
+         * @param buffer The decoder's buffer; only valid until the next read
+         * @param offset Offset of the first byte of the line
+         * @param length Length of the line without its terminator
+         * @throws IOException If the consumer fails
+         */
+        void accept(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Reads a line terminated by LF (an optional preceding CR is dropped),
+     * blocking until it is complete.
+     *
+     * @return The line, or null at end of stream
+     * @throws IOException If an I/O error occurs or the line does not fit into
+     *                     the buffer
+     */
+    public String readLine() throws IOException {
+        int newline = awaitLine();
+        if (newline < 0) {
+            return null;
+        }
+        int lineStart = start;
+        return new String(buffer, lineStart, consumeLine(newline), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a line like {@link #readLine()} but hands its bytes to the consumer
+     * in place.
+     *
+     * @param consumer Receives the line
+     * @return false at end of stream
+     * @throws IOException If an I/O error occurs, the line does not fit into the
+     *                     buffer or the consumer fails
+     */
+    public boolean readLine(LineConsumer consumer) throws IOException {
+        int newline = awaitLine();
+        if (newline < 0) {
+            return false;
+        }
+        int lineStart = start;
+        consumer.accept(buffer, lineStart, consumeLine(newline));
+        return true;
+    }
+
+    /**
+     * Hands the next buffered line to the consumer without reading from the
+     * source.
+     *
+     * @param consumer Receives the line
+     * @return false if no complete line is buffered
+     * @throws IOException If the consumer fails
+     */
+    public boolean pollLine(LineConsumer consumer) throws IOException {
+        int newline = indexOfNewline(start);
+        if (newline < 0) {
+            return false;
+        }
+        int lineStart = start;
+        consumer.accept(buffer, lineStart, consumeLine(newline));
+        return true;
+    }
+
+    /**
+     * @return true if a complete line is buffered
+     */
+    public boolean hasLine() {
+        return indexOfNewline(start) >= 0;
+    }
+
+    /**
+     * Returns a buffered byte without consuming it.
+     *
+     * @param index Position relative to the next unread byte
+     * @return The byte as an unsigned value, or -1 if it is not buffered yet
+     */
+    public int peek(int index) {
+        return index < end - start ? buffer[start + index] & 0xFF : -1;
+    }
+
+    /**
+     * @return The size of the buffer, which bounds lines and peeked frames
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * @return true if the buffer has no room left for more data
+     */
+    public boolean isFull() {
+        return end - start == buffer.length;
+    }
+
+    /**
+     * Reads whatever the channel has available into the buffer. Intended for
+     * non-blocking channels driven by a selector.
+     *
+     * @param channel The channel to read from
+     * @return The number of bytes read, or -1 at end of stream
+     * @throws IOException If an I/O error occurs
+     */
+    public int fillFrom(ReadableByteChannel channel) throws IOException {
+        compact();
+        int read = channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end));
+        if (read > 0) {
+            end += read;
+        }
+        return read;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (start == end && fill() <= 0) {
+            return -1;
+        }
+        return buffer[start++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (start == end) {
+            if (len >= buffer.length) {
+                return source.read(b, off, len);
+            }
+            if (fill() <= 0) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, end - start);
+        System.arraycopy(buffer, start, b, off, n);
+        start += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        int buffered = end - start;
+        if (buffered > 0) {
+            int skipped = (int) Math.min(n, buffered);
+            start += skipped;
+            return skipped;
+        }
+        return source.skip(n);
+    }
+
+    /**
+     * Returns the number of bytes held in the buffer. Callers that switch to
+     * reading the underlying socket directly must consume these first.
+     */
+    @Override
+    public int available() {
+        return end - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private int fill() throws IOException {
+        compact();
+        int read = source.read(buffer, end, buffer.length - end);
+        if (read > 0) {
+            end += read;
+        }
+        return read;
+    }
+
+    private void compact() {
+        if (start == 0) {
+            return;
+        }
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+    }
+
+    private int indexOfNewline(int from) {
+        for (int i = from; i < end; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Blocks until a complete line, or the unterminated last line of the
+     * stream, is buffered.
+     *
+     * @return Index of the terminating LF, {@code end} for an unterminated last
+     *         line, or -1 at end of stream
+     */
+    private int awaitLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            int newline = indexOfNewline(start + scanned);
+            if (newline >= 0) {
+                return newline;
+            }
+            scanned = end - start;
+            if (scanned == buffer.length) {
+                throw new IOException("Line exceeds " + buffer.length + " bytes");
+            }
+            if (fill() < 0) {
+                return start == end ? -1 : end;
+            }
+        }
+    }
+
+    /**
+     * Advances past the line ending at {@code newline}. The line bytes stay in
+     * place until the next read.
+     *
+     * @return The length of the line without its terminator
+     */
+    private int consumeLine(int newline) {
+        int lineEnd = newline > start && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+        int length = lineEnd - start;
+        start = newline < end ? newline + 1 : end;
+        if (start == end) {
+            start = end = 0;
+        }
+        return length;
+    }
+}
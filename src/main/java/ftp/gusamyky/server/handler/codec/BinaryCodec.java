@@ -0,0 +1,260 @@
+package ftp.gusamyky.server.handler.codec;
+
+import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.handler.FramedInputStream;
+import ftp.gusamyky.server.handler.command.Command;
+import ftp.gusamyky.server.handler.command.CommandTable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Length-prefixed binary protocol, negotiated with the text command
+ * {@code BINARY}.
+ * <p>
+ * Requests are framed as {@code opcode (u8) | request id (i32) | length (i32)}
+ * followed by {@code length} bytes of payload; replies as
+ * {@code status (u8) | request id (i32) | length (i32) | payload}. All integers
+ * are big-endian. Payloads are sequences of typed fields: {@link #FIELD_STRING}
+ * followed by a u16 byte count and UTF-8 bytes, or {@link #FIELD_LONG} followed
+ * by an i64. Raw upload and download data is not part of a frame: it follows
+ * the UPLOAD request or the {@link #STATUS_DATA} reply that announces its size.
+ * Replies listing an unbounded number of entries send one {@link #STATUS_ROW}
+ * frame per entry, terminated by a {@link #STATUS_OK} frame.
+ * <p>
+ * Each reply carries the id of the request it answers. Requests are still
+ * executed in the order they arrive.
+ */
+public class BinaryCodec implements ProtocolCodec {
+    public static final int HEADER_SIZE = 9;
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_ERROR = 1;
+    public static final int STATUS_DATA = 2;
+    public static final int STATUS_READY = 3;
+    public static final int STATUS_ROW = 4;
+    public static final int FIELD_STRING = 1;
+    public static final int FIELD_LONG = 2;
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+    private static final int OUTPUT_BUFFER_SIZE = 16384;
+
+    private final FramedInputStream input;
+    private final OutputStream output;
+    private final CommandTable commandTable;
+    private final byte[] header = new byte[HEADER_SIZE];
+    private final byte[] payload;
+    private final StringBuilder args = new StringBuilder();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+    private int requestId;
+
+    /**
+     * Creates a new binary codec.
+     *
+     * @param input        The connection's decoder
+     * @param output       The client socket's output stream
+     * @param commandTable The table to resolve opcodes with
+     */
+    public BinaryCodec(FramedInputStream input, OutputStream output, CommandTable commandTable) {
+        this.input = input;
+        this.output = new BufferedOutputStream(output, OUTPUT_BUFFER_SIZE);
+        this.commandTable = commandTable;
+        this.payload = new byte[input.capacity() - HEADER_SIZE];
+    }
+
+    @Override
+    public boolean readRequest(RequestSink sink) throws IOException {
+        int read = input.readNBytes(header, 0, HEADER_SIZE);
+        if (read == 0) {
+            return false;
+        }
+        if (read < HEADER_SIZE) {
+            throw new EOFException("Truncated frame header");
+        }
+        int length = checkLength(readInt(header, 5));
+        if (input.readNBytes(payload, 0, length) < length) {
+            throw new EOFException("Truncated frame payload");
+        }
+        requestId = readInt(header, 1);
+        Command command = commandTable.lookup(header[0] & 0xFF);
+        sink.accept(command, decodeArgs(length));
+        return true;
+    }
+
+    @Override
+    public boolean pollRequest(RequestSink sink) throws IOException {
+        return hasRequest() && readRequest(sink);
+    }
+
+    @Override
+    public boolean hasRequest() throws IOException {
+        int buffered = input.available();
+        if (buffered < HEADER_SIZE) {
+            return false;
+        }
+        int length = checkLength(
+                input.peek(5) << 24 | input.peek(6) << 16 | input.peek(7) << 8 | input.peek(8));
+        return buffered >= HEADER_SIZE + length;
+    }
+
+    @Override
+    public void writeOk(String message) throws IOException {
+        body.reset();
+        writeString(message);
+        writeFrame(STATUS_OK);
+    }
+
+    @Override
+    public void writeError(String message) throws IOException {
+        body.reset();
+        writeString(message);
+        writeFrame(STATUS_ERROR);
+    }
+
+    @Override
+    public void writeMessage(String message) throws IOException {
+        writeOk(message);
+    }
+
+    @Override
+    public void writeFileList(List<String> filenames) throws IOException {
+        body.reset();
+        for (String filename : filenames) {
+            writeString(filename);
+        }
+        writeFrame(STATUS_OK);
+    }
+
+    @Override
+    public void beginHistory() {
+        // Entries are framed individually, there is nothing to open
+    }
+
+    @Override
+    public void writeHistoryEntry(OperationHistoryModel operation) throws IOException {
+        body.reset();
+        writeString(String.valueOf(operation.getTimestamp()));
+        writeString(operation.getType().name());
+        writeString(operation.getResult().name());
+        writeString(operation.getFilename() != null ? operation.getFilename() : "");
+        writeLongField(operation.getBytes() != null ? operation.getBytes() : -1);
+        writeLongField(operation.getDurationMs() != null ? operation.getDurationMs() : -1);
+        writeFrame(STATUS_ROW);
+    }
+
+    /**
+     * Ends the history with an OK frame that carries the next cursor as its
+     * only field, or no field on the last page.
+     */
+    @Override
+    public void endHistory(String nextCursor) throws IOException {
+        body.reset();
+        if (nextCursor != null) {
+            writeString(nextCursor);
+        }
+        writeFrame(STATUS_OK);
+    }
+
+    @Override
+    public void writeReady() throws IOException {
+        body.reset();
+        writeFrame(STATUS_READY);
+        output.flush();
+    }
+
+    @Override
+    public void writeDataHeader(long size) throws IOException {
+        body.reset();
+        writeLongField(size);
+        writeFrame(STATUS_DATA);
+        output.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    private int checkLength(int length) throws IOException {
+        if (length < 0 || length > payload.length) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Joins the payload fields into the space-separated argument string the
+     * commands expect.
+     */
+    private String decodeArgs(int length) throws IOException {
+        if (length == 0) {
+            return "";
+        }
+        args.setLength(0);
+        int pos = 0;
+        while (pos < length) {
+            if (args.length() > 0) {
+                args.append(' ');
+            }
+            int type = payload[pos++];
+            if (type == FIELD_STRING && pos + 2 <= length) {
+                int size = (payload[pos] & 0xFF) << 8 | payload[pos + 1] & 0xFF;
+                pos += 2;
+                if (pos + size > length) {
+                    throw new IOException("Truncated string field");
+                }
+                args.append(new String(payload, pos, size, StandardCharsets.UTF_8));
+                pos += size;
+            } else if (type == FIELD_LONG && pos + 8 <= length) {
+                args.append((long) readInt(payload, pos) << 32 | readInt(payload, pos + 4) & 0xFFFFFFFFL);
+                pos += 8;
+            } else {
+                throw new IOException("Malformed field of type " + type);
+            }
+        }
+        return args.toString();
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IOException("Field exceeds " + MAX_STRING_LENGTH + " bytes");
+        }
+        body.write(FIELD_STRING);
+        body.write(bytes.length >>> 8);
+        body.write(bytes.length);
+        body.write(bytes);
+    }
+
+    private void writeLongField(long value) {
+        body.write(FIELD_LONG);
+        writeLong(value);
+    }
+
+    private void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            body.write((int) (value >>> shift));
+        }
+    }
+
+    private void writeFrame(int status) throws IOException {
+        output.write(status);
+        writeInt(requestId);
+        writeInt(body.size());
+        body.writeTo(output);
+    }
+
+    private void writeInt(int value) throws IOException {
+        output.write(value >>> 24);
+        output.write(value >>> 16);
+        output.write(value >>> 8);
+        output.write(value);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
+}
@@ -0,0 +1,133 @@
+package ftp.gusamyky.server.handler.codec;
+
+import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.handler.command.Command;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Wire format of a client session.
+ * A codec turns incoming bytes into commands and renders command replies, so
+ * the command implementations are shared by every protocol the server speaks.
+ * Replies are buffered until {@link #flush()}.
+ */
+public interface ProtocolCodec {
+    /**
+     * Receives a decoded request.
+     */
+    @FunctionalInterface
+    interface RequestSink {
+        /**
+         * @param command The command to run, or null for a request that carries
+         *                no command (such as a blank line)
+         * @param args    The command arguments, empty if none were given
+         */
+        void accept(Command command, String args);
+    }
+
+    /**
+     * Reads the next request, blocking until it is complete.
+     *
+     * @param sink Receives the request
+     * @return false at end of stream
+     * @throws IOException If an I/O error occurs or the request is malformed
+     */
+    boolean readRequest(RequestSink sink) throws IOException;
+
+    /**
+     * Decodes the next request if it is already buffered completely.
+     *
+     * @param sink Receives the request
+     * @return false if no complete request is buffered
+     * @throws IOException If the request is malformed
+     */
+    boolean pollRequest(RequestSink sink) throws IOException;
+
+    /**
+     * @return true if a complete request is buffered
+     * @throws IOException If the buffered request is malformed
+     */
+    boolean hasRequest() throws IOException;
+
+    /**
+     * Writes a success reply.
+     *
+     * @param message The message to send
+     * @throws IOException If an I/O error occurs
+     */
+    void writeOk(String message) throws IOException;
+
+    /**
+     * Writes an error reply.
+     *
+     * @param message The message to send
+     * @throws IOException If an I/O error occurs
+     */
+    void writeError(String message) throws IOException;
+
+    /**
+     * Writes an informational reply that is neither OK nor ERROR in the text
+     * protocol.
+     *
+     * @param message The message to send
+     * @throws IOException If an I/O error occurs
+     */
+    void writeMessage(String message) throws IOException;
+
+    /**
+     * Writes the reply to LIST.
+     *
+     * @param filenames The names of the listed files
+     * @throws IOException If an I/O error occurs
+     */
+    void writeFileList(List<String> filenames) throws IOException;
+
+    /**
+     * Starts the reply to HISTORY. The entries follow one at a time, so a page
+     * is never held in memory as a whole.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    void beginHistory() throws IOException;
+
+    /**
+     * Writes one entry of the HISTORY reply started with
+     * {@link #beginHistory()}.
+     *
+     * @param operation The operation to list
+     * @throws IOException If an I/O error occurs
+     */
+    void writeHistoryEntry(OperationHistoryModel operation) throws IOException;
+
+    /**
+     * Completes the HISTORY reply.
+     *
+     * @param nextCursor The cursor the client passes to read the next page, or
+     *                   null if this was the last page
+     * @throws IOException If an I/O error occurs
+     */
+    void endHistory(String nextCursor) throws IOException;
+
+    /**
+     * Tells the client that the server is ready for upload data and flushes.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    void writeReady() throws IOException;
+
+    /**
+     * Announces raw data of the given size and flushes, so the data can be
+     * written to the socket directly afterwards.
+     *
+     * @param size Number of raw bytes that follow
+     * @throws IOException If an I/O error occurs
+     */
+    void writeDataHeader(long size) throws IOException;
+
+    /**
+     * Sends all buffered replies.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,171 @@
+package ftp.gusamyky.server.handler.codec;
+
+import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.handler.FramedInputStream;
+import ftp.gusamyky.server.handler.command.Command;
+import ftp.gusamyky.server.handler.command.CommandTable;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The line-based text protocol: {@code COMMAND [arguments]} requests and
+ * {@code OK: ...} / {@code ERROR: ...} replies.
+ * Command lines are tokenized in the decoder's buffer and resolved through the
+ * shared {@link CommandTable}; only the argument string is allocated per
+ * command.
+ */
+public class TextCodec implements ProtocolCodec {
+    private static final Logger LOGGER = Logger.getLogger(TextCodec.class.getName());
+    private final FramedInputStream input;
+    private final BufferedWriter writer;
+    private final CommandTable commandTable;
+    private final FramedInputStream.LineConsumer lineDecoder = this::decodeCommand;
+    private RequestSink sink;
+    private int historyEntries;
+
+    /**
+     * Creates a new text codec.
+     *
+     * @param input        The connection's decoder
+     * @param writer       The writer replies are buffered in
+     * @param commandTable The table to resolve command names with
+     */
+    public TextCodec(FramedInputStream input, BufferedWriter writer, CommandTable commandTable) {
+        this.input = input;
+        this.writer = writer;
+        this.commandTable = commandTable;
+    }
+
+    @Override
+    public boolean readRequest(RequestSink sink) throws IOException {
+        this.sink = sink;
+        return input.readLine(lineDecoder);
+    }
+
+    @Override
+    public boolean pollRequest(RequestSink sink) throws IOException {
+        this.sink = sink;
+        return input.pollLine(lineDecoder);
+    }
+
+    @Override
+    public boolean hasRequest() {
+        return input.hasLine();
+    }
+
+    @Override
+    public void writeOk(String message) throws IOException {
+        writer.write("OK: ");
+        writer.write(message);
+        writer.write('\n');
+    }
+
+    @Override
+    public void writeError(String message) throws IOException {
+        writer.write("ERROR: ");
+        writer.write(message);
+        writer.write('\n');
+    }
+
+    @Override
+    public void writeMessage(String message) throws IOException {
+        writer.write(message);
+        writer.write('\n');
+    }
+
+    @Override
+    public void writeFileList(List<String> filenames) throws IOException {
+        writer.write("FILES:");
+        if (filenames.isEmpty()) {
+            writer.write(" (no files)");
+        } else {
+            for (String filename : filenames) {
+                writer.write(' ');
+                writer.write(filename);
+            }
+        }
+        writer.write('\n');
+    }
+
+    @Override
+    public void beginHistory() throws IOException {
+        historyEntries = 0;
+        writer.write("HISTORY: ");
+    }
+
+    @Override
+    public void writeHistoryEntry(OperationHistoryModel operation) throws IOException {
+        if (historyEntries++ > 0) {
+            writer.write("; ");
+        }
+        writer.write(String.valueOf(operation.getTimestamp()));
+        writer.write(" | ");
+        writer.write(operation.describe());
+    }
+
+    /**
+     * Ends the history line; a further page is announced with
+     * {@code ; NEXT <cursor>} at the end of the line.
+     */
+    @Override
+    public void endHistory(String nextCursor) throws IOException {
+        if (historyEntries == 0) {
+            writer.write("(no operations)");
+        }
+        if (nextCursor != null) {
+            writer.write("; NEXT ");
+            writer.write(nextCursor);
+        }
+        writer.write('\n');
+    }
+
+    @Override
+    public void writeReady() throws IOException {
+        writer.write("READY\n");
+        writer.flush();
+    }
+
+    @Override
+    public void writeDataHeader(long size) throws IOException {
+        writer.write(Long.toString(size));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Splits a command line into the command token and its arguments in place
+     * and resolves the token. Blank lines carry no command.
+     */
+    private void decodeCommand(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int tokenStart = offset;
+        while (tokenStart < end && buffer[tokenStart] <= ' ') {
+            tokenStart++;
+        }
+        if (tokenStart == end) {
+            sink.accept(null, "");
+            return;
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Received command: " + new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+        int tokenEnd = tokenStart;
+        while (tokenEnd < end && buffer[tokenEnd] != ' ') {
+            tokenEnd++;
+        }
+        Command command = commandTable.lookup(buffer, tokenStart, tokenEnd - tokenStart);
+        String args = tokenEnd + 1 < end
+                ? new String(buffer, tokenEnd + 1, end - tokenEnd - 1, StandardCharsets.UTF_8)
+                : "";
+        sink.accept(command, args);
+    }
+}
@@ -1,106 +1,136 @@
 package ftp.gusamyky.server.handler.command;
 
+import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationType;
 import ftp.gusamyky.server.service.ServiceFactory;
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Base class for all FTP server commands.
  * This class provides common functionality for all command implementations.
+ * Replies are only buffered in the session's codec; the session flushes them
+ * once it has no further pipelined command to run.
  */
 public abstract class BaseCommand implements Command {
     private static final Logger LOGGER = Logger.getLogger(BaseCommand.class.getName());
-    protected final ServiceFactory serviceFactory;
-    protected final BufferedWriter writer;
-    protected final String args;
-    protected final String clientIp;
-    protected final boolean loggedIn;
-    protected final String loggedUsername;
-    protected final Integer loggedClientId;
-    protected final LoginStateUpdater loginStateUpdater;
-
-    /**
-     * Creates a new command instance.
-     *
-     * @param serviceFactory    The service factory to use
-     * @param writer            The writer to use for sending responses
-     * @param args              The command arguments
-     * @param clientIp          The IP address of the client
-     * @param loggedIn          Whether the client is logged in
-     * @param loggedUsername    The username of the logged-in client, or null if not
-     *                          logged in
-     * @param loggedClientId    The ID of the logged-in client, or null if not
-     *                          logged in
-     * @param loginStateUpdater The login state updater to use
-     */
-    public BaseCommand(ServiceFactory serviceFactory, BufferedWriter writer, String args, String clientIp,
-            boolean loggedIn, String loggedUsername, Integer loggedClientId, LoginStateUpdater loginStateUpdater) {
-        this.serviceFactory = serviceFactory;
-        this.writer = writer;
-        this.args = args;
-        this.clientIp = clientIp;
-        this.loggedIn = loggedIn;
-        this.loggedUsername = loggedUsername;
-        this.loggedClientId = loggedClientId;
-        this.loginStateUpdater = loginStateUpdater;
-        LOGGER.info(String.format("Created command %s for client %s", getCommandName(), clientIp));
-    }
 
     /**
      * Sends an error message to the client.
      *
+     * @param context The session to reply to
      * @param message The error message to send
      * @throws IOException If an I/O error occurs
      */
-    protected void sendError(String message) throws IOException {
-        LOGGER.warning(String.format("Error for client %s: %s", clientIp, message));
-        writer.write("ERROR: " + message + "\n");
-        writer.flush();
+    protected void sendError(CommandContext context, String message) throws IOException {
+        LOGGER.warning(String.format("Error for client %s: %s", context.getClientIp(), message));
+        context.getCodec().writeError(message);
     }
 
     /**
      * Sends a success message to the client.
      *
+     * @param context The session to reply to
      * @param message The success message to send
      * @throws IOException If an I/O error occurs
      */
-    protected void sendOk(String message) throws IOException {
-        LOGGER.info(String.format("Success for client %s: %s", clientIp, message));
-        writer.write("OK: " + message + "\n");
-        writer.flush();
+    protected void sendOk(CommandContext context, String message) throws IOException {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("Success for client %s: %s", context.getClientIp(), message));
+        }
+        context.getCodec().writeOk(message);
     }
 
     /**
-     * Updates the login state of the client.
+     * Validates that the client is logged in.
      *
-     * @param loggedIn Whether the client is logged in
-     * @param username The username of the logged-in client, or null if not logged
-     *                 in
-     * @param clientId The ID of the logged-in client, or null if not logged in
+     * @param context The session to check
+     * @return true if the client is logged in, false otherwise
+     * @throws IOException If an I/O error occurs
      */
-    protected void updateLoginState(boolean loggedIn, String username, Integer clientId) {
-        if (loginStateUpdater != null) {
-            LOGGER.info(String.format("Updating login state for client %s - Logged in: %b, Username: %s, Client ID: %d",
-                    clientIp, loggedIn, username, clientId));
-            loginStateUpdater.update(loggedIn, username, clientId);
-        } else {
-            LOGGER.warning(String.format("No login state updater available for client %s", clientIp));
+    protected boolean validateLogin(CommandContext context) throws IOException {
+        if (!context.isLoggedIn() || context.getLoggedUsername() == null || context.getLoggedClientId() == null) {
+            LOGGER.warning(String.format("Client %s not logged in", context.getClientIp()));
+            sendError(context, "Not logged in");
+            return false;
         }
+        return true;
     }
 
     /**
-     * Validates that the client is logged in.
+     * Resolves where a file of the logged-in client is stored. Each owner has
+     * a directory of its own inside the files directory, so two clients may
+     * keep files of the same name.
      *
-     * @return true if the client is logged in, false otherwise
+     * @param context  The session of the file's owner
+     * @param filename The name of the file
+     * @return The path of the stored file
+     */
+    protected Path getStoredFilePath(CommandContext context, String filename) {
+        return Paths.get(context.getServiceFactory().getServerConfig().getFilesDir(),
+                String.valueOf(context.getLoggedClientId()), filename);
+    }
+
+    /**
+     * Counts a LOGIN or REGISTER attempt against the limits for the client's IP
+     * and, if given, the username, and refuses it once a limit is reached.
+     * Checked before any password is hashed, so a flood of attempts costs no
+     * CPU time.
+     *
+     * @param context  The session the attempt was made on
+     * @param username The username the attempt is for, or null
+     * @return true if the attempt may proceed, false if an error has been sent
      * @throws IOException If an I/O error occurs
      */
-    protected boolean validateLogin() throws IOException {
-        if (!loggedIn || loggedUsername == null || loggedClientId == null) {
-            LOGGER.warning(String.format("Client %s not logged in", clientIp));
-            sendError("Not logged in");
+    protected boolean checkAttemptRate(CommandContext context, String username) throws IOException {
+        ServiceFactory serviceFactory = context.getServiceFactory();
+        long retryMs = serviceFactory.getLoginIpLimiter().tryAcquire(context.getClientIp());
+        if (retryMs == 0 && username != null) {
+            retryMs = serviceFactory.getLoginUserLimiter().tryAcquire(username);
+        }
+        if (retryMs > 0) {
+            sendError(context, "Too many attempts, retry after " + retryMs + " ms");
             return false;
         }
         return true;
     }
-}
\ No newline at end of file
+
+    /**
+     * Records an operation that concerned no file in the history of the
+     * logged-in client. Does nothing if no client is logged in.
+     *
+     * @param context The session the operation was performed on
+     * @param type    The kind of operation
+     * @param result  The outcome of the operation
+     */
+    protected void logOperation(CommandContext context, OperationType type, OperationResult result) {
+        logOperation(context, type, result, null, null, -1);
+    }
+
+    /**
+     * Records an operation in the history of the logged-in client. Does nothing
+     * if no client is logged in.
+     *
+     * @param context    The session the operation was performed on
+     * @param type       The kind of operation
+     * @param result     The outcome of the operation
+     * @param filename   The file the operation concerned, or null
+     * @param bytes      The number of bytes transferred, or null
+     * @param startNanos The {@link System#nanoTime()} at which the operation
+     *                   started, or -1 to record no duration
+     */
+    protected void logOperation(CommandContext context, OperationType type, OperationResult result, String filename,
+            Long bytes, long startNanos) {
+        Integer clientId = context.getLoggedClientId();
+        if (clientId != null) {
+            Long durationMs = startNanos >= 0 ? (System.nanoTime() - startNanos) / 1_000_000 : null;
+            context.getServiceFactory().getHistoryService().addOperation(new OperationHistoryModel(0, clientId,
+                    type, result, filename, bytes, durationMs, context.getClientIp(), LocalDateTime.now()));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ftp.gusamyky.server.handler.command;
+
+import ftp.gusamyky.server.handler.codec.BinaryCodec;
+import ftp.gusamyky.server.handler.codec.ProtocolCodec;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Command for switching the session to the binary protocol.
+ * The confirmation is the last reply sent in the text protocol; every byte the
+ * client sends after the command line is read as a binary frame.
+ */
+public class BinaryCommand extends BaseCommand {
+    private static final Logger LOGGER = Logger.getLogger(BinaryCommand.class.getName());
+    private static final String COMMAND_NAME = "BINARY";
+
+    @Override
+    public void execute(CommandContext context, String args) throws IOException {
+        ProtocolCodec codec = context.getCodec();
+        if (codec instanceof BinaryCodec) {
+            sendError(context, "Binary protocol already enabled");
+            return;
+        }
+        sendOk(context, "Binary protocol enabled");
+        codec.flush();
+        context.setCodec(new BinaryCodec(context.getInputStream(), context.getOutputStream(),
+                CommandTable.getInstance()));
+        LOGGER.info(String.format("Client %s switched to the binary protocol", context.getClientIp()));
+    }
+
+    @Override
+    public String getCommandName() {
+        return COMMAND_NAME;
+    }
+}
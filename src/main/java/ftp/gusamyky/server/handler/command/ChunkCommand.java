@@ -0,0 +1,168 @@
+package ftp.gusamyky.server.handler.command;
+
+import ftp.gusamyky.server.config.ServerConfig;
+import ftp.gusamyky.server.transfer.ChunkedUpload;
+import ftp.gusamyky.server.transfer.UploadStaging;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Command for receiving one chunk of a chunked upload.
+ * {@code CHUNK <filename> <size> offset=<n> length=<m> crc=<crc32c>} is
+ * followed immediately by the {@code m} bytes of the chunk, which belong at
+ * offset {@code n} of a file of {@code size} bytes. The CRC32C of the chunk is
+ * given as eight hex digits. The chunk is held in memory and verified before
+ * any of it is written, so a chunk that does not match leaves the file as it
+ * was and must be sent again. Chunks may be sent in any order
+ * and over several sessions at once. The upload is completed with
+ * {@code COMMIT <filename> <size>}.
+ */
+public class ChunkCommand extends BaseCommand {
+    private static final Logger LOGGER = Logger.getLogger(ChunkCommand.class.getName());
+    private static final String COMMAND_NAME = "CHUNK";
+    private static final String OFFSET_OPTION = "offset=";
+    private static final String LENGTH_OPTION = "length=";
+    private static final String CRC_OPTION = "crc=";
+
+    @Override
+    public void execute(CommandContext context, String args) throws IOException {
+        ChunkRequest request = ChunkRequest.parse(args);
+        if (!validateLogin(context)) {
+            discardPayload(context, request);
+            return;
+        }
+        if (request.filename().isEmpty() || request.size() <= 0 || request.length() <= 0) {
+            sendError(context, "CHUNK ERROR: Usage: CHUNK <filename> <size> offset=<n> length=<m> crc=<crc32c>");
+            discardPayload(context, request);
+            return;
+        }
+        if (request.offset() < 0 || request.offset() + request.length() > request.size()) {
+            sendError(context, "CHUNK ERROR: Chunk lies outside the file");
+            discardPayload(context, request);
+            return;
+        }
+        if (request.crc() < 0) {
+            sendError(context, "CHUNK ERROR: Invalid checksum");
+            discardPayload(context, request);
+            return;
+        }
+        ServerConfig config = context.getServiceFactory().getServerConfig();
+        if (request.size() > config.getMaxChunkedUploadSize()) {
+            sendError(context, "CHUNK ERROR: File exceeds the maximum of " + config.getMaxChunkedUploadSize()
+                    + " bytes");
+            discardPayload(context, request);
+            return;
+        }
+        if (request.length() > config.getMaxChunkSize()) {
+            sendError(context, "CHUNK ERROR: Chunk exceeds the maximum of " + config.getMaxChunkSize() + " bytes");
+            discardPayload(context, request);
+            return;
+        }
+
+        byte[] chunk = new byte[(int) request.length()];
+        if (context.getInputStream().readNBytes(chunk, 0, chunk.length) != chunk.length) {
+            sendError(context, "CHUNK ERROR: Chunk incomplete");
+            return;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(chunk, 0, chunk.length);
+        if (crc.getValue() != request.crc()) {
+            LOGGER.warning(String.format("Checksum mismatch in chunk at %d of '%s' from client %s",
+                    request.offset(), request.filename(), context.getClientIp()));
+            sendError(context, "CHUNK ERROR: Checksum mismatch");
+            return;
+        }
+        store(context, request, chunk);
+    }
+
+    @Override
+    public String getCommandName() {
+        return COMMAND_NAME;
+    }
+
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
+    @Override
+    public void reject(CommandContext context, String args) throws IOException {
+        discardPayload(context, ChunkRequest.parse(args));
+    }
+
+    /**
+     * Writes a verified chunk to the part file of its upload, starting the
+     * upload if this is its first chunk.
+     */
+    private void store(CommandContext context, ChunkRequest request, byte[] chunk) throws IOException {
+        UploadStaging staging = context.getServiceFactory().getUploadStaging();
+        ChunkedUpload upload = null;
+        try {
+            upload = staging.openChunked(context.getLoggedClientId(), request.filename(), request.size(), true);
+            upload.write(chunk, request.offset());
+            sendOk(context, "Chunk received, " + upload.getReceivedBytes() + "/" + request.size());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error storing chunk of " + request.filename(), e);
+            sendError(context, "CHUNK ERROR: " + e.getMessage());
+        } finally {
+            if (upload != null) {
+                staging.release(upload);
+            }
+        }
+    }
+
+    /**
+     * Skips the payload of a refused chunk so that it is not interpreted as
+     * commands.
+     */
+    private void discardPayload(CommandContext context, ChunkRequest request) throws IOException {
+        if (request.length() > 0) {
+            context.getInputStream().skipNBytes(request.length());
+        }
+    }
+
+    /**
+     * Arguments of a CHUNK request; numbers that are missing or malformed are
+     * -1.
+     */
+    private record ChunkRequest(String filename, long size, long offset, long length, long crc) {
+        private static ChunkRequest parse(String args) {
+            String rest = args.trim();
+            long offset = -1;
+            long length = -1;
+            long crc = -1;
+            int lastSpace;
+            while ((lastSpace = rest.lastIndexOf(' ')) > 0) {
+                String option = rest.substring(lastSpace + 1);
+                if (option.regionMatches(true, 0, OFFSET_OPTION, 0, OFFSET_OPTION.length())) {
+                    offset = parseNumber(option.substring(OFFSET_OPTION.length()), 10);
+                } else if (option.regionMatches(true, 0, LENGTH_OPTION, 0, LENGTH_OPTION.length())) {
+                    length = parseNumber(option.substring(LENGTH_OPTION.length()), 10);
+                } else if (option.regionMatches(true, 0, CRC_OPTION, 0, CRC_OPTION.length())) {
+                    crc = parseNumber(option.substring(CRC_OPTION.length()), 16);
+                    crc = crc <= 0xFFFFFFFFL ? crc : -1;
+                } else {
+                    break;
+                }
+                rest = rest.substring(0, lastSpace).trim();
+            }
+            lastSpace = rest.lastIndexOf(' ');
+            if (lastSpace <= 0) {
+                return new ChunkRequest("", -1, offset, length, crc);
+            }
+            return new ChunkRequest(rest.substring(0, lastSpace).trim(), parseNumber(rest.substring(lastSpace + 1), 10),
+                    offset, length, crc);
+        }
+
+        private static long parseNumber(String value, int radix) {
+            try {
+                long number = Long.parseLong(value, radix);
+                return number >= 0 ? number : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+}
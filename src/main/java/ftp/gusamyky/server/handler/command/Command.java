@@ -5,15 +5,18 @@ import java.io.IOException;
 /**
  * Interface for FTP server commands.
  * This interface is implemented by all command classes that handle specific FTP
- * commands.
+ * commands. Implementations are stateless and shared by all sessions; the
+ * per-session state is passed in through the {@link CommandContext}.
  */
 public interface Command {
     /**
      * Executes the command.
      *
+     * @param context The session the command was received on
+     * @param args    The command arguments, empty if none were given
      * @throws IOException If an I/O error occurs during command execution
      */
-    void execute() throws IOException;
+    void execute(CommandContext context, String args) throws IOException;
 
     /**
      * Returns the name of the command.
@@ -21,4 +24,27 @@ public interface Command {
      * @return The command name
      */
     String getCommandName();
-}
\ No newline at end of file
+
+    /**
+     * Returns whether the command moves bulk file data and should therefore run
+     * on the transfer pool rather than the session thread.
+     *
+     * @return true for transfer commands
+     */
+    default boolean isTransfer() {
+        return false;
+    }
+
+    /**
+     * Called instead of {@link #execute(CommandContext, String)} when the
+     * command could not be scheduled. Commands whose request carries inline
+     * payload must consume it here so the next command is read from the right
+     * position.
+     *
+     * @param context The session the command was received on
+     * @param args    The command arguments, empty if none were given
+     * @throws IOException If an I/O error occurs
+     */
+    default void reject(CommandContext context, String args) throws IOException {
+    }
+}
@@ -0,0 +1,126 @@
+package ftp.gusamyky.server.handler.command;
+
+import ftp.gusamyky.server.handler.FramedInputStream;
+import ftp.gusamyky.server.handler.codec.ProtocolCodec;
+import ftp.gusamyky.server.service.ServiceFactory;
+import java.io.OutputStream;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per-connection state handed to the stateless command handlers.
+ * One context is created per client session and holds its streams, protocol
+ * codec and login state, so executing a command does not allocate a command
+ * object.
+ */
+public class CommandContext {
+    private static final Logger LOGGER = Logger.getLogger(CommandContext.class.getName());
+    private final ServiceFactory serviceFactory;
+    private final String clientIp;
+    private final FramedInputStream inputStream;
+    private final OutputStream outputStream;
+    private final SocketChannel socketChannel;
+    private ProtocolCodec codec;
+    private boolean loggedIn;
+    private String loggedUsername;
+    private Integer loggedClientId;
+    private boolean closeRequested;
+
+    /**
+     * Creates a new command context for a client that is not logged in.
+     *
+     * @param serviceFactory The service factory to use
+     * @param codec          The protocol codec replies are written through
+     * @param clientIp       The IP address of the client
+     * @param inputStream    The connection's decoder, used for reading data
+     * @param outputStream   The output stream to use for writing data
+     * @param socketChannel  The channel of the client socket, or null if the
+     *                       socket has none
+     */
+    public CommandContext(ServiceFactory serviceFactory, ProtocolCodec codec, String clientIp,
+            FramedInputStream inputStream, OutputStream outputStream, SocketChannel socketChannel) {
+        this.serviceFactory = serviceFactory;
+        this.codec = codec;
+        this.clientIp = clientIp;
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+        this.socketChannel = socketChannel;
+    }
+
+    public ServiceFactory getServiceFactory() {
+        return serviceFactory;
+    }
+
+    public ProtocolCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Replaces the protocol codec. Takes effect from the next request on.
+     *
+     * @param codec The new codec
+     */
+    public void setCodec(ProtocolCodec codec) {
+        this.codec = codec;
+    }
+
+    public String getClientIp() {
+        return clientIp;
+    }
+
+    public FramedInputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    public SocketChannel getSocketChannel() {
+        return socketChannel;
+    }
+
+    public boolean isLoggedIn() {
+        return loggedIn;
+    }
+
+    public String getLoggedUsername() {
+        return loggedUsername;
+    }
+
+    public Integer getLoggedClientId() {
+        return loggedClientId;
+    }
+
+    /**
+     * Updates the login state of the client.
+     *
+     * @param loggedIn Whether the client is logged in
+     * @param username The username of the logged-in client, or null if not logged
+     *                 in
+     * @param clientId The ID of the logged-in client, or null if not logged in
+     */
+    public void updateLoginState(boolean loggedIn, String username, Integer clientId) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("Updating login state for client %s - Logged in: %b, Username: %s, Client ID: %d",
+                    clientIp, loggedIn, username, clientId));
+        }
+        this.loggedIn = loggedIn;
+        this.loggedUsername = username;
+        this.loggedClientId = clientId;
+    }
+
+    /**
+     * Asks for the connection to be closed once the current command's replies
+     * have been sent. Commands use this when the request stream can no longer
+     * be parsed, for example after a truncated payload.
+     */
+    public void requestClose() {
+        closeRequested = true;
+    }
+
+    public boolean isCloseRequested() {
+        return closeRequested;
+    }
+}
@@ -0,0 +1,112 @@
+package ftp.gusamyky.server.handler.command;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dispatch table mapping command names and binary opcodes to their handlers.
+ * The table is built once and shared by all sessions. Lookups compare the
+ * command token directly in the receive buffer, case-insensitively, so
+ * resolving a command neither splits nor upper-cases the line. Opcodes are
+ * assigned in registration order starting at 1, so new commands must be
+ * appended to keep existing opcodes stable.
+ */
+public final class CommandTable {
+    private static final Command UNKNOWN = new UnknownCommand();
+    private static final CommandTable INSTANCE = new CommandTable(
+            new LoginCommand(),
+            new RegisterCommand(),
+            new LogoutCommand(),
+            new UploadCommand(),
+            new DownloadCommand(),
+            new ListCommand(),
+            new HistoryCommand(),
+            new ReportCommand(),
+            new EchoCommand(),
+            new BinaryCommand(),
+            new ResumeCommand(),
+            new ChunkCommand(),
+            new CommitCommand());
+
+    /** Handlers indexed by opcode; index 0 is unused. */
+    private final Command[] byOpcode;
+    /** Handlers bucketed by the first letter of their name. */
+    private final Command[][] handlers = new Command[26][0];
+    /** Upper-case names, parallel to {@link #handlers}. */
+    private final byte[][][] names = new byte[26][0][];
+
+    private CommandTable(Command... commands) {
+        byOpcode = new Command[commands.length + 1];
+        System.arraycopy(commands, 0, byOpcode, 1, commands.length);
+        for (Command command : commands) {
+            byte[] name = command.getCommandName().getBytes(StandardCharsets.US_ASCII);
+            int bucket = name[0] - 'A';
+            int size = handlers[bucket].length;
+            handlers[bucket] = Arrays.copyOf(handlers[bucket], size + 1);
+            names[bucket] = Arrays.copyOf(names[bucket], size + 1);
+            handlers[bucket][size] = command;
+            names[bucket][size] = name;
+        }
+    }
+
+    /**
+     * @return The table holding every command the server supports
+     */
+    public static CommandTable getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Resolves a command token.
+     *
+     * @param buffer The buffer holding the token
+     * @param offset Offset of the first byte of the token
+     * @param length Length of the token
+     * @return The matching handler, or a handler answering "Unknown command"
+     */
+    public Command lookup(byte[] buffer, int offset, int length) {
+        if (length == 0) {
+            return UNKNOWN;
+        }
+        int bucket = toUpper(buffer[offset]) - 'A';
+        if (bucket < 0 || bucket >= handlers.length) {
+            return UNKNOWN;
+        }
+        byte[][] candidates = names[bucket];
+        for (int i = 0; i < candidates.length; i++) {
+            if (matches(candidates[i], buffer, offset, length)) {
+                return handlers[bucket][i];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Resolves a binary opcode.
+     *
+     * @param opcode The opcode
+     * @return The matching handler, or a handler answering "Unknown command"
+     */
+    public Command lookup(int opcode) {
+        if (opcode <= 0 || opcode >= byOpcode.length) {
+            return UNKNOWN;
+        }
+        return byOpcode[opcode];
+    }
+
+    private static boolean matches(byte[] name, byte[] buffer, int offset, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (toUpper(buffer[offset + i]) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int toUpper(byte b) {
+        return b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b;
+    }
+}
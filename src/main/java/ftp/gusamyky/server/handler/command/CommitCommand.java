@@ -0,0 +1,90 @@
+package ftp.gusamyky.server.handler.command;
+
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationType;
+import ftp.gusamyky.server.common.model.ServerFileModel;
+import ftp.gusamyky.server.service.ServiceFactory;
+import ftp.gusamyky.server.transfer.ChunkedUpload;
+import ftp.gusamyky.server.transfer.UploadStaging;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Command for completing a chunked upload.
+ * {@code COMMIT <filename> <size>} checks that every byte of the file has
+ * arrived through {@code CHUNK}, moves the file from the staging area to the
+ * files directory and registers it. If bytes are missing, the reply names the
+ * offset of the first one so the client can send that chunk again.
+ */
+public class CommitCommand extends BaseCommand {
+    private static final Logger LOGGER = Logger.getLogger(CommitCommand.class.getName());
+    private static final String COMMAND_NAME = "COMMIT";
+
+    @Override
+    public void execute(CommandContext context, String args) throws IOException {
+        long start = System.nanoTime();
+        if (!validateLogin(context)) {
+            return;
+        }
+
+        String trimmed = args.trim();
+        int lastSpace = trimmed.lastIndexOf(' ');
+        long size = lastSpace > 0 ? parseSize(trimmed.substring(lastSpace + 1)) : -1;
+        if (size <= 0) {
+            sendError(context, "COMMIT ERROR: Usage: COMMIT <filename> <size>");
+            return;
+        }
+        String filename = trimmed.substring(0, lastSpace).trim();
+
+        ServiceFactory serviceFactory = context.getServiceFactory();
+        Path target = getStoredFilePath(context, filename);
+        Files.createDirectories(target.getParent());
+        UploadStaging staging = serviceFactory.getUploadStaging();
+        ChunkedUpload upload = staging.openChunked(context.getLoggedClientId(), filename, size, false);
+        if (upload == null) {
+            sendError(context, "COMMIT ERROR: No chunked upload of " + filename);
+            return;
+        }
+        long gap = upload.getFirstGap();
+        if (gap >= 0) {
+            staging.release(upload);
+            sendError(context, "COMMIT ERROR: Missing data at offset " + gap + ", "
+                    + upload.getReceivedBytes() + "/" + size + " bytes received");
+            return;
+        }
+
+        try {
+            if (!staging.commit(upload, target)) {
+                sendError(context, "COMMIT ERROR: Chunks are still being received");
+                return;
+            }
+            serviceFactory.getFileService().saveFile(new ServerFileModel(0, filename, size,
+                    context.getLoggedClientId(), LocalDateTime.now()));
+            sendOk(context, "Upload successful");
+            logOperation(context, OperationType.UPLOAD, OperationResult.OK, filename, size, start);
+            LOGGER.info(String.format("[UPLOAD][COMMIT] File: '%s', Size: %d bytes, From IP: %s", filename, size,
+                    context.getClientIp()));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error committing chunked upload of " + filename, e);
+            sendError(context, "COMMIT ERROR: " + e.getMessage());
+            logOperation(context, OperationType.UPLOAD, OperationResult.IO_ERROR, filename, null, start);
+        }
+    }
+
+    @Override
+    public String getCommandName() {
+        return COMMAND_NAME;
+    }
+
+    private static long parseSize(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -1,86 +1,121 @@
 package ftp.gusamyky.server.handler.command;
 
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationType;
 import ftp.gusamyky.server.common.model.ServerFileModel;
-import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.service.IFileService;
 import ftp.gusamyky.server.service.ServiceFactory;
+import ftp.gusamyky.server.transfer.FileSender;
+import ftp.gusamyky.server.util.ConcurrencyLimiter;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.net.SocketException;
 
+/**
+ * Command for sending a file to the client.
+ * {@code DOWNLOAD <filename>} sends the whole file;
+ * {@code DOWNLOAD <filename> offset=<n>} sends it from byte {@code n} on, so a
+ * client can continue a download that broke off, and
+ * {@code DOWNLOAD <filename> offset=<n> length=<m>} sends at most {@code m}
+ * bytes from there, so a client can fetch disjoint segments of a file over
+ * several sessions in parallel. The data header announces the number of bytes
+ * that follow. How many downloads one client may run at once, over all its
+ * sessions, is capped.
+ */
 public class DownloadCommand extends BaseCommand {
     private static final Logger LOGGER = Logger.getLogger(DownloadCommand.class.getName());
     private static final String COMMAND_NAME = "DOWNLOAD";
-    private static final int BUFFER_SIZE = 16384;
-    private final OutputStream outputStream;
-
-    public DownloadCommand(ServiceFactory serviceFactory, BufferedWriter writer, String args, String clientIp,
-            boolean loggedIn, String loggedUsername, Integer loggedClientId, OutputStream outputStream,
-            LoginStateUpdater loginStateUpdater) {
-        super(serviceFactory, writer, args, clientIp, loggedIn, loggedUsername, loggedClientId, loginStateUpdater);
-        this.outputStream = outputStream;
-    }
+    private static final String OFFSET_OPTION = "offset=";
+    private static final String LENGTH_OPTION = "length=";
 
     @Override
-    public void execute() throws IOException {
-        if (!validateLogin()) {
+    public void execute(CommandContext context, String args) throws IOException {
+        long start = System.nanoTime();
+        if (!validateLogin(context)) {
             return;
         }
 
-        String filename = args.trim();
+        ServiceFactory serviceFactory = context.getServiceFactory();
+        String clientIp = context.getClientIp();
+
+        DownloadRequest request = DownloadRequest.parse(args);
+        String filename = request.filename();
         if (filename.isEmpty()) {
-            sendError("DOWNLOAD ERROR: No filename given");
-            logOperation("DOWNLOAD_FAIL:NoFilename");
+            sendError(context, "DOWNLOAD ERROR: No filename given");
+            logOperation(context, OperationType.DOWNLOAD, OperationResult.NO_FILENAME);
             return;
         }
 
-        ServerFileModel file = serviceFactory.getFileService().getFileByName(filename);
+        IFileService fileService = serviceFactory.getFileService();
+        ServerFileModel file = fileService.getFileByOwnerAndName(context.getLoggedClientId(), filename);
         if (file == null) {
-            sendError("DOWNLOAD ERROR: File not found");
-            logOperation("DOWNLOAD_FAIL:FileNotFound");
-            return;
-        }
-
-        if (file.getOwnerId() != loggedClientId) {
-            sendError("DOWNLOAD ERROR: Access denied");
-            logOperation("DOWNLOAD_FAIL:AccessDenied");
+            // Only a miss needs the owner-independent lookup, to tell the two errors apart
+            if (fileService.getFileByName(filename) != null) {
+                sendError(context, "DOWNLOAD ERROR: Access denied");
+                logOperation(context, OperationType.DOWNLOAD, OperationResult.ACCESS_DENIED, filename, null, start);
+            } else {
+                sendError(context, "DOWNLOAD ERROR: File not found");
+                logOperation(context, OperationType.DOWNLOAD, OperationResult.FILE_NOT_FOUND, filename, null, start);
+            }
             return;
         }
 
-        Path filePath = Paths.get(serviceFactory.getServerConfig().getFilesDir(), filename);
+        Path filePath = getStoredFilePath(context, filename);
         if (!Files.exists(filePath)) {
-            sendError("DOWNLOAD ERROR: File not found on server");
-            logOperation("DOWNLOAD_FAIL:FileNotFoundOnServer");
+            sendError(context, "DOWNLOAD ERROR: File not found on server");
+            logOperation(context, OperationType.DOWNLOAD, OperationResult.FILE_NOT_FOUND_ON_SERVER, filename, null,
+                    start);
             return;
         }
 
         long fileSize = Files.size(filePath);
-        writer.write(fileSize + "\n");
-        writer.flush();
+        long offset = request.offset();
+        if (offset < 0 || offset > fileSize || request.length() < -1) {
+            sendError(context, "DOWNLOAD ERROR: Invalid range");
+            logOperation(context, OperationType.DOWNLOAD, OperationResult.INVALID_OFFSET, filename, null, start);
+            return;
+        }
+        // A segment reaching past the end of the file is cut at the end
+        long count = request.length() >= 0 ? Math.min(request.length(), fileSize - offset) : fileSize - offset;
 
-        LOGGER.info(String.format("[DOWNLOAD][START] File: '%s', Size: %d bytes, To IP: %s",
-                filename, fileSize, clientIp));
+        int clientId = context.getLoggedClientId();
+        ConcurrencyLimiter<Integer> downloadLimiter = serviceFactory.getDownloadLimiter();
+        if (!downloadLimiter.tryAcquire(clientId)) {
+            sendError(context, "BUSY, retry after " + serviceFactory.getServerConfig().getBusyRetryMs() + " ms");
+            return;
+        }
+        try {
+            context.getCodec().writeDataHeader(count);
+            LOGGER.info(String.format("[DOWNLOAD][START] File: '%s', Size: %d bytes, Offset: %d, Length: %d, "
+                    + "To IP: %s", filename, fileSize, offset, count, clientIp));
+            transfer(context, filename, filePath, offset, count, start);
+        } finally {
+            downloadLimiter.release(clientId);
+        }
+    }
 
+    private void transfer(CommandContext context, String filename, Path filePath, long offset, long count,
+            long start) throws IOException {
+        String clientIp = context.getClientIp();
         try {
-            if (sendFile(filePath, fileSize)) {
-                logOperation("DOWNLOAD_OK: " + filename);
-                LOGGER.info(String.format("[DOWNLOAD][END] File: '%s', Size: %d bytes, To IP: %s",
-                        filename, fileSize, clientIp));
+            if (sendFile(context, filePath, offset, count)) {
+                logOperation(context, OperationType.DOWNLOAD, OperationResult.OK, filename, count, start);
+                LOGGER.info(String.format("[DOWNLOAD][END] File: '%s', Sent: %d bytes, To IP: %s",
+                        filename, count, clientIp));
             } else {
-                sendError("DOWNLOAD ERROR: Failed to send file");
-                logOperation("DOWNLOAD_FAIL:TransferError");
+                sendError(context, "DOWNLOAD ERROR: Failed to send file");
+                logOperation(context, OperationType.DOWNLOAD, OperationResult.TRANSFER_ERROR, filename, null, start);
             }
         } catch (SocketException e) {
             LOGGER.info(String.format("Client %s disconnected during file transfer", clientIp));
             throw e;
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, String.format("Error sending file to client %s", clientIp), e);
-            sendError("DOWNLOAD ERROR: Failed to send file");
-            logOperation("DOWNLOAD_FAIL:TransferError");
+            sendError(context, "DOWNLOAD ERROR: Failed to send file");
+            logOperation(context, OperationType.DOWNLOAD, OperationResult.TRANSFER_ERROR, filename, null, start);
         }
     }
 
@@ -89,52 +124,61 @@ public class DownloadCommand extends BaseCommand {
         return COMMAND_NAME;
     }
 
-    private boolean sendFile(Path filePath, long fileSize) throws IOException {
-        try (InputStream fileIn = Files.newInputStream(filePath)) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            long sent = 0;
-            int read;
-            long lastProgressPercent = 0;
-
-            while (sent < fileSize) {
-                read = fileIn.read(buffer, 0, (int) Math.min(buffer.length, fileSize - sent));
-                if (read == -1) {
-                    LOGGER.severe("End of stream reached before file transfer completed");
-                    return false;
-                }
-
-                try {
-                    outputStream.write(buffer, 0, read);
-                    outputStream.flush();
-                    sent += read;
-
-                    // Log progress every 10%
-                    long currentPercent = (sent * 100) / fileSize;
-                    if (currentPercent >= lastProgressPercent + 10) {
-                        LOGGER.info(String.format("Download progress: %d%% (%d/%d bytes)",
-                                currentPercent, sent, fileSize));
-                        lastProgressPercent = currentPercent;
-                    }
-                } catch (SocketException e) {
-                    LOGGER.info(String.format("Client %s disconnected during file transfer", clientIp));
-                    throw e;
-                }
-            }
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
 
-            if (sent != fileSize) {
-                LOGGER.severe(String.format("File size mismatch. Sent %d of %d bytes", sent, fileSize));
+    private boolean sendFile(CommandContext context, Path filePath, long offset, long count) throws IOException {
+        try {
+            long sent = FileSender.send(filePath, offset, count, context.getSocketChannel(),
+                    context.getOutputStream());
+            if (sent != count) {
+                LOGGER.severe(String.format("File size mismatch. Sent %d of %d bytes", sent, count));
                 return false;
             }
             return true;
+        } catch (SocketException e) {
+            LOGGER.info(String.format("Client %s disconnected during file transfer", context.getClientIp()));
+            throw e;
         }
     }
 
-    private void logOperation(String operation) {
-        if (loggedClientId != null) {
-            String user = loggedUsername != null ? loggedUsername : "unknown";
-            String opWithUserAndTime = operation + " [user:" + user + "] [" + LocalDateTime.now() + "]";
-            serviceFactory.getHistoryService().addOperation(
-                    new OperationHistoryModel(0, loggedClientId, opWithUserAndTime, LocalDateTime.now()));
+    /**
+     * Arguments of a DOWNLOAD request.
+     *
+     * @param filename The name of the requested file
+     * @param offset   The first byte to send; -1 if malformed
+     * @param length   The maximum number of bytes to send, -1 for the rest of
+     *                 the file; -2 if malformed
+     */
+    private record DownloadRequest(String filename, long offset, long length) {
+        private static DownloadRequest parse(String args) {
+            String rest = args.trim();
+            long offset = 0;
+            long length = -1;
+            int lastSpace;
+            while ((lastSpace = rest.lastIndexOf(' ')) > 0) {
+                String option = rest.substring(lastSpace + 1);
+                if (option.regionMatches(true, 0, OFFSET_OPTION, 0, OFFSET_OPTION.length())) {
+                    offset = parseNumber(option.substring(OFFSET_OPTION.length()), -1);
+                } else if (option.regionMatches(true, 0, LENGTH_OPTION, 0, LENGTH_OPTION.length())) {
+                    length = parseNumber(option.substring(LENGTH_OPTION.length()), -2);
+                } else {
+                    break;
+                }
+                rest = rest.substring(0, lastSpace).trim();
+            }
+            return new DownloadRequest(rest, offset, length);
+        }
+
+        private static long parseNumber(String value, long malformed) {
+            try {
+                long number = Long.parseLong(value);
+                return number >= 0 ? number : malformed;
+            } catch (NumberFormatException e) {
+                return malformed;
+            }
         }
     }
-}
\ No newline at end of file
+}
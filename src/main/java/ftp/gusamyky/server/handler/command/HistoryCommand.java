@@ -1,55 +1,181 @@
 package ftp.gusamyky.server.handler.command;
 
+import ftp.gusamyky.server.common.exception.DatabaseException;
 import ftp.gusamyky.server.common.model.ClientModel;
+import ftp.gusamyky.server.common.model.HistoryCursor;
+import ftp.gusamyky.server.common.model.HistoryQuery;
 import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationType;
+import ftp.gusamyky.server.common.repository.IHistoryRepository.RowHandler;
 import ftp.gusamyky.server.common.service.IUserService;
-import ftp.gusamyky.server.service.ServiceFactory;
-import java.io.BufferedWriter;
+import ftp.gusamyky.server.handler.codec.ProtocolCodec;
 import java.io.IOException;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * Lists a page of a user's operations, newest first:
+ * {@code HISTORY <username> [type] [type=T] [limit=N] [from=TIME] [to=TIME] [cursor=C]}.
+ * Filters are applied in the database; {@code from} is inclusive, {@code to}
+ * exclusive, and times are ISO dates or date-times. A page that is followed by
+ * more operations ends with a cursor, which the client passes back together
+ * with the same filters to read the next page.
+ * <p>
+ * Rows are written to the client as they are read, so a page costs the same
+ * memory however large the history is.
+ */
 public class HistoryCommand extends BaseCommand {
+    private static final Logger LOGGER = Logger.getLogger(HistoryCommand.class.getName());
     private static final String COMMAND_NAME = "HISTORY";
-
-    public HistoryCommand(ServiceFactory serviceFactory, BufferedWriter writer, String args, String clientIp,
-            boolean loggedIn, String loggedUsername, Integer loggedClientId, LoginStateUpdater loginStateUpdater) {
-        super(serviceFactory, writer, args, clientIp, loggedIn, loggedUsername, loggedClientId, loginStateUpdater);
-    }
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
 
     @Override
-    public void execute() throws IOException {
-        String username = args.trim();
+    public void execute(CommandContext context, String args) throws IOException {
+        String[] parts = args.trim().split("\\s+");
+        String username = parts[0];
         if (username.isEmpty()) {
-            sendError("HISTORY ERROR: No username given");
+            sendError(context, "HISTORY ERROR: No username given");
             return;
         }
+        OperationType type = null;
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        HistoryCursor after = null;
+        int limit = DEFAULT_LIMIT;
+        for (int i = 1; i < parts.length; i++) {
+            int separator = parts[i].indexOf('=');
+            String key = separator < 0 ? "type" : parts[i].substring(0, separator).toLowerCase();
+            String value = parts[i].substring(separator + 1);
+            switch (key) {
+                case "type" -> {
+                    type = OperationType.fromName(value);
+                    if (type == null) {
+                        sendError(context, "HISTORY ERROR: Unknown operation type");
+                        return;
+                    }
+                }
+                case "limit" -> {
+                    limit = parseLimit(value);
+                    if (limit < 1) {
+                        sendError(context, "HISTORY ERROR: Limit must be between 1 and " + MAX_LIMIT);
+                        return;
+                    }
+                }
+                case "from", "to" -> {
+                    LocalDateTime time = parseTime(value);
+                    if (time == null) {
+                        sendError(context, "HISTORY ERROR: Invalid time " + value);
+                        return;
+                    }
+                    if (key.equals("from")) {
+                        from = time;
+                    } else {
+                        to = time;
+                    }
+                }
+                case "cursor" -> {
+                    try {
+                        after = HistoryCursor.decode(value);
+                    } catch (IllegalArgumentException e) {
+                        sendError(context, "HISTORY ERROR: Invalid cursor");
+                        return;
+                    }
+                }
+                default -> {
+                    sendError(context, "HISTORY ERROR: Unknown option " + key);
+                    return;
+                }
+            }
+        }
 
-        IUserService userService = serviceFactory.getUserService();
+        IUserService userService = context.getServiceFactory().getUserService();
         ClientModel client = userService.findUserByUsername(username);
         if (client == null) {
-            sendError("HISTORY ERROR: User not found");
+            sendError(context, "HISTORY ERROR: User not found");
             return;
         }
 
-        List<OperationHistoryModel> ops = serviceFactory.getHistoryService().getHistoryByClientId(client.getId());
-        StringBuilder response = new StringBuilder("HISTORY: ");
-        if (ops.isEmpty()) {
-            response.append("(no operations)");
-        } else {
-            for (int i = 0; i < ops.size(); i++) {
-                var op = ops.get(i);
-                response.append(op.getTimestamp()).append(" | ").append(op.getOperation());
-                if (i < ops.size() - 1) {
-                    response.append("; ");
-                }
+        // One row more than the page tells whether another page follows
+        HistoryQuery query = new HistoryQuery(client.getId(), type, from, to, after, limit + 1);
+        PageWriter page = new PageWriter(context.getCodec(), limit);
+        try {
+            context.getServiceFactory().getHistoryService().streamHistory(query, page);
+        } catch (DatabaseException e) {
+            if (page.written == 0) {
+                LOGGER.log(Level.SEVERE, "Error reading history of user " + username, e);
+                sendError(context, "HISTORY ERROR: History is unavailable");
+                return;
             }
+            // Part of the page is on the wire already; end it early and let the
+            // client resume after the last entry it received
+            LOGGER.log(Level.SEVERE, String.format("History of user %s failed after %d rows", username,
+                    page.written), e);
+            page.more = true;
         }
-        writer.write(response.toString() + "\n");
-        writer.flush();
+        page.finish();
     }
 
     @Override
     public String getCommandName() {
         return COMMAND_NAME;
     }
-}
\ No newline at end of file
+
+    private static int parseLimit(String value) {
+        try {
+            int limit = Integer.parseInt(value);
+            return limit <= MAX_LIMIT ? limit : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        try {
+            return value.indexOf('T') >= 0 ? LocalDateTime.parse(value) : LocalDate.parse(value).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the rows of a page to the codec as they arrive and remembers where
+     * the page ended.
+     */
+    private static final class PageWriter implements RowHandler {
+        private final ProtocolCodec codec;
+        private final int limit;
+        private int written;
+        private boolean more;
+        private OperationHistoryModel last;
+
+        private PageWriter(ProtocolCodec codec, int limit) {
+            this.codec = codec;
+            this.limit = limit;
+        }
+
+        @Override
+        public void accept(OperationHistoryModel operation) throws IOException {
+            if (written == limit) {
+                more = true;
+                return;
+            }
+            if (written == 0) {
+                codec.beginHistory();
+            }
+            codec.writeHistoryEntry(operation);
+            written++;
+            last = operation;
+        }
+
+        private void finish() throws IOException {
+            if (written == 0) {
+                codec.beginHistory();
+            }
+            codec.endHistory(more && last != null ? HistoryCursor.after(last).encode() : null);
+        }
+    }
+}
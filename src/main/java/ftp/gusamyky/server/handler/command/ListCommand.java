@@ -1,54 +1,33 @@
 package ftp.gusamyky.server.handler.command;
 
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationType;
 import ftp.gusamyky.server.common.model.ServerFileModel;
-import ftp.gusamyky.server.common.model.OperationHistoryModel;
 import ftp.gusamyky.server.common.service.IFileService;
-import ftp.gusamyky.server.service.ServiceFactory;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ListCommand extends BaseCommand {
-    public ListCommand(ServiceFactory serviceFactory, BufferedWriter writer, String args, String clientIp,
-            boolean loggedIn, String loggedUsername, Integer loggedClientId, LoginStateUpdater loginStateUpdater) {
-        super(serviceFactory, writer, args, clientIp, loggedIn, loggedUsername, loggedClientId, loginStateUpdater);
-    }
-
     @Override
-    public void execute() throws IOException {
-        if (!validateLogin()) {
+    public void execute(CommandContext context, String args) throws IOException {
+        if (!validateLogin(context)) {
             return;
         }
 
-        IFileService fileService = serviceFactory.getFileService();
-        List<ServerFileModel> files = fileService.listFilesByOwner(loggedClientId);
+        IFileService fileService = context.getServiceFactory().getFileService();
+        List<ServerFileModel> files = fileService.listFilesByOwner(context.getLoggedClientId());
 
-        StringBuilder response = new StringBuilder("FILES:");
-        if (files.isEmpty()) {
-            response.append(" (no files)");
-        } else {
-            for (var f : files) {
-                response.append(" ").append(f.getFilename());
-            }
+        List<String> filenames = new ArrayList<>(files.size());
+        for (var f : files) {
+            filenames.add(f.getFilename());
         }
-
-        writer.write(response.toString() + "\n");
-        writer.flush();
-        logOperation("LIST");
+        context.getCodec().writeFileList(filenames);
+        logOperation(context, OperationType.LIST, OperationResult.OK);
     }
 
     @Override
     public String getCommandName() {
         return "LIST";
     }
-
-    private void logOperation(String operation) {
-        if (loggedClientId != null) {
-            String user = loggedUsername != null ? loggedUsername : "unknown";
-            String opWithUserAndTime = operation + " [user:" + user + "] [" + LocalDateTime.now() + "]";
-            serviceFactory.getHistoryService().addOperation(
-                    new OperationHistoryModel(0, loggedClientId, opWithUserAndTime, LocalDateTime.now()));
-        }
-    }
-}
\ No newline at end of file
+}
@@ -1,6 +0,0 @@
-package ftp.gusamyky.server.handler.command;
-
-@FunctionalInterface
-public interface LoginStateUpdater {
-    void update(boolean loggedIn, String username, Integer clientId);
-}
\ No newline at end of file
@@ -1,30 +1,72 @@
 package ftp.gusamyky.server.handler.command;
 
-import ftp.gusamyky.server.service.ServiceFactory;
+import ftp.gusamyky.server.common.exception.DatabaseException;
+import ftp.gusamyky.server.common.model.OperationSummaryModel;
 import ftp.gusamyky.server.util.ReportExportUtil;
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * Exports a summary of the logged-in client's operations, aggregated per
+ * operation type and result by the database, to a CSV file:
+ * {@code REPORT [from=DATE] [to=DATE]}. Days whose history has been purged are
+ * reported from their daily totals, recent days from the individual
+ * operations.
+ */
 public class ReportCommand extends BaseCommand {
-    public ReportCommand(ServiceFactory serviceFactory, BufferedWriter writer, String args, String clientIp,
-            boolean loggedIn, String loggedUsername, Integer loggedClientId, LoginStateUpdater loginStateUpdater) {
-        super(serviceFactory, writer, args, clientIp, loggedIn, loggedUsername, loggedClientId, loginStateUpdater);
-    }
+    private static final Logger LOGGER = Logger.getLogger(ReportCommand.class.getName());
 
     @Override
-    public void execute() throws IOException {
-        if (!validateLogin()) {
+    public void execute(CommandContext context, String args) throws IOException {
+        if (!validateLogin(context)) {
             return;
         }
 
+        LocalDate from = null;
+        LocalDate to = null;
+        String trimmed = args.trim();
+        if (!trimmed.isEmpty()) {
+            for (String option : trimmed.split("\\s+")) {
+                int separator = option.indexOf('=');
+                String key = separator < 0 ? option : option.substring(0, separator).toLowerCase();
+                LocalDate day;
+                try {
+                    day = LocalDate.parse(option.substring(separator + 1));
+                } catch (DateTimeParseException e) {
+                    sendError(context, "REPORT ERROR: Invalid date " + option);
+                    return;
+                }
+                switch (key) {
+                    case "from" -> from = day;
+                    case "to" -> to = day;
+                    default -> {
+                        sendError(context, "REPORT ERROR: Unknown option " + key);
+                        return;
+                    }
+                }
+            }
+        }
+
+        List<OperationSummaryModel> summary;
+        try {
+            summary = context.getServiceFactory().getHistoryService()
+                    .getSummaryByClientId(context.getLoggedClientId(), from, to);
+        } catch (DatabaseException e) {
+            LOGGER.log(Level.SEVERE, "Error summarizing history of client ID: " + context.getLoggedClientId(), e);
+            sendError(context, "REPORT ERROR: History is unavailable");
+            return;
+        }
         String path = "report.csv";
-        ReportExportUtil.exportToCsv(serviceFactory.getHistoryService().getHistoryByClientId(loggedClientId), path);
-        writer.write("Report generated successfully: " + path + "\n");
-        writer.flush();
+        ReportExportUtil.exportSummaryToCsv(summary, path);
+        context.getCodec().writeMessage("Report generated successfully: " + path);
     }
 
     @Override
     public String getCommandName() {
         return "REPORT";
     }
-}
\ No newline at end of file
+}
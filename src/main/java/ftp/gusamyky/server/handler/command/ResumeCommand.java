@@ -0,0 +1,41 @@
+package ftp.gusamyky.server.handler.command;
+
+import ftp.gusamyky.server.transfer.UploadStaging;
+import java.io.IOException;
+
+/**
+ * Command for querying the partial upload of a file.
+ * {@code RESUME <filename>} answers {@code OK: <received>/<size>}: the number
+ * of bytes the server holds of an interrupted upload and the size announced for
+ * the whole file. The client continues the upload with
+ * {@code UPLOAD <filename> size=<size> offset=<received>}.
+ */
+public class ResumeCommand extends BaseCommand {
+    private static final String COMMAND_NAME = "RESUME";
+
+    @Override
+    public void execute(CommandContext context, String args) throws IOException {
+        if (!validateLogin(context)) {
+            return;
+        }
+
+        String filename = args.trim();
+        if (filename.isEmpty()) {
+            sendError(context, "RESUME ERROR: No filename given");
+            return;
+        }
+
+        UploadStaging.PartialUpload upload = context.getServiceFactory().getUploadStaging()
+                .find(context.getLoggedClientId(), filename);
+        if (upload == null) {
+            sendError(context, "RESUME ERROR: No partial upload of " + filename);
+            return;
+        }
+        sendOk(context, upload.received() + "/" + upload.size());
+    }
+
+    @Override
+    public String getCommandName() {
+        return COMMAND_NAME;
+    }
+}
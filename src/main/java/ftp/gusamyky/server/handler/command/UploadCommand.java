@@ -1,103 +1,163 @@
 package ftp.gusamyky.server.handler.command;
 
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationType;
 import ftp.gusamyky.server.common.model.ServerFileModel;
-import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.handler.FramedInputStream;
 import ftp.gusamyky.server.service.ServiceFactory;
+import ftp.gusamyky.server.transfer.FileReceiver;
+import ftp.gusamyky.server.transfer.UploadStaging;
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Command for receiving a file from the client.
+ * Three request forms are supported:
+ * <ul>
+ * <li>{@code UPLOAD <filename> size=<size>} followed immediately by the
+ * payload, so a client can send the whole request in one write;</li>
+ * <li>{@code UPLOAD <filename>}, answered with {@code READY}, after which the
+ * client sends the size line and the payload;</li>
+ * <li>{@code UPLOAD <filename> mode=stream} for data of unknown length,
+ * followed immediately by chunks, each a line holding its length and then that
+ * many bytes, and a final line {@code 0}.</li>
+ * </ul>
+ * The file is received into the staging area and moved to the files directory
+ * once complete. If the transfer breaks off, the bytes received are kept: the
+ * client asks for their number with {@code RESUME <filename>} and repeats the
+ * request with {@code offset=<received>} appended, sending only the rest of
+ * the file. Streamed uploads cannot be resumed; what was received of them is
+ * discarded if the stream breaks off. An upload larger than the configured
+ * maximum, or a stream whose framing breaks, ends the connection, since the
+ * rest of its data could not be told apart from the next command.
+ */
 public class UploadCommand extends BaseCommand {
     private static final Logger LOGGER = Logger.getLogger(UploadCommand.class.getName());
-    private static final int BUFFER_SIZE = 16384;
     private static final int TIMEOUT_MS = 300000;
-    private final InputStream inputStream;
-
-    public UploadCommand(ServiceFactory serviceFactory, BufferedWriter writer, String args, String clientIp,
-            boolean loggedIn, String loggedUsername, Integer loggedClientId, InputStream inputStream,
-            LoginStateUpdater loginStateUpdater) {
-        super(serviceFactory, writer, args, clientIp, loggedIn, loggedUsername, loggedClientId, loginStateUpdater);
-        this.inputStream = inputStream;
-    }
+    private static final String OFFSET_OPTION = "offset=";
+    private static final String SIZE_OPTION = "size=";
+    private static final String MODE_OPTION = "mode=";
+    private static final String STREAM_MODE = "stream";
+    private static final long STREAM_TOO_LARGE = -2;
 
     @Override
-    public void execute() throws IOException {
-        if (!validateLogin()) {
+    public void execute(CommandContext context, String args) throws IOException {
+        long start = System.nanoTime();
+        UploadRequest request = UploadRequest.parse(args);
+        if (!validateLogin(context)) {
+            discardInlinePayload(context, request);
             return;
         }
 
-        String filename = args.trim();
+        String filename = request.filename();
         if (filename.isEmpty()) {
-            sendError("UPLOAD ERROR: No filename given");
-            logOperation("UPLOAD_FAIL:NoFilename");
+            sendError(context, "UPLOAD ERROR: No filename given");
+            logOperation(context, OperationType.UPLOAD, OperationResult.NO_FILENAME);
+            discardInlinePayload(context, request);
             return;
         }
-
-        // Send READY response
-        writer.write("READY\n");
-        writer.flush();
-        LOGGER.info(String.format("Sent READY response to client %s for file %s", clientIp, filename));
-
-        // Read file size from input stream
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-        String sizeStr = reader.readLine();
-        if (sizeStr == null) {
-            sendError("UPLOAD ERROR: No file size received");
-            logOperation("UPLOAD_FAIL:NoSize");
+        if (request.mode() != null && !request.streamed()) {
+            sendError(context, "UPLOAD ERROR: Unknown mode " + request.mode());
+            logOperation(context, OperationType.UPLOAD, OperationResult.ERROR, filename, null, start);
+            discardInlinePayload(context, request);
             return;
         }
-
-        long fileSize;
-        try {
-            fileSize = Long.parseLong(sizeStr.trim());
-            if (fileSize <= 0) {
-                sendError("UPLOAD ERROR: Invalid file size");
-                logOperation("UPLOAD_FAIL:InvalidSize");
+        if (request.streamed()) {
+            if (request.inlineSize() >= 0) {
+                sendError(context, "UPLOAD ERROR: Streamed uploads take no size");
+                logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_SIZE, filename, null, start);
+                discardStream(context);
                 return;
             }
-        } catch (NumberFormatException e) {
-            LOGGER.log(Level.WARNING, String.format("Invalid file size format received: '%s'", sizeStr));
-            sendError("UPLOAD ERROR: Invalid file size format");
-            logOperation("UPLOAD_FAIL:InvalidSize");
+            if (request.offset() != 0) {
+                sendError(context, "UPLOAD ERROR: Streamed uploads cannot be resumed");
+                logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_OFFSET, filename, null, start);
+                discardStream(context);
+                return;
+            }
+            receiveStream(context, filename, start);
             return;
         }
 
-        Path filePath = prepareUploadPath(filename);
-        LOGGER.info(String.format("[UPLOAD][START] File: '%s', Size: %d bytes, From IP: %s",
-                filename, fileSize, clientIp));
+        long fileSize = request.inlineSize() >= 0 ? request.inlineSize() : readSizeLine(context, filename, start);
+        if (fileSize < 0) {
+            return;
+        }
+        if (fileSize == 0) {
+            sendError(context, "UPLOAD ERROR: Invalid file size");
+            logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_SIZE, filename, null, start);
+            return;
+        }
+        long maxSize = context.getServiceFactory().getServerConfig().getMaxUploadSize();
+        if (fileSize > maxSize) {
+            sendError(context, "UPLOAD ERROR: File exceeds the maximum of " + maxSize + " bytes");
+            logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_SIZE, filename, null, start);
+            // Skipping the payload could take as long as receiving it
+            context.requestClose();
+            return;
+        }
+        long offset = request.offset();
+        if (offset < 0 || offset >= fileSize) {
+            sendError(context, "UPLOAD ERROR: Invalid offset");
+            logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_OFFSET, filename, null, start);
+            discardPayload(context, fileSize - Math.max(0, offset));
+            return;
+        }
+
+        ServiceFactory serviceFactory = context.getServiceFactory();
+        UploadStaging staging = serviceFactory.getUploadStaging();
+        String clientIp = context.getClientIp();
+        Path partPath = staging.acquire(context.getLoggedClientId(), filename, fileSize);
+        if (partPath == null) {
+            sendError(context, "UPLOAD ERROR: File is being uploaded by another session");
+            logOperation(context, OperationType.UPLOAD, OperationResult.TRANSFER_ERROR, filename, null, start);
+            discardPayload(context, fileSize - offset);
+            return;
+        }
 
         try {
-            if (receiveFile(filePath, inputStream, fileSize)) {
+            long staged = staging.getReceivedLength(partPath);
+            if (offset > 0 && offset != staged) {
+                sendError(context, "UPLOAD ERROR: Offset must be " + staged + ", the number of bytes received");
+                logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_OFFSET, filename, null, start);
+                discardPayload(context, fileSize - offset);
+                return;
+            }
+            LOGGER.info(String.format("[UPLOAD][START] File: '%s', Size: %d bytes, Offset: %d, From IP: %s",
+                    filename, fileSize, offset, clientIp));
+
+            if (receiveFile(context, partPath, offset, fileSize - offset)) {
+                staging.commit(partPath, prepareUploadPath(context, filename));
                 ServerFileModel fileModel = new ServerFileModel(
                         0,
                         filename,
                         fileSize,
-                        loggedClientId,
+                        context.getLoggedClientId(),
                         LocalDateTime.now());
                 serviceFactory.getFileService().saveFile(fileModel);
 
-                sendOk("Upload successful");
-                logOperation("UPLOAD_OK: " + filename);
+                sendOk(context, "Upload successful");
+                logOperation(context, OperationType.UPLOAD, OperationResult.OK, filename, fileSize - offset, start);
                 LOGGER.info(String.format("[UPLOAD][END] File: '%s', Size: %d bytes, From IP: %s",
                         filename, fileSize, clientIp));
             } else {
-                // Clean up partial file
-                try {
-                    Files.deleteIfExists(filePath);
-                } catch (IOException e) {
-                    LOGGER.warning("Failed to delete partial file: " + filePath);
-                }
-                sendError("UPLOAD ERROR: Failed to receive file");
-                logOperation("UPLOAD_FAIL:TransferError");
+                // The partial file stays staged so the client can resume
+                sendError(context, "UPLOAD ERROR: Failed to receive file, "
+                        + staging.getReceivedLength(partPath) + " bytes kept for resuming");
+                logOperation(context, OperationType.UPLOAD, OperationResult.TRANSFER_ERROR, filename, null, start);
             }
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Error during file upload: " + e.getMessage(), e);
-            sendError("UPLOAD ERROR: " + e.getMessage());
-            logOperation("UPLOAD_FAIL:IOError");
+            sendError(context, "UPLOAD ERROR: " + e.getMessage());
+            logOperation(context, OperationType.UPLOAD, OperationResult.IO_ERROR, filename, null, start);
+        } finally {
+            staging.release(partPath);
         }
     }
 
@@ -106,63 +166,260 @@ public class UploadCommand extends BaseCommand {
         return "UPLOAD";
     }
 
-    private Path prepareUploadPath(String filename) throws IOException {
-        String filesDir = serviceFactory.getServerConfig().getFilesDir();
-        Files.createDirectories(Paths.get(filesDir));
-        return Paths.get(filesDir, filename);
+    @Override
+    public boolean isTransfer() {
+        return true;
     }
 
-    private boolean receiveFile(Path filePath, InputStream in, long fileSize) {
-        try (OutputStream fileOut = Files.newOutputStream(filePath)) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            long received = 0;
-            int read;
-            long lastProgressTime = System.currentTimeMillis();
-            long lastProgressPercent = 0;
-
-            while (received < fileSize) {
-                // Check for timeout
-                if (System.currentTimeMillis() - lastProgressTime > TIMEOUT_MS) {
-                    LOGGER.severe("Upload timeout - no progress for " + (TIMEOUT_MS / 1000) + " seconds");
-                    return false;
-                }
+    @Override
+    public void reject(CommandContext context, String args) throws IOException {
+        discardInlinePayload(context, UploadRequest.parse(args));
+    }
 
-                read = in.read(buffer, 0, (int) Math.min(buffer.length, fileSize - received));
-                if (read == -1) {
-                    LOGGER.severe("End of stream reached before file transfer completed");
-                    return false;
-                }
+    /**
+     * Receives a streamed upload into the staging area and registers the file
+     * with the size it turned out to have.
+     */
+    private void receiveStream(CommandContext context, String filename, long start) throws IOException {
+        ServiceFactory serviceFactory = context.getServiceFactory();
+        UploadStaging staging = serviceFactory.getUploadStaging();
+        String clientIp = context.getClientIp();
+        Path partPath = staging.acquireStream(context.getLoggedClientId(), filename);
+        if (partPath == null) {
+            sendError(context, "UPLOAD ERROR: File is being uploaded by another session");
+            logOperation(context, OperationType.UPLOAD, OperationResult.TRANSFER_ERROR, filename, null, start);
+            discardStream(context);
+            return;
+        }
+
+        try {
+            LOGGER.info(String.format("[UPLOAD][START] File: '%s', Streamed, From IP: %s", filename, clientIp));
+            long maxSize = serviceFactory.getServerConfig().getMaxUploadSize();
+            long fileSize = receiveChunks(context, partPath, maxSize);
+            if (fileSize == STREAM_TOO_LARGE) {
+                sendError(context, "UPLOAD ERROR: File exceeds the maximum of " + maxSize + " bytes");
+                logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_SIZE, filename, null, start);
+                context.requestClose();
+                return;
+            }
+            if (fileSize < 0) {
+                sendError(context, "UPLOAD ERROR: Failed to receive file");
+                logOperation(context, OperationType.UPLOAD, OperationResult.TRANSFER_ERROR, filename, null, start);
+                context.requestClose();
+                return;
+            }
+            if (fileSize == 0) {
+                sendError(context, "UPLOAD ERROR: Invalid file size");
+                logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_SIZE, filename, null, start);
+                return;
+            }
 
-                fileOut.write(buffer, 0, read);
-                received += read;
-                lastProgressTime = System.currentTimeMillis();
+            staging.commit(partPath, prepareUploadPath(context, filename));
+            serviceFactory.getFileService().saveFile(new ServerFileModel(0, filename, fileSize,
+                    context.getLoggedClientId(), LocalDateTime.now()));
+            sendOk(context, "Upload successful");
+            logOperation(context, OperationType.UPLOAD, OperationResult.OK, filename, fileSize, start);
+            LOGGER.info(String.format("[UPLOAD][END] File: '%s', Size: %d bytes, From IP: %s",
+                    filename, fileSize, clientIp));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error during file upload: " + e.getMessage(), e);
+            sendError(context, "UPLOAD ERROR: " + e.getMessage());
+            logOperation(context, OperationType.UPLOAD, OperationResult.IO_ERROR, filename, null, start);
+        } finally {
+            try {
+                // Nothing is left to delete once the file has been committed
+                staging.discard(partPath);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot delete staging file " + partPath, e);
+            }
+        }
+    }
 
-                // Log progress every 10%
-                long currentPercent = (received * 100) / fileSize;
-                if (currentPercent >= lastProgressPercent + 10) {
-                    LOGGER.info(String.format("Upload progress: %d%% (%d/%d bytes)",
-                            currentPercent, received, fileSize));
-                    lastProgressPercent = currentPercent;
+    /**
+     * Writes the chunks of a streamed upload to the part file, up to and
+     * including the terminating empty chunk. Stops at the first chunk that
+     * would take the file past {@code maxSize}.
+     *
+     * @return The number of bytes received, {@link #STREAM_TOO_LARGE} if the
+     *         stream exceeded {@code maxSize}, or -1 if it broke off or a
+     *         chunk length was malformed
+     */
+    private long receiveChunks(CommandContext context, Path partPath, long maxSize) {
+        FramedInputStream in = context.getInputStream();
+        try (FileChannel file = FileChannel.open(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = 0;
+            long chunkLength;
+            while ((chunkLength = readChunkLength(in)) > 0) {
+                if (chunkLength > maxSize - size) {
+                    LOGGER.warning(String.format("Streamed upload exceeds the maximum of %d bytes", maxSize));
+                    return STREAM_TOO_LARGE;
+                }
+                long received = FileReceiver.receive(file, size, chunkLength, in);
+                size += received;
+                if (received != chunkLength) {
+                    LOGGER.severe(String.format("Stream ended inside a chunk after %d bytes", size));
+                    return -1;
                 }
             }
+            if (chunkLength < 0) {
+                LOGGER.severe(String.format("Missing or malformed chunk length after %d bytes", size));
+                return -1;
+            }
+            return size;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error receiving file: " + partPath, e);
+            return -1;
+        }
+    }
+
+    /**
+     * Skips the chunks of a refused streamed upload so that they are not
+     * interpreted as commands. Closes the connection if a chunk length is
+     * malformed, as the end of the stream can then not be found.
+     */
+    private void discardStream(CommandContext context) throws IOException {
+        FramedInputStream in = context.getInputStream();
+        long chunkLength;
+        while ((chunkLength = readChunkLength(in)) > 0) {
+            in.skipNBytes(chunkLength);
+        }
+        if (chunkLength < 0) {
+            context.requestClose();
+        }
+    }
+
+    /**
+     * @return The length announced by the next chunk line, or -1 at end of
+     *         stream or if the line is not a length
+     */
+    private static long readChunkLength(FramedInputStream in) throws IOException {
+        String line = in.readLine();
+        return line != null ? UploadRequest.parseNumber(line.trim(), -1) : -1;
+    }
+
+    /**
+     * Sends READY and reads the size line of the two-step request form.
+     *
+     * @return The announced size, or -1 if the size was missing or invalid and
+     *         an error has already been sent
+     */
+    private long readSizeLine(CommandContext context, String filename, long start) throws IOException {
+        context.getCodec().writeReady();
+        LOGGER.info(String.format("Sent READY response to client %s for file %s", context.getClientIp(), filename));
 
-            if (received != fileSize) {
-                LOGGER.severe(String.format("File size mismatch. Received %d of %d bytes", received, fileSize));
+        String sizeStr = context.getInputStream().readLine();
+        if (sizeStr == null) {
+            sendError(context, "UPLOAD ERROR: No file size received");
+            logOperation(context, OperationType.UPLOAD, OperationResult.NO_SIZE, filename, null, start);
+            return -1;
+        }
+
+        try {
+            long fileSize = Long.parseLong(sizeStr.trim());
+            if (fileSize <= 0) {
+                sendError(context, "UPLOAD ERROR: Invalid file size");
+                logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_SIZE, filename, null, start);
+                return -1;
+            }
+            return fileSize;
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, String.format("Invalid file size format received: '%s'", sizeStr));
+            sendError(context, "UPLOAD ERROR: Invalid file size format");
+            logOperation(context, OperationType.UPLOAD, OperationResult.INVALID_SIZE, filename, null, start);
+            return -1;
+        }
+    }
+
+    /**
+     * Skips the payload of a rejected one-shot request so that it is not
+     * interpreted as commands.
+     */
+    private void discardInlinePayload(CommandContext context, UploadRequest request) throws IOException {
+        if (request.streamed()) {
+            discardStream(context);
+        } else if (request.inlineSize() > 0) {
+            discardPayload(context, request.inlineSize() - Math.max(0, request.offset()));
+        }
+    }
+
+    private void discardPayload(CommandContext context, long size) throws IOException {
+        if (size > 0) {
+            context.getInputStream().skipNBytes(size);
+        }
+    }
+
+    private Path prepareUploadPath(CommandContext context, String filename) throws IOException {
+        Path path = getStoredFilePath(context, filename);
+        Files.createDirectories(path.getParent());
+        return path;
+    }
+
+    private boolean receiveFile(CommandContext context, Path partPath, long offset, long count) {
+        try {
+            long received = FileReceiver.receive(partPath, offset, count, context.getInputStream(),
+                    context.getSocketChannel(), TIMEOUT_MS,
+                    context.getServiceFactory().getServerConfig().getUploadPipelineDepth());
+            if (received != count) {
+                LOGGER.severe(String.format("File size mismatch. Received %d of %d bytes", received, count));
                 return false;
             }
             return true;
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Error receiving file: " + filePath, e);
+            LOGGER.log(Level.SEVERE, "Error receiving file: " + partPath, e);
             return false;
         }
     }
 
-    private void logOperation(String operation) {
-        if (loggedClientId != null) {
-            String user = loggedUsername != null ? loggedUsername : "unknown";
-            String opWithUserAndTime = operation + " [user:" + user + "] [" + LocalDateTime.now() + "]";
-            serviceFactory.getHistoryService().addOperation(
-                    new OperationHistoryModel(0, loggedClientId, opWithUserAndTime, LocalDateTime.now()));
+    /**
+     * Arguments of an UPLOAD request. Everything before the trailing options
+     * is the file name, so a name ending in a number or a word is taken as
+     * is.
+     *
+     * @param filename   The name of the uploaded file
+     * @param inlineSize The size given with {@code size=} in the one-shot
+     *                   request form, or -1 if there is none; 0 if malformed
+     * @param offset     The number of bytes already received, from which the
+     *                   upload resumes; -1 if the offset is malformed
+     * @param mode       The transfer mode given with {@code mode=}, or null
+     */
+    private record UploadRequest(String filename, long inlineSize, long offset, String mode) {
+        private static UploadRequest parse(String args) {
+            String rest = args.trim();
+            long size = -1;
+            long offset = 0;
+            String mode = null;
+            int lastSpace;
+            while ((lastSpace = rest.lastIndexOf(' ')) > 0) {
+                String option = rest.substring(lastSpace + 1);
+                if (option.regionMatches(true, 0, SIZE_OPTION, 0, SIZE_OPTION.length())) {
+                    size = parseNumber(option.substring(SIZE_OPTION.length()), 0);
+                } else if (option.regionMatches(true, 0, OFFSET_OPTION, 0, OFFSET_OPTION.length())) {
+                    offset = parseNumber(option.substring(OFFSET_OPTION.length()), -1);
+                } else if (option.regionMatches(true, 0, MODE_OPTION, 0, MODE_OPTION.length())) {
+                    mode = option.substring(MODE_OPTION.length());
+                } else {
+                    break;
+                }
+                rest = rest.substring(0, lastSpace).trim();
+            }
+            return new UploadRequest(rest, size, offset, mode);
+        }
+
+        /**
+         * @return Whether the data follows as length-prefixed chunks
+         */
+        private boolean streamed() {
+            return STREAM_MODE.equalsIgnoreCase(mode);
+        }
+
+        private static long parseNumber(String value, long malformed) {
+            try {
+                long number = Long.parseLong(value);
+                return number >= 0 ? number : malformed;
+            } catch (NumberFormatException e) {
+                return malformed;
+            }
         }
     }
-}
\ No newline at end of file
+}
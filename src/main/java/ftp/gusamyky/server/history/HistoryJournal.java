@@ -0,0 +1,647 @@
+package ftp.gusamyky.server.history;
+
+import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationType;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local journal that operation history is written to before it
+ * reaches the database.
+ * <p>
+ * The journal is a directory of segment files named
+ * {@code history-<segment id>.log}. Each record is
+ * {@code length (i32) | CRC32 of payload (i32) | payload}, the payload being
+ * {@code version (u8) | client id (i32) | epoch second (i64) | nano (i32) |
+ * bytes (i64) | duration ms (i64) | type | result | filename | client IP}.
+ * The four strings are written as an i16 byte count, -1 for null, followed by
+ * UTF-8 bytes; absent numbers are written as -1.
+ * Appends go to the newest segment, which is rolled over once it exceeds the
+ * configured size, and every {@link #append(List)} call ends with a single
+ * {@code fsync}, so callers that append in batches share one disk flush.
+ * <p>
+ * The {@link HistoryReplayer} reads durable records in order and
+ * {@linkplain #acknowledge(Position, int) acknowledges} them once they are in
+ * the database. The acknowledged position is kept in a {@code checkpoint} file
+ * and segments that lie entirely before it are deleted. On startup records
+ * after the checkpoint are replayed; a record torn by a crash is detected by
+ * its length or checksum and the segment is truncated there.
+ */
+public class HistoryJournal implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(HistoryJournal.class.getName());
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String CHECKPOINT_TEMP_FILE = "checkpoint.tmp";
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte RECORD_VERSION = 1;
+    private static final int PAYLOAD_NUMBERS_SIZE = 33;
+    private static final int PAYLOAD_FIXED_SIZE = PAYLOAD_NUMBERS_SIZE + 4 * 2;
+    private static final int MAX_PAYLOAD_SIZE = 16384;
+    private static final int BUFFER_SIZE = 65536;
+    private static final int RECOVERY_CHUNK = 1024;
+
+    /**
+     * A point in the journal: a segment id and a byte offset in that segment.
+     */
+    public record Position(long segment, long offset) {
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private final NavigableSet<Long> segments = new ConcurrentSkipListSet<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition shipped = lock.newCondition();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final Position recoveredPosition;
+
+    // Guarded by lock.
+    private FileChannel activeChannel;
+    private long activeSegment;
+    private long durableOffset;
+    private long appendedSequence;
+    private long shippedSequence;
+    private boolean closed;
+
+    // Only used by the replayer thread.
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32 readCrc = new CRC32();
+    private FileChannel readChannel;
+    private long readSegment = -1;
+
+    /**
+     * Opens the journal in the given directory, recovering records left by a
+     * previous run, and starts a new segment for appends.
+     *
+     * @param directory   The journal directory, created if missing
+     * @param segmentSize Size in bytes after which a segment is rolled over
+     * @throws IOException If the directory or a segment cannot be accessed
+     */
+    public HistoryJournal(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(CHECKPOINT_TEMP_FILE));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                Long id = parseSegmentId(file);
+                if (id != null) {
+                    segments.add(id);
+                }
+            }
+        }
+        this.recoveredPosition = recover(readCheckpoint());
+        this.activeSegment = segments.isEmpty() ? recoveredPosition.segment() : segments.last() + 1;
+        this.activeChannel = openSegment(activeSegment);
+        segments.add(activeSegment);
+        LOGGER.info(String.format("Opened history journal in %s, %d entries pending replay", directory,
+                appendedSequence));
+    }
+
+    /**
+     * @return The position of the oldest record that has not been acknowledged
+     */
+    public Position getRecoveredPosition() {
+        return recoveredPosition;
+    }
+
+    /**
+     * Appends the operations and forces them to disk before returning.
+     *
+     * @param operations The operations to append
+     * @return The appended count including these operations, which
+     *         {@link #awaitShipped(long, long)} can wait for
+     * @throws IOException If writing or syncing the segment fails; the
+     *                     operations should then be considered not journaled
+     */
+    public long append(List<OperationHistoryModel> operations) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("History journal is closed");
+            }
+            long start = activeChannel.position();
+            try {
+                writeBuffer.clear();
+                for (OperationHistoryModel operation : operations) {
+                    byte[][] strings = {
+                            utf8(operation.getType().name()),
+                            utf8(operation.getResult().name()),
+                            utf8(operation.getFilename()),
+                            utf8(operation.getClientIp()) };
+                    int payloadSize = PAYLOAD_FIXED_SIZE;
+                    for (byte[] string : strings) {
+                        payloadSize += string != null ? string.length : 0;
+                    }
+                    if (payloadSize > MAX_PAYLOAD_SIZE) {
+                        throw new IOException("History entry exceeds " + MAX_PAYLOAD_SIZE + " bytes");
+                    }
+                    if (writeBuffer.remaining() < RECORD_HEADER_SIZE + payloadSize) {
+                        drain(writeBuffer, activeChannel);
+                    }
+                    encode(operation, strings, payloadSize);
+                }
+                drain(writeBuffer, activeChannel);
+                activeChannel.force(false);
+            } catch (IOException e) {
+                // Cut off a partially written batch so the segment stays readable
+                activeChannel.truncate(start);
+                activeChannel.position(start);
+                throw e;
+            }
+            durableOffset = activeChannel.position();
+            appendedSequence += operations.size();
+            appended.signalAll();
+            if (durableOffset >= segmentSize) {
+                roll();
+            }
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads durable records starting at the given position. Only called by the
+     * replayer thread.
+     *
+     * @param from The position to read from
+     * @param max  Maximum number of records to read
+     * @param out  Receives the records
+     * @return The position after the last record read
+     * @throws IOException If a segment cannot be read
+     */
+    public Position read(Position from, int max, List<OperationHistoryModel> out) throws IOException {
+        long segment = from.segment();
+        long offset = from.offset();
+        while (out.size() < max) {
+            long active;
+            long durable;
+            lock.lock();
+            try {
+                active = activeSegment;
+                durable = durableOffset;
+            } finally {
+                lock.unlock();
+            }
+            if (segments.contains(segment)) {
+                FileChannel channel = readChannel(segment);
+                long end = segment == active ? durable : channel.size();
+                offset = readRecords(channel, offset, end, max, out);
+                if (segment == active || out.size() >= max) {
+                    break;
+                }
+                if (offset < end) {
+                    LOGGER.severe(String.format("Damaged record in history journal segment %d at byte %d, "
+                            + "skipping the rest of the segment", segment, offset));
+                }
+            }
+            Long next = segments.higher(segment);
+            if (next == null) {
+                break;
+            }
+            segment = next;
+            offset = 0;
+        }
+        return new Position(segment, offset);
+    }
+
+    /**
+     * Records that everything before the given position is in the database,
+     * persists the position and deletes segments that are no longer needed.
+     *
+     * @param upTo  The position after the last shipped record
+     * @param count The number of records shipped
+     * @throws IOException If the checkpoint cannot be written
+     */
+    public void acknowledge(Position upTo, int count) throws IOException {
+        writeCheckpoint(upTo);
+        for (Long segment : segments.headSet(upTo.segment())) {
+            if (segment == readSegment) {
+                closeReadChannel();
+            }
+            segments.remove(segment);
+            Files.deleteIfExists(segmentPath(segment));
+        }
+        lock.lock();
+        try {
+            shippedSequence += count;
+            shipped.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until records beyond the given count have been appended.
+     *
+     * @param knownSequence The number of appended records the caller has seen
+     * @param timeoutMs     Maximum time to wait, in milliseconds
+     * @throws InterruptedException If the thread is interrupted
+     */
+    public void awaitAppended(long knownSequence, long timeoutMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (appendedSequence <= knownSequence && !closed && remaining > 0) {
+                remaining = appended.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the given number of records have been acknowledged.
+     *
+     * @param sequence  The appended count to wait for
+     * @param timeoutMs Maximum time to wait, in milliseconds
+     * @return false if the records were not acknowledged in time
+     */
+    public boolean awaitShipped(long sequence, long timeoutMs) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (shippedSequence < sequence) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = shipped.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of records appended, including records recovered at
+     *         startup
+     */
+    public long getAppendedSequence() {
+        lock.lock();
+        try {
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of records acknowledged since startup
+     */
+    public long getShippedSequence() {
+        lock.lock();
+        try {
+            return shippedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of records that are durable but not yet in the
+     *         database
+     */
+    public long getPendingCount() {
+        lock.lock();
+        try {
+            return appendedSequence - shippedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appended.signalAll();
+            activeChannel.close();
+            closeReadChannel();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryJournal{" +
+                "directory=" + directory +
+                ", segments=" + segments.size() +
+                ", pending=" + getPendingCount() +
+                '}';
+    }
+
+    private void encode(OperationHistoryModel operation, byte[][] strings, int payloadSize) {
+        LocalDateTime timestamp = operation.getTimestamp();
+        int recordStart = writeBuffer.position();
+        writeBuffer.putInt(payloadSize);
+        writeBuffer.putInt(0);
+        int payloadStart = writeBuffer.position();
+        writeBuffer.put(RECORD_VERSION);
+        writeBuffer.putInt(operation.getClientId());
+        writeBuffer.putLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        writeBuffer.putInt(timestamp.getNano());
+        writeBuffer.putLong(operation.getBytes() != null ? operation.getBytes() : -1);
+        writeBuffer.putLong(operation.getDurationMs() != null ? operation.getDurationMs() : -1);
+        for (byte[] string : strings) {
+            if (string == null) {
+                writeBuffer.putShort((short) -1);
+            } else {
+                writeBuffer.putShort((short) string.length);
+                writeBuffer.put(string);
+            }
+        }
+        crc.reset();
+        crc.update(writeBuffer.array(), payloadStart, payloadSize);
+        writeBuffer.putInt(recordStart + 4, (int) crc.getValue());
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void roll() throws IOException {
+        activeChannel.close();
+        long next = activeSegment + 1;
+        activeChannel = openSegment(next);
+        segments.add(next);
+        activeSegment = next;
+        durableOffset = 0;
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Rolled history journal to segment " + next);
+        }
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private FileChannel readChannel(long segment) throws IOException {
+        if (readSegment != segment) {
+            closeReadChannel();
+            readChannel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+            readSegment = segment;
+        }
+        return readChannel;
+    }
+
+    private void closeReadChannel() throws IOException {
+        if (readChannel != null) {
+            readChannel.close();
+            readChannel = null;
+            readSegment = -1;
+        }
+    }
+
+    /**
+     * Decodes records between {@code offset} and {@code end}.
+     *
+     * @return The offset after the last valid record read; less than
+     *         {@code end} if {@code max} was reached or a damaged record was
+     *         found
+     */
+    private long readRecords(FileChannel channel, long offset, long end, int max,
+            List<OperationHistoryModel> out) throws IOException {
+        // readBuffer holds the bytes from bufferStart up to its limit
+        readBuffer.clear().limit(0);
+        long bufferStart = offset;
+        while (out.size() < max && offset < end) {
+            int pos = (int) (offset - bufferStart);
+            if (readBuffer.limit() - pos < RECORD_HEADER_SIZE
+                    || readBuffer.limit() - pos < RECORD_HEADER_SIZE + readBuffer.getInt(pos)) {
+                fill(channel, offset, end);
+                bufferStart = offset;
+                pos = 0;
+            }
+            int available = readBuffer.limit() - pos;
+            if (available < RECORD_HEADER_SIZE) {
+                break;
+            }
+            int length = readBuffer.getInt(pos);
+            if (length < PAYLOAD_FIXED_SIZE || length > MAX_PAYLOAD_SIZE
+                    || available < RECORD_HEADER_SIZE + length) {
+                break;
+            }
+            int payloadStart = pos + RECORD_HEADER_SIZE;
+            readCrc.reset();
+            readCrc.update(readBuffer.array(), payloadStart, length);
+            if ((int) readCrc.getValue() != readBuffer.getInt(pos + 4)) {
+                break;
+            }
+            OperationHistoryModel operation = decode(payloadStart, length);
+            if (operation == null) {
+                break;
+            }
+            out.add(operation);
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    /**
+     * @return The decoded record, or null if the payload is malformed
+     */
+    private OperationHistoryModel decode(int payloadStart, int length) {
+        if (readBuffer.get(payloadStart) != RECORD_VERSION) {
+            return null;
+        }
+        int clientId = readBuffer.getInt(payloadStart + 1);
+        long seconds = readBuffer.getLong(payloadStart + 5);
+        int nanos = readBuffer.getInt(payloadStart + 13);
+        long bytes = readBuffer.getLong(payloadStart + 17);
+        long durationMs = readBuffer.getLong(payloadStart + 25);
+        String[] strings = new String[4];
+        int pos = payloadStart + PAYLOAD_NUMBERS_SIZE;
+        int end = payloadStart + length;
+        for (int i = 0; i < strings.length; i++) {
+            if (pos + 2 > end) {
+                return null;
+            }
+            int size = readBuffer.getShort(pos);
+            pos += 2;
+            if (size >= 0) {
+                if (pos + size > end) {
+                    return null;
+                }
+                strings[i] = new String(readBuffer.array(), pos, size, StandardCharsets.UTF_8);
+                pos += size;
+            }
+        }
+        OperationType type = OperationType.fromName(strings[0]);
+        return new OperationHistoryModel(0, clientId,
+                type != null ? type : OperationType.OTHER,
+                OperationResult.fromName(strings[1]),
+                strings[2],
+                bytes >= 0 ? bytes : null,
+                durationMs >= 0 ? durationMs : null,
+                strings[3],
+                LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+    }
+
+    private void fill(FileChannel channel, long from, long end) throws IOException {
+        readBuffer.clear();
+        readBuffer.limit((int) Math.min(readBuffer.capacity(), end - from));
+        while (readBuffer.hasRemaining()) {
+            if (channel.read(readBuffer, from + readBuffer.position()) < 0) {
+                break;
+            }
+        }
+        readBuffer.flip();
+    }
+
+    /**
+     * Drops segments before the checkpoint and validates the rest, truncating
+     * each segment at its first damaged record.
+     *
+     * @return The position replay starts from
+     */
+    private Position recover(Position checkpoint) throws IOException {
+        for (Long segment : segments.headSet(checkpoint.segment())) {
+            segments.remove(segment);
+            Files.deleteIfExists(segmentPath(segment));
+        }
+        Position start = checkpoint;
+        if (!segments.contains(checkpoint.segment())) {
+            start = new Position(segments.isEmpty() ? checkpoint.segment() : segments.first(), 0);
+        }
+        List<OperationHistoryModel> scratch = new ArrayList<>(RECOVERY_CHUNK);
+        long pending = 0;
+        for (Long segment : segments) {
+            Path path = segmentPath(segment);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                long from = segment == start.segment() ? Math.min(start.offset(), size) : 0;
+                long valid = from;
+                while (valid < size) {
+                    scratch.clear();
+                    long next = readRecords(channel, valid, size, RECOVERY_CHUNK, scratch);
+                    pending += scratch.size();
+                    if (next == valid) {
+                        break;
+                    }
+                    valid = next;
+                }
+                if (valid < size) {
+                    LOGGER.warning(String.format("Truncating history journal segment %s at byte %d of %d",
+                            path.getFileName(), valid, size));
+                    channel.truncate(valid);
+                    channel.force(true);
+                }
+            }
+        }
+        appendedSequence = pending;
+        return start;
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return new Position(0, 0);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() == 20) {
+            long segment = buffer.getLong();
+            long offset = buffer.getLong();
+            crc.reset();
+            crc.update(buffer.array(), 0, 16);
+            if ((int) crc.getValue() == buffer.getInt()) {
+                return new Position(segment, offset);
+            }
+        }
+        LOGGER.warning("History journal checkpoint is damaged, replaying all segments");
+        return new Position(0, 0);
+    }
+
+    private void writeCheckpoint(Position position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(20);
+        buffer.putLong(position.segment());
+        buffer.putLong(position.offset());
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, 16);
+        buffer.putInt((int) checksum.getValue());
+        buffer.flip();
+        Path temp = directory.resolve(CHECKPOINT_TEMP_FILE);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(buffer);
+            channel.force(false);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static Long parseSegmentId(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package ftp.gusamyky.server.history;
+
+import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.repository.IHistoryRepository;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.DataTruncation;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ships journaled operation history to the database.
+ * A single thread reads durable records from the {@link HistoryJournal} in
+ * order, inserts them as JDBC batches and acknowledges them, which lets the
+ * journal delete finished segments. While the database is unavailable the
+ * replayer retries with exponential backoff and records keep accumulating in
+ * the journal, so commands are not slowed down by the outage.
+ * <p>
+ * A batch the database rejects for a reason retrying cannot fix, such as a
+ * constraint violation or a value too long for its column, is inserted record
+ * by record instead. Records rejected again are written to
+ * {@code dead-letter.log} in the journal directory and skipped, so one bad
+ * record cannot hold up the history recorded after it.
+ * <p>
+ * Delivery is at least once: a crash between the database commit and the
+ * checkpoint replays that batch on the next start.
+ */
+public class HistoryReplayer {
+    private static final Logger LOGGER = Logger.getLogger(HistoryReplayer.class.getName());
+    private static final long IDLE_WAIT_MS = 1000;
+    private static final long MIN_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+
+    private final HistoryJournal journal;
+    private final IHistoryRepository repository;
+    private final int batchSize;
+    private final Thread thread;
+    private final AtomicLong shippedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong deadLetterCount = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile boolean failing;
+
+    /**
+     * Creates the replayer; {@link #start()} starts shipping. Records left in
+     * the journal by a previous run are shipped first.
+     *
+     * @param journal    The journal to read from
+     * @param repository The repository records are inserted into
+     * @param batchSize  Maximum number of records per JDBC batch
+     */
+    public HistoryReplayer(HistoryJournal journal, IHistoryRepository repository, int batchSize) {
+        this.journal = journal;
+        this.repository = repository;
+        this.batchSize = batchSize;
+        this.thread = new Thread(this::run, "HistoryReplayer");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the thread that ships the journal.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the replayer once it has shipped everything journaled so far, or
+     * after the timeout. Records that could not be shipped stay in the journal
+     * for the next start.
+     *
+     * @param timeoutMs Maximum time to wait, in milliseconds
+     */
+    public void shutdown(long timeoutMs) {
+        if (!journal.awaitShipped(journal.getAppendedSequence(), timeoutMs)) {
+            LOGGER.warning(String.format("Stopping history replayer with %d entries left in the journal",
+                    journal.getPendingCount()));
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getShippedCount() {
+        return shippedCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return The number of batches that failed and were retried
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return The number of records the database rejected for good, which
+     *         were moved to the dead-letter file
+     */
+    public long getDeadLetterCount() {
+        return deadLetterCount.get();
+    }
+
+    /**
+     * @return true while the database is rejecting batches
+     */
+    public boolean isFailing() {
+        return failing;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryReplayer{" +
+                "shipped=" + shippedCount.get() +
+                ", batches=" + batchCount.get() +
+                ", retries=" + retryCount.get() +
+                ", deadLetters=" + deadLetterCount.get() +
+                ", failing=" + failing +
+                '}';
+    }
+
+    private void run() {
+        List<OperationHistoryModel> batch = new ArrayList<>(batchSize);
+        HistoryJournal.Position position = journal.getRecoveredPosition();
+        long backoff = MIN_BACKOFF_MS;
+        try {
+            while (running) {
+                long seen = journal.getAppendedSequence();
+                batch.clear();
+                HistoryJournal.Position next = journal.read(position, batchSize, batch);
+                if (batch.isEmpty()) {
+                    if (!next.equals(position)) {
+                        journal.acknowledge(next, 0);
+                        position = next;
+                    } else {
+                        journal.awaitAppended(seen, IDLE_WAIT_MS);
+                    }
+                    continue;
+                }
+                RuntimeException failure = ship(batch);
+                if (failure != null) {
+                    retryCount.incrementAndGet();
+                    if (!failing) {
+                        failing = true;
+                        LOGGER.log(Level.WARNING, "Cannot ship operation history to the database, "
+                                + "keeping it in the journal and retrying", failure);
+                    }
+                    Thread.sleep(backoff);
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+                    continue;
+                }
+                if (failing) {
+                    failing = false;
+                    LOGGER.info("Database accepts operation history again, " + journal.getPendingCount()
+                            + " entries left to replay");
+                }
+                backoff = MIN_BACKOFF_MS;
+                journal.acknowledge(next, batch.size());
+                position = next;
+                shippedCount.addAndGet(batch.size());
+                batchCount.incrementAndGet();
+            }
+        } catch (InterruptedException | ClosedByInterruptException e) {
+            // Shut down
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "History replayer failed to read the journal, replay resumes on restart", e);
+        }
+    }
+
+    /**
+     * Inserts a batch. If the database rejects it for good, the records are
+     * inserted one by one and those rejected are moved to the dead-letter
+     * file. Records inserted before a retry are inserted again by it, which
+     * the at-least-once delivery allows.
+     *
+     * @return null once every record is inserted or dead-lettered, otherwise
+     *         the failure that makes the batch worth retrying
+     */
+    private RuntimeException ship(List<OperationHistoryModel> batch) {
+        try {
+            repository.saveBatch(batch);
+            return null;
+        } catch (RuntimeException e) {
+            if (findPermanentCause(e) == null) {
+                return e;
+            }
+        }
+        for (OperationHistoryModel operation : batch) {
+            try {
+                repository.saveBatch(List.of(operation));
+            } catch (RuntimeException e) {
+                SQLException cause = findPermanentCause(e);
+                if (cause == null) {
+                    return e;
+                }
+                deadLetter(operation, cause);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The exception showing that the failure is caused by the data
+     *         rather than by the database being unavailable, so retrying
+     *         cannot fix it, or null if there is none
+     */
+    private static SQLException findPermanentCause(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException) {
+                for (SQLException e = sqlException; e != null; e = e.getNextException()) {
+                    if (e instanceof SQLIntegrityConstraintViolationException || e instanceof SQLDataException
+                            || e instanceof DataTruncation) {
+                        return e;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void deadLetter(OperationHistoryModel operation, SQLException cause) {
+        deadLetterCount.incrementAndGet();
+        String line = String.format("%s\t%d\t%s\t%s\t%s%n", operation.getTimestamp(), operation.getClientId(),
+                operation.getClientIp(), operation.describe(), cause.getMessage());
+        Path file = journal.getDirectory().resolve(DEAD_LETTER_FILE);
+        LOGGER.severe(String.format("Database rejected operation history entry, moving it to %s: %s", file,
+                line.trim()));
+        try {
+            Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Cannot write history dead-letter file " + file, e);
+        }
+    }
+}
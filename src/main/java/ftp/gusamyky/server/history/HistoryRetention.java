@@ -0,0 +1,156 @@
+package ftp.gusamyky.server.history;
+
+import ftp.gusamyky.server.common.exception.DatabaseException;
+import ftp.gusamyky.server.common.repository.IHistoryRepository;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the operation history table from growing without bound.
+ * Periodically, operations from days that have fallen out of the retention
+ * period are added to per-client daily totals and deleted, which keeps REPORT
+ * complete while HISTORY only lists recent operations.
+ * <p>
+ * Purging runs in small chunks, each its own short transaction, with a pause
+ * in between so concurrent inserts and reads are never blocked for long. Only
+ * whole days are purged.
+ */
+public class HistoryRetention {
+    private static final Logger LOGGER = Logger.getLogger(HistoryRetention.class.getName());
+    private static final long INITIAL_DELAY_MS = 60000;
+    private static final long CHUNK_PAUSE_MS = 50;
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    private final IHistoryRepository repository;
+    private final int retentionDays;
+    private final int chunkSize;
+    private final long intervalMs;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong purgedCount = new AtomicLong();
+    private final AtomicLong runCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Creates the retention service. Runs are scheduled by {@link #start()}.
+     *
+     * @param repository    The repository to purge
+     * @param retentionDays Number of days whose individual operations are kept,
+     *                      besides today; 0 keeps everything
+     * @param chunkSize     Maximum number of operations purged per transaction
+     * @param intervalMs    Time between two runs, in milliseconds
+     */
+    public HistoryRetention(IHistoryRepository repository, int retentionDays, int chunkSize, long intervalMs) {
+        this.repository = repository;
+        this.retentionDays = retentionDays;
+        this.chunkSize = chunkSize;
+        this.intervalMs = intervalMs;
+        if (retentionDays > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "HistoryRetention");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Schedules the runs; does nothing if everything is kept.
+     */
+    public void start() {
+        if (scheduler != null) {
+            scheduler.scheduleWithFixedDelay(this::run, Math.min(INITIAL_DELAY_MS, intervalMs), intervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Purges every operation recorded before the retention period, chunk by
+     * chunk. Stops early when the thread is interrupted.
+     *
+     * @return The number of operations purged
+     * @throws DatabaseException If a chunk could not be purged; chunks purged
+     *                           before stay purged
+     */
+    public long purge() {
+        if (retentionDays <= 0) {
+            return 0;
+        }
+        LocalDateTime cutoff = LocalDate.now().minusDays(retentionDays).atStartOfDay();
+        long purged = 0;
+        int chunk;
+        do {
+            chunk = repository.rollUpAndPurge(cutoff, chunkSize);
+            purged += chunk;
+            purgedCount.addAndGet(chunk);
+            if (chunk == chunkSize) {
+                try {
+                    Thread.sleep(CHUNK_PAUSE_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } while (chunk == chunkSize);
+        return purged;
+    }
+
+    /**
+     * Stops scheduled runs, interrupting a run in progress between two chunks.
+     */
+    public void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getPurgedCount() {
+        return purgedCount.get();
+    }
+
+    public long getRunCount() {
+        return runCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryRetention{" +
+                "retentionDays=" + retentionDays +
+                ", runs=" + runCount.get() +
+                ", purged=" + purgedCount.get() +
+                ", failures=" + failureCount.get() +
+                '}';
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        try {
+            long purged = purge();
+            runCount.incrementAndGet();
+            if (purged > 0) {
+                LOGGER.info(String.format("Rolled up and purged %d history entries older than %d days in %d ms",
+                        purged, retentionDays, (System.nanoTime() - start) / 1_000_000));
+            }
+        } catch (DatabaseException e) {
+            failureCount.incrementAndGet();
+            LOGGER.log(Level.WARNING, "History retention run failed, retrying at the next run", e);
+        }
+    }
+}
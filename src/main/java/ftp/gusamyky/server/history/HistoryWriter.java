@@ -0,0 +1,432 @@
+package ftp.gusamyky.server.history;
+
+import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.repository.IHistoryRepository;
+import ftp.gusamyky.server.config.HistoryOverflowPolicy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes operation history entries to the database in the background.
+ * Commands hand their entries to a bounded queue and return immediately; a
+ * single writer thread drains the queue in batches of up to {@code batchSize}
+ * entries. A batch that has not filled up is written once it is
+ * {@code flushIntervalMs} old, so an idle server still records operations
+ * promptly while a busy one pays for one round trip and one commit per batch
+ * instead of per operation.
+ * <p>
+ * With a {@link HistoryJournal} each batch is appended to the journal with a
+ * single fsync and a {@link HistoryReplayer} ships it to the database, so a
+ * slow or unavailable database never backs up into the queue. Without one, or
+ * if the journal cannot be written, batches are inserted directly.
+ * <p>
+ * When the queue is full the configured {@link HistoryOverflowPolicy} decides
+ * whether the caller waits, writes the entry itself, or an entry is dropped.
+ * Once {@link #shutdown()} has been called new entries are written
+ * synchronously.
+ */
+public class HistoryWriter {
+    private static final Logger LOGGER = Logger.getLogger(HistoryWriter.class.getName());
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+    private static final int DROP_LOG_INTERVAL = 1000;
+    private static final int MAX_TRACKED_CLIENTS = 10000;
+
+    private final IHistoryRepository repository;
+    private final HistoryJournal journal;
+    private final HistoryReplayer replayer;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final HistoryOverflowPolicy overflowPolicy;
+    private final Thread writerThread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition settledChanged = lock.newCondition();
+    private final ArrayDeque<OperationHistoryModel> queue;
+    // Guarded by lock: entries ever queued, entries written, failed or dropped
+    // after queueing, and the queued count a flush is waiting for.
+    private long acceptedCount;
+    private long settledCount;
+    private long flushTarget;
+    private boolean running = true;
+    // Guarded by lock: acceptedCount right after each client's latest queued entry
+    private final HashMap<Integer, Long> clientAccepted = new HashMap<>();
+
+    // Journal sequence of each client's latest journaled entry, for flush(clientId, ...)
+    private final ConcurrentHashMap<Integer, Long> clientSequences = new ConcurrentHashMap<>();
+    private final AtomicLong journaledCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong callerRunsCount = new AtomicLong();
+
+    /**
+     * Creates the writer. Entries are queued from the start but only written
+     * once {@link #start()} has been called.
+     *
+     * @param repository      The repository entries are written to
+     * @param journal         The journal entries are written to first, or null
+     *                        to insert them directly
+     * @param capacity        Maximum number of queued entries
+     * @param batchSize       Maximum number of entries per JDBC batch
+     * @param flushIntervalMs Maximum time a partial batch waits for more
+     *                        entries, in milliseconds
+     * @param overflowPolicy  What to do with new entries while the queue is
+     *                        full
+     */
+    public HistoryWriter(IHistoryRepository repository, HistoryJournal journal, int capacity, int batchSize,
+            long flushIntervalMs, HistoryOverflowPolicy overflowPolicy) {
+        this.repository = repository;
+        this.journal = journal;
+        this.replayer = journal != null ? new HistoryReplayer(journal, repository, batchSize) : null;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayDeque<>(Math.min(capacity, 1024));
+        this.writerThread = new Thread(this::run, "HistoryWriter");
+        writerThread.setDaemon(true);
+        LOGGER.info(String.format("Created history writer with queue capacity %d, batch size %d, flush interval %d ms, "
+                + "overflow policy %s", capacity, batchSize, flushIntervalMs, overflowPolicy));
+    }
+
+    /**
+     * Starts the writer thread and, with a journal, the replayer.
+     */
+    public void start() {
+        writerThread.start();
+        if (replayer != null) {
+            replayer.start();
+        }
+    }
+
+    /**
+     * Queues an entry for writing. Depending on the overflow policy this may
+     * block, write the entry on the calling thread, or drop an entry when the
+     * queue is full.
+     *
+     * @param operation The entry to record
+     */
+    public void submit(OperationHistoryModel operation) {
+        if (!enqueue(operation)) {
+            callerRunsCount.incrementAndGet();
+            writeDirectly(operation);
+        }
+    }
+
+    /**
+     * Waits until every entry of the client queued before this call is in the
+     * database (or has failed or been dropped). Only the queue up to the
+     * client's latest entry is waited for, and only the journal up to the
+     * client's latest record, so entries other clients queue later never
+     * delay the flush.
+     *
+     * @param clientId  The client whose entries to wait for
+     * @param timeoutMs Maximum time to wait, in milliseconds
+     * @return false if the entries were not written in time
+     */
+    public boolean flush(int clientId, long timeoutMs) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            long target = clientAccepted.getOrDefault(clientId, 0L);
+            if (settledCount < target) {
+                flushTarget = Math.max(flushTarget, target);
+                notEmpty.signal();
+            }
+            while (settledCount < target) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = settledChanged.awaitNanos(remaining);
+            }
+            clientAccepted.remove(clientId, target);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+        Long sequence = journal != null ? clientSequences.get(clientId) : null;
+        if (sequence == null) {
+            return true;
+        }
+        if (!journal.awaitShipped(sequence, TimeUnit.NANOSECONDS.toMillis(remaining))) {
+            return false;
+        }
+        clientSequences.remove(clientId, sequence);
+        return true;
+    }
+
+    /**
+     * Writes all queued entries and stops the writer thread. With a journal,
+     * journaled entries are shipped for up to the shutdown timeout and the
+     * rest is replayed on the next start. Entries submitted afterwards are
+     * inserted synchronously.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+            flushTarget = acceptedCount;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            LOGGER.warning(String.format("History writer did not finish within %d ms, %d entries still queued",
+                    SHUTDOWN_TIMEOUT_MS, getQueuedCount()));
+        }
+        if (journal != null) {
+            replayer.shutdown(SHUTDOWN_TIMEOUT_MS);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Error closing history journal", e);
+            }
+        }
+    }
+
+    /**
+     * @return The number of entries waiting to be written
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of entries appended to the journal
+     */
+    public long getJournaledCount() {
+        return journaledCount.get();
+    }
+
+    /**
+     * @return The number of entries inserted into the database directly,
+     *         bypassing the journal
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return The journal, or null if entries are inserted directly
+     */
+    public HistoryJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return The replayer shipping the journal, or null without a journal
+     */
+    public HistoryReplayer getReplayer() {
+        return replayer;
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return The number of entries written synchronously by the thread that
+     *         recorded them
+     */
+    public long getCallerRunsCount() {
+        return callerRunsCount.get();
+    }
+
+    /**
+     * @return The average number of entries per batch taken from the queue
+     */
+    public double getAverageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) (journaledCount.get() + writtenCount.get()) / batches;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryWriter{" +
+                "queued=" + getQueuedCount() +
+                ", journaled=" + journaledCount.get() +
+                ", written=" + writtenCount.get() +
+                ", batches=" + batchCount.get() +
+                ", avgBatchSize=" + String.format("%.1f", getAverageBatchSize()) +
+                ", failed=" + failedCount.get() +
+                ", dropped=" + droppedCount.get() +
+                ", callerRuns=" + callerRunsCount.get() +
+                ", overflowPolicy=" + overflowPolicy +
+                (journal != null ? ", " + journal + ", " + replayer : "") +
+                '}';
+    }
+
+    /**
+     * @return false if the caller has to write the entry itself
+     */
+    private boolean enqueue(OperationHistoryModel operation) {
+        lock.lock();
+        try {
+            while (running && queue.size() >= capacity) {
+                switch (overflowPolicy) {
+                    case BLOCK -> notFull.awaitUninterruptibly();
+                    case CALLER_RUNS -> {
+                        return false;
+                    }
+                    case DROP_NEWEST -> {
+                        recordDrop();
+                        return true;
+                    }
+                    case DROP_OLDEST -> {
+                        queue.pollFirst();
+                        settledCount++;
+                        settledChanged.signalAll();
+                        recordDrop();
+                    }
+                }
+            }
+            if (!running) {
+                return false;
+            }
+            queue.addLast(operation);
+            acceptedCount++;
+            clientAccepted.put(operation.getClientId(), acceptedCount);
+            if (clientAccepted.size() > MAX_TRACKED_CLIENTS) {
+                clientAccepted.values().removeIf(accepted -> accepted <= settledCount);
+            }
+            if (queue.size() == 1 || queue.size() == batchSize) {
+                notEmpty.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordDrop() {
+        long dropped = droppedCount.incrementAndGet();
+        if (dropped == 1 || dropped % DROP_LOG_INTERVAL == 0) {
+            LOGGER.warning(String.format("History queue full, %d entries dropped so far", dropped));
+        }
+    }
+
+    private void run() {
+        List<OperationHistoryModel> batch = new ArrayList<>(batchSize);
+        while (nextBatch(batch)) {
+            write(batch);
+            batchCount.incrementAndGet();
+            lock.lock();
+            try {
+                settledCount += batch.size();
+                settledChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            batch.clear();
+        }
+        LOGGER.info("History writer stopped: " + this);
+    }
+
+    /**
+     * Waits for a batch to fill up, for its oldest entry to reach the flush
+     * interval, or for a flush request, and moves the batch out of the queue.
+     *
+     * @return false once the writer is shut down and the queue is empty
+     */
+    private boolean nextBatch(List<OperationHistoryModel> batch) {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (!running) {
+                    return false;
+                }
+                notEmpty.awaitUninterruptibly();
+            }
+            long remaining = flushIntervalNanos;
+            while (remaining > 0 && queue.size() < batchSize && running && flushTarget <= settledCount) {
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            while (batch.size() < batchSize && !queue.isEmpty()) {
+                batch.add(queue.pollFirst());
+            }
+            notFull.signalAll();
+            return true;
+        } catch (InterruptedException e) {
+            // Only shutdown stops the writer; write what has been queued.
+            while (batch.size() < batchSize && !queue.isEmpty()) {
+                batch.add(queue.pollFirst());
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeDirectly(OperationHistoryModel operation) {
+        write(List.of(operation));
+    }
+
+    /**
+     * Appends the entries to the journal, falling back to a direct insert if
+     * there is no journal or appending fails.
+     */
+    private void write(List<OperationHistoryModel> operations) {
+        if (journal != null && !journal.isClosed()) {
+            try {
+                long sequence = journal.append(operations);
+                journaledCount.addAndGet(operations.size());
+                for (OperationHistoryModel operation : operations) {
+                    clientSequences.merge(operation.getClientId(), sequence, Math::max);
+                }
+                if (clientSequences.size() > MAX_TRACKED_CLIENTS) {
+                    long shipped = journal.getShippedSequence();
+                    clientSequences.values().removeIf(clientSequence -> clientSequence <= shipped);
+                }
+                return;
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to journal " + operations.size()
+                        + " operation history entries, inserting them directly", e);
+            }
+        }
+        try {
+            repository.saveBatch(operations);
+            writtenCount.addAndGet(operations.size());
+        } catch (RuntimeException e) {
+            failedCount.addAndGet(operations.size());
+            LOGGER.log(Level.SEVERE, "Failed to write " + operations.size() + " operation history entries", e);
+        }
+    }
+}
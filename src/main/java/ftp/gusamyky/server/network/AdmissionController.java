@@ -0,0 +1,280 @@
+package ftp.gusamyky.server.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Limits the number of concurrently served client sessions.
+ * A new connection is admitted while both the global and the per-IP session
+ * limits allow it. When only the global limit is exhausted the connection waits
+ * in a bounded queue until a session ends or the queue timeout expires; every
+ * other case is rejected immediately so the client can back off.
+ */
+public class AdmissionController {
+    private static final Logger LOGGER = Logger.getLogger(AdmissionController.class.getName());
+    private static final long SWEEP_INTERVAL_MS = 250;
+
+    /**
+     * Outcome of {@link #offer(String, Runnable, Runnable)}.
+     */
+    public enum Decision {
+        ADMITTED, QUEUED, REJECTED
+    }
+
+    private final int maxSessions;
+    private final int maxSessionsPerIp;
+    private final int queueCapacity;
+    private final long queueTimeoutMs;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Integer> sessionsPerIp = new HashMap<>();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final ScheduledExecutorService sweeper;
+    private int activeSessions;
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Creates a new admission controller.
+     *
+     * @param maxSessions      Maximum number of concurrent sessions, 0 for no
+     *                         limit
+     * @param maxSessionsPerIp Maximum number of concurrent sessions from one
+     *                         address, 0 for no limit
+     * @param queueCapacity    Maximum number of connections waiting for a slot
+     * @param queueTimeoutMs   How long a queued connection may wait before it is
+     *                         rejected
+     */
+    public AdmissionController(int maxSessions, int maxSessionsPerIp, int queueCapacity, long queueTimeoutMs) {
+        this.maxSessions = maxSessions;
+        this.maxSessionsPerIp = maxSessionsPerIp;
+        this.queueCapacity = queueCapacity;
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "AdmissionSweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        LOGGER.info(String.format("Admission control - Max sessions: %d, Per IP: %d, Queue: %d, Queue timeout: %d ms",
+                maxSessions, maxSessionsPerIp, queueCapacity, queueTimeoutMs));
+    }
+
+    /**
+     * Starts the sweeper that rejects connections which waited in the queue
+     * longer than the queue timeout.
+     */
+    public void start() {
+        sweeper.scheduleWithFixedDelay(this::expireWaiters, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Offers a new connection. {@code onAdmit} is run once the connection holds
+     * a session slot, either right away or when it leaves the wait queue;
+     * {@code onReject} is run if it is refused now or times out in the queue.
+     * Callbacks run on the calling thread (or the thread releasing a slot) and
+     * must not block.
+     *
+     * @param ip       The client address
+     * @param onAdmit  Starts the session
+     * @param onReject Tells the client to retry later and closes the connection
+     * @return What happened to the connection
+     */
+    public Decision offer(String ip, Runnable onAdmit, Runnable onReject) {
+        Decision decision;
+        lock.lock();
+        try {
+            if (canAdmit(ip)) {
+                acquire(ip);
+                decision = Decision.ADMITTED;
+            } else if (!perIpLimitReached(ip) && waiters.size() < queueCapacity) {
+                waiters.addLast(new Waiter(ip, onAdmit, onReject, System.currentTimeMillis()));
+                decision = Decision.QUEUED;
+            } else {
+                decision = Decision.REJECTED;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        switch (decision) {
+            case ADMITTED -> {
+                acceptedCount.incrementAndGet();
+                onAdmit.run();
+            }
+            case QUEUED -> queuedCount.incrementAndGet();
+            case REJECTED -> {
+                rejectedCount.incrementAndGet();
+                LOGGER.warning("Rejected connection from IP: " + ip);
+                onReject.run();
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * Releases the session slot held by a connection from the given address and
+     * admits the next eligible queued connection, if any.
+     *
+     * @param ip The client address the slot was acquired for
+     */
+    public void release(String ip) {
+        List<Waiter> admitted = new ArrayList<>();
+        List<Waiter> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            activeSessions--;
+            Integer count = sessionsPerIp.get(ip);
+            if (count != null) {
+                if (count <= 1) {
+                    sessionsPerIp.remove(ip);
+                } else {
+                    sessionsPerIp.put(ip, count - 1);
+                }
+            }
+            collectExpired(System.currentTimeMillis(), expired);
+            Iterator<Waiter> it = waiters.iterator();
+            while (it.hasNext()) {
+                Waiter waiter = it.next();
+                if (canAdmit(waiter.ip)) {
+                    it.remove();
+                    acquire(waiter.ip);
+                    admitted.add(waiter);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        rejectAll(expired);
+        for (Waiter waiter : admitted) {
+            acceptedCount.incrementAndGet();
+            waiter.onAdmit.run();
+        }
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public int getActiveSessions() {
+        lock.lock();
+        try {
+            return activeSessions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rejects every queued connection and stops the queue sweeper.
+     */
+    public void shutdown() {
+        sweeper.shutdownNow();
+        List<Waiter> pending;
+        lock.lock();
+        try {
+            pending = new ArrayList<>(waiters);
+            waiters.clear();
+        } finally {
+            lock.unlock();
+        }
+        rejectAll(pending);
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+                "active=" + getActiveSessions() +
+                ", queued=" + getQueueDepth() +
+                ", acceptedTotal=" + acceptedCount.get() +
+                ", queuedTotal=" + queuedCount.get() +
+                ", rejectedTotal=" + rejectedCount.get() +
+                '}';
+    }
+
+    private boolean canAdmit(String ip) {
+        return (maxSessions <= 0 || activeSessions < maxSessions) && !perIpLimitReached(ip);
+    }
+
+    private boolean perIpLimitReached(String ip) {
+        return maxSessionsPerIp > 0 && sessionsPerIp.getOrDefault(ip, 0) >= maxSessionsPerIp;
+    }
+
+    private void acquire(String ip) {
+        activeSessions++;
+        sessionsPerIp.merge(ip, 1, Integer::sum);
+    }
+
+    private void expireWaiters() {
+        List<Waiter> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            collectExpired(System.currentTimeMillis(), expired);
+        } finally {
+            lock.unlock();
+        }
+        rejectAll(expired);
+    }
+
+    private void collectExpired(long now, List<Waiter> expired) {
+        Iterator<Waiter> it = waiters.iterator();
+        while (it.hasNext()) {
+            Waiter waiter = it.next();
+            if (now - waiter.enqueuedAt >= queueTimeoutMs) {
+                it.remove();
+                expired.add(waiter);
+            }
+        }
+    }
+
+    private void rejectAll(List<Waiter> rejected) {
+        for (Waiter waiter : rejected) {
+            rejectedCount.incrementAndGet();
+            LOGGER.warning("Queued connection from IP " + waiter.ip + " timed out waiting for a session slot");
+            waiter.onReject.run();
+        }
+    }
+
+    private static final class Waiter {
+        private final String ip;
+        private final Runnable onAdmit;
+        private final Runnable onReject;
+        private final long enqueuedAt;
+
+        private Waiter(String ip, Runnable onAdmit, Runnable onReject, long enqueuedAt) {
+            this.ip = ip;
+            this.onAdmit = onAdmit;
+            this.onReject = onReject;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ftp.gusamyky.server.network;
+
+import ftp.gusamyky.server.handler.ClientHandler;
+import ftp.gusamyky.server.handler.FramedInputStream;
+import ftp.gusamyky.server.service.ServiceFactory;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A client connection served by a {@link Reactor}.
+ * While the connection is idle it is registered with the reactor's selector in
+ * non-blocking mode and holds no thread. As soon as a complete request has been
+ * buffered the session is detached from the selector and executed on a
+ * worker thread in blocking mode, so the command implementations can keep
+ * using ordinary streams. The reactor and the commands share one
+ * {@link FramedInputStream}, so nothing read by the reactor is lost.
+ */
+class NioSession {
+    private static final Logger LOGGER = Logger.getLogger(NioSession.class.getName());
+
+    private final SocketChannel channel;
+    private final SocketAddress remoteAddress;
+    private final FramedInputStream input;
+    private final ClientHandler handler;
+    private final Runnable onClose;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private Reactor reactor;
+    private boolean greeted;
+    private long lastActivity;
+
+    NioSession(SocketChannel channel, ServiceFactory serviceFactory, Runnable onClose) throws IOException {
+        this.channel = channel;
+        this.onClose = onClose;
+        this.remoteAddress = channel.getRemoteAddress();
+        this.input = new FramedInputStream(channel.socket().getInputStream());
+        this.handler = new ClientHandler(channel.socket(), input, serviceFactory);
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    void setReactor(Reactor reactor) {
+        this.reactor = reactor;
+    }
+
+    /**
+     * Registers the channel with the given selector for read events. Must be
+     * called on the selector's thread.
+     */
+    void register(Selector selector) throws IOException {
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Reads whatever is available from the channel into the session buffer. Must
+     * be called on the reactor thread while the channel is non-blocking.
+     *
+     * @return true if a complete request is now buffered
+     * @throws IOException If the channel failed or was closed by the peer
+     */
+    boolean readAvailable() throws IOException {
+        int read = input.fillFrom(channel);
+        if (read < 0) {
+            throw new IOException("Connection closed by peer");
+        }
+        lastActivity = System.currentTimeMillis();
+        if (handler.hasBufferedRequest()) {
+            return true;
+        }
+        if (input.isFull()) {
+            throw new IOException("Request exceeds the read buffer");
+        }
+        return false;
+    }
+
+    boolean isIdle(long now) {
+        return now - lastActivity > ClientHandler.SOCKET_TIMEOUT;
+    }
+
+    /**
+     * Executes every buffered request in blocking mode and hands the session
+     * back to its reactor afterwards. Runs on a worker thread.
+     */
+    void process() {
+        try {
+            channel.configureBlocking(true);
+            if (!greeted) {
+                handler.sendWelcomeMessage();
+                greeted = true;
+            }
+            if (!handler.processBufferedCommands()) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            channel.configureBlocking(false);
+            reactor.attach(this);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Session " + remoteAddress + " failed", e);
+            close();
+        }
+    }
+
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            handler.close();
+            onClose.run();
+        }
+    }
+}
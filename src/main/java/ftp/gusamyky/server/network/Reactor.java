@@ -0,0 +1,168 @@
+package ftp.gusamyky.server.network;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selector loop that watches idle client sessions for incoming command lines.
+ * A session whose buffer holds a complete line is deregistered and dispatched
+ * to the worker pool; the worker re-attaches it once the buffered commands have
+ * been executed.
+ */
+class Reactor implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(Reactor.class.getName());
+    private static final long SELECT_TIMEOUT_MS = 1000;
+    private static final long IDLE_CHECK_INTERVAL_MS = 10000;
+
+    private final String name;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final Queue<NioSession> pending = new ConcurrentLinkedQueue<>();
+    private final List<NioSession> detached = new ArrayList<>();
+    private volatile boolean running = true;
+    private long lastIdleCheck = System.currentTimeMillis();
+
+    Reactor(String name, ExecutorService workers) throws IOException {
+        this.name = name;
+        this.workers = workers;
+        this.selector = Selector.open();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Queues a session for registration with this reactor's selector. Safe to
+     * call from any thread.
+     */
+    void attach(NioSession session) {
+        session.setReactor(this);
+        pending.add(session);
+        selector.wakeup();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        LOGGER.info("Reactor " + name + " started");
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MS);
+                registerPending();
+                processSelectedKeys();
+                dispatchDetached();
+                closeIdleSessions();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Reactor " + name + " failed", e);
+        } finally {
+            closeAll();
+        }
+        LOGGER.info("Reactor " + name + " stopped");
+    }
+
+    private void registerPending() {
+        NioSession session;
+        while ((session = pending.poll()) != null) {
+            try {
+                session.register(selector);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to register session " + session.getRemoteAddress(), e);
+                session.close();
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            NioSession session = (NioSession) key.attachment();
+            if (!key.isValid() || !key.isReadable()) {
+                continue;
+            }
+            try {
+                if (session.readAvailable()) {
+                    key.cancel();
+                    detached.add(session);
+                }
+            } catch (IOException e) {
+                LOGGER.info(String.format("Client %s disconnected: %s", session.getRemoteAddress(), e.getMessage()));
+                key.cancel();
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Hands detached sessions to the worker pool. The cancelled keys are only
+     * removed from the selector by the next selection operation, and the channel
+     * cannot be switched to blocking mode before that, hence the selectNow().
+     */
+    private void dispatchDetached() throws IOException {
+        while (!detached.isEmpty()) {
+            selector.selectNow();
+            List<NioSession> ready = new ArrayList<>(detached);
+            detached.clear();
+            for (NioSession session : ready) {
+                try {
+                    workers.execute(session::process);
+                } catch (RejectedExecutionException e) {
+                    LOGGER.warning("Worker pool rejected session " + session.getRemoteAddress());
+                    session.close();
+                }
+            }
+            processSelectedKeys();
+        }
+    }
+
+    private void closeIdleSessions() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < IDLE_CHECK_INTERVAL_MS) {
+            return;
+        }
+        lastIdleCheck = now;
+        for (SelectionKey key : selector.keys()) {
+            NioSession session = (NioSession) key.attachment();
+            if (session != null && session.isIdle(now)) {
+                LOGGER.info(String.format("Closing idle client %s", session.getRemoteAddress()));
+                key.cancel();
+                session.close();
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            NioSession session = (NioSession) key.attachment();
+            if (session != null) {
+                session.close();
+            }
+        }
+        NioSession session;
+        while ((session = pending.poll()) != null) {
+            session.close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error closing selector of reactor " + name, e);
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package ftp.gusamyky.server.network;
 
+import ftp.gusamyky.server.config.IoMode;
 import ftp.gusamyky.server.config.ServerConfig;
+import ftp.gusamyky.server.config.ThreadMode;
 import ftp.gusamyky.server.service.ServiceFactory;
 import ftp.gusamyky.server.handler.ClientHandler;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -23,14 +32,34 @@ public class ServerNetworkService {
     private final ServiceFactory serviceFactory;
     private ServerSocket serverSocket;
     private final ExecutorService executor;
+    private final List<Reactor> reactors = new ArrayList<>();
+    private final AtomicInteger nextReactor = new AtomicInteger();
+    private final AdmissionController admissionController;
     private volatile boolean running = false;
 
     public ServerNetworkService(ServerConfig config, ServiceFactory serviceFactory) {
         this.config = config;
         this.serviceFactory = serviceFactory;
-        this.executor = Executors.newCachedThreadPool(r -> {
+        this.executor = createExecutor(config.getThreadMode());
+        this.admissionController = new AdmissionController(config.getMaxSessions(), config.getMaxSessionsPerIp(),
+                config.getAdmissionQueueSize(), config.getAdmissionQueueTimeoutMs());
+    }
+
+    /**
+     * Creates the executor running client sessions (or, in NIO mode, their
+     * command batches). Virtual threads keep the blocking session code as-is while
+     * letting idle sessions park without holding a platform thread; CPU-heavy
+     * work is offloaded to {@link ServiceFactory#getCpuExecutor()} so it cannot
+     * monopolize the carrier threads.
+     */
+    private static ExecutorService createExecutor(ThreadMode threadMode) {
+        if (threadMode == ThreadMode.VIRTUAL) {
+            LOGGER.info("Running client sessions on virtual threads");
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ClientHandler-", 0).factory());
+        }
+        return Executors.newCachedThreadPool(r -> {
             Thread t = new Thread(r);
-            t.setName("ClientHandler-" + t.getId());
+            t.setName("ClientHandler-" + t.threadId());
             return t;
         });
     }
@@ -44,27 +73,11 @@ public class ServerNetworkService {
         }
 
         try {
-            serverSocket = new ServerSocket();
-            serverSocket.bind(new InetSocketAddress(config.getHost(), config.getPort()));
-            running = true;
-            LOGGER.info("Server listening on " + config.getHost() + ":" + config.getPort());
-
-            while (running) {
-                try {
-                    Socket clientSocket = serverSocket.accept();
-                    String clientAddress = clientSocket.getInetAddress().getHostAddress();
-                    LOGGER.info("New client connected from IP: " + clientAddress);
-                    try {
-                        executor.submit(new ClientHandler(clientSocket, serviceFactory));
-                    } catch (IOException e) {
-                        LOGGER.log(Level.SEVERE, "Error creating client handler for IP: " + clientAddress, e);
-                        clientSocket.close();
-                    }
-                } catch (Exception e) {
-                    if (running) {
-                        LOGGER.log(Level.SEVERE, "Error accepting client connection", e);
-                    }
-                }
+            admissionController.start();
+            if (config.getIoMode() == IoMode.NIO) {
+                runReactors();
+            } else {
+                runBlocking();
             }
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Server error", e);
@@ -74,6 +87,136 @@ public class ServerNetworkService {
         }
     }
 
+    /**
+     * Accepts connections through a blocking channel so that every client socket
+     * is channel-backed, which lets transfers use zero-copy file I/O.
+     */
+    private void runBlocking() throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverSocket = serverChannel.socket();
+        serverChannel.bind(new InetSocketAddress(config.getHost(), config.getPort()));
+        running = true;
+        LOGGER.info("Server listening on " + config.getHost() + ":" + config.getPort());
+
+        while (running) {
+            try {
+                Socket clientSocket = serverChannel.accept().socket();
+                String clientAddress = clientSocket.getInetAddress().getHostAddress();
+                LOGGER.info("New client connected from IP: " + clientAddress);
+                admissionController.offer(clientAddress,
+                        () -> startHandler(clientSocket, clientAddress),
+                        () -> rejectBusy(clientSocket));
+            } catch (Exception e) {
+                if (running) {
+                    LOGGER.log(Level.SEVERE, "Error accepting client connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts connections on a channel and distributes them round-robin over the
+     * reactors. New sessions are greeted on a worker thread before being handed
+     * to their reactor.
+     */
+    private void runReactors() throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverSocket = serverChannel.socket();
+        serverChannel.bind(new InetSocketAddress(config.getHost(), config.getPort()));
+        startReactors();
+        running = true;
+        LOGGER.info("Server listening on " + config.getHost() + ":" + config.getPort() + " with "
+                + reactors.size() + " reactor(s)");
+
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                String clientAddress = channel.socket().getInetAddress().getHostAddress();
+                LOGGER.info("New client connected from IP: " + clientAddress);
+                admissionController.offer(clientAddress,
+                        () -> startSession(channel, clientAddress),
+                        () -> rejectBusy(channel.socket()));
+            } catch (Exception e) {
+                if (running) {
+                    LOGGER.log(Level.SEVERE, "Error accepting client connection", e);
+                }
+            }
+        }
+    }
+
+    private void startHandler(Socket clientSocket, String clientAddress) {
+        try {
+            ClientHandler handler = new ClientHandler(clientSocket, serviceFactory);
+            executor.execute(() -> {
+                try {
+                    handler.run();
+                } finally {
+                    admissionController.release(clientAddress);
+                }
+            });
+        } catch (IOException | RejectedExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Error creating client handler for IP: " + clientAddress, e);
+            closeQuietly(clientSocket);
+            admissionController.release(clientAddress);
+        }
+    }
+
+    private void startSession(SocketChannel channel, String clientAddress) {
+        NioSession session;
+        try {
+            session = new NioSession(channel, serviceFactory, () -> admissionController.release(clientAddress));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error creating session for IP: " + clientAddress, e);
+            closeQuietly(channel.socket());
+            admissionController.release(clientAddress);
+            return;
+        }
+        session.setReactor(reactors.get(Math.floorMod(nextReactor.getAndIncrement(), reactors.size())));
+        try {
+            executor.execute(session::process);
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Error starting session for IP: " + clientAddress, e);
+            session.close();
+        }
+    }
+
+    /**
+     * Tells a client that could not be admitted when to try again and closes its
+     * connection.
+     */
+    private void rejectBusy(Socket clientSocket) {
+        try {
+            String reply = "ERROR: BUSY, retry after " + config.getBusyRetryMs() + " ms\n";
+            clientSocket.getOutputStream().write(reply.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error sending busy reply", e);
+        } finally {
+            closeQuietly(clientSocket);
+        }
+    }
+
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error closing client socket", e);
+        }
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    private void startReactors() throws IOException {
+        for (int i = 0; i < config.getReactorThreads(); i++) {
+            Reactor reactor = new Reactor("Reactor-" + i, executor);
+            reactors.add(reactor);
+            Thread thread = new Thread(reactor, reactor.getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
     public void stop() {
         if (!running) {
             LOGGER.warning("Server is not running");
@@ -92,6 +235,15 @@ public class ServerNetworkService {
             }
         }
 
+        // Refuse queued connections
+        admissionController.shutdown();
+        LOGGER.info("Admission statistics: " + admissionController);
+
+        // Stop reactors, closing idle sessions
+        for (Reactor reactor : reactors) {
+            reactor.stop();
+        }
+
         // Shutdown executor service
         executor.shutdown();
         try {
@@ -105,6 +257,21 @@ public class ServerNetworkService {
             Thread.currentThread().interrupt();
         }
 
+        LOGGER.info("Transfer statistics: " + serviceFactory.getTransferExecutor() + ", downloads per user: "
+                + serviceFactory.getDownloadLimiter());
+        LOGGER.info("Auth statistics: " + serviceFactory.getCpuExecutor() + ", per IP: "
+                + serviceFactory.getLoginIpLimiter() + ", per user: " + serviceFactory.getLoginUserLimiter());
+        // Flushes queued operation history before closing the connection pool or metadata store
+        serviceFactory.shutdown();
+        LOGGER.info("History writer statistics: " + serviceFactory.getHistoryWriter());
+        LOGGER.info("History retention statistics: " + serviceFactory.getHistoryRetention());
+        LOGGER.info("User lookup statistics: " + serviceFactory.getUserService().getLookupStatistics());
+        LOGGER.info("File cache statistics: " + serviceFactory.getFileService().getCacheStatistics());
+        if (serviceFactory.getConnectionPool() != null) {
+            LOGGER.info("Connection pool statistics: " + serviceFactory.getConnectionPool());
+        } else {
+            LOGGER.info("Metadata store statistics: " + serviceFactory.getMetadataStore());
+        }
         LOGGER.info("Server stopped");
     }
 
@@ -116,6 +283,9 @@ public class ServerNetworkService {
                 LOGGER.log(Level.WARNING, "Error closing server socket", e);
             }
         }
+        for (Reactor reactor : reactors) {
+            reactor.stop();
+        }
         executor.shutdownNow();
     }
 
@@ -1,5 +1,7 @@
 package ftp.gusamyky.server.service;
 
+import ftp.gusamyky.server.common.exception.DatabaseException;
+import ftp.gusamyky.server.common.exception.ServerException;
 import ftp.gusamyky.server.common.repository.IClientRepository;
 import ftp.gusamyky.server.common.repository.IFileRepository;
 import ftp.gusamyky.server.common.repository.IHistoryRepository;
@@ -13,13 +15,29 @@ import ftp.gusamyky.server.service.impl.UserServiceImpl;
 import ftp.gusamyky.server.service.impl.FileServiceImpl;
 import ftp.gusamyky.server.service.impl.HistoryServiceImpl;
 import ftp.gusamyky.server.config.DatabaseConfig;
+import ftp.gusamyky.server.config.MetadataStoreType;
 import ftp.gusamyky.server.config.ServerConfig;
+import ftp.gusamyky.server.history.HistoryJournal;
+import ftp.gusamyky.server.history.HistoryRetention;
+import ftp.gusamyky.server.history.HistoryWriter;
+import ftp.gusamyky.server.store.MetadataStore;
+import ftp.gusamyky.server.transfer.TransferExecutor;
+import ftp.gusamyky.server.transfer.UploadStaging;
+import ftp.gusamyky.server.util.ConcurrencyLimiter;
+import ftp.gusamyky.server.util.ConnectionPool;
+import ftp.gusamyky.server.util.CpuTaskExecutor;
+import ftp.gusamyky.server.util.RateLimiter;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Factory class for creating service instances.
  * This class is responsible for creating and managing service instances.
  */
 public class ServiceFactory {
+    private static final Logger LOGGER = Logger.getLogger(ServiceFactory.class.getName());
     private final IClientRepository clientRepository;
     private final IFileRepository fileRepository;
     private final IHistoryRepository historyRepository;
@@ -27,15 +45,92 @@ public class ServiceFactory {
     private final IFileService fileService;
     private final IHistoryService historyService;
     private final ServerConfig serverConfig;
+    private final ConnectionPool connectionPool;
+    private final MetadataStore metadataStore;
+    private final HistoryWriter historyWriter;
+    private final HistoryRetention historyRetention;
+    private final CpuTaskExecutor cpuExecutor;
+    private final RateLimiter loginIpLimiter;
+    private final RateLimiter loginUserLimiter;
+    private final TransferExecutor transferExecutor;
+    private final UploadStaging uploadStaging;
+    private final ConcurrencyLimiter<Integer> downloadLimiter;
 
     public ServiceFactory(DatabaseConfig dbConfig, ServerConfig serverConfig) {
         this.serverConfig = serverConfig;
-        this.clientRepository = new ClientRepositoryImpl(dbConfig);
-        this.fileRepository = new FileRepositoryImpl(dbConfig);
-        this.historyRepository = new HistoryRepositoryImpl(dbConfig);
-        this.userService = new UserServiceImpl(clientRepository);
-        this.fileService = new FileServiceImpl(fileRepository);
-        this.historyService = new HistoryServiceImpl(historyRepository);
+        if (dbConfig.getMetadataStore() == MetadataStoreType.EMBEDDED) {
+            this.connectionPool = null;
+            this.metadataStore = openMetadataStore(dbConfig);
+            this.clientRepository = metadataStore.getClientRepository();
+            this.fileRepository = metadataStore.getFileRepository();
+            this.historyRepository = metadataStore.getHistoryRepository();
+        } else {
+            this.connectionPool = new ConnectionPool(dbConfig);
+            connectionPool.start();
+            this.metadataStore = null;
+            this.clientRepository = new ClientRepositoryImpl(connectionPool);
+            this.fileRepository = new FileRepositoryImpl(connectionPool);
+            this.historyRepository = new HistoryRepositoryImpl(connectionPool, dbConfig.getHistoryFetchSize());
+        }
+        this.cpuExecutor = new CpuTaskExecutor(serverConfig.getCpuThreads(), serverConfig.getAuthQueueSize());
+        this.loginIpLimiter = new RateLimiter(serverConfig.getLoginAttemptsPerIp());
+        this.loginUserLimiter = new RateLimiter(serverConfig.getLoginAttemptsPerUser());
+        this.transferExecutor = new TransferExecutor(serverConfig.getTransferThreads(),
+                serverConfig.getTransferQueueSize());
+        this.uploadStaging = openUploadStaging(serverConfig);
+        this.downloadLimiter = new ConcurrencyLimiter<>(serverConfig.getMaxDownloadsPerUser());
+        this.userService = metadataStore == null
+                ? new UserServiceImpl(clientRepository, cpuExecutor, dbConfig.getNegativeCacheSize(),
+                        dbConfig.getNegativeCacheTtlMs())
+                : new UserServiceImpl(clientRepository, cpuExecutor);
+        // The embedded store answers from memory, a cache in front of it would only duplicate it
+        this.fileService = metadataStore == null
+                ? new FileServiceImpl(fileRepository, dbConfig.getFileCacheSize(), dbConfig.getFileCacheTtlMs(),
+                        dbConfig.getNegativeCacheSize(), dbConfig.getNegativeCacheTtlMs())
+                : new FileServiceImpl(fileRepository);
+        // The embedded store is local and durable already, a journal in front of it would only add a write
+        this.historyWriter = new HistoryWriter(historyRepository,
+                metadataStore == null ? openHistoryJournal(dbConfig) : null,
+                dbConfig.getHistoryQueueSize(), dbConfig.getHistoryBatchSize(),
+                dbConfig.getHistoryFlushIntervalMs(), dbConfig.getHistoryOverflowPolicy());
+        historyWriter.start();
+        this.historyService = new HistoryServiceImpl(historyRepository, historyWriter);
+        this.historyRetention = new HistoryRetention(historyRepository, dbConfig.getHistoryRetentionDays(),
+                dbConfig.getHistoryPurgeChunkSize(), dbConfig.getHistoryPurgeIntervalMs());
+        historyRetention.start();
+    }
+
+    private static MetadataStore openMetadataStore(DatabaseConfig dbConfig) {
+        try {
+            return MetadataStore.open(Paths.get(dbConfig.getEmbeddedDir()), dbConfig.getEmbeddedCompactionThreshold());
+        } catch (IOException e) {
+            throw new DatabaseException("Cannot open metadata store in " + dbConfig.getEmbeddedDir(), e);
+        }
+    }
+
+    private static UploadStaging openUploadStaging(ServerConfig serverConfig) {
+        try {
+            UploadStaging staging = new UploadStaging(Paths.get(serverConfig.getStagingDir()),
+                    serverConfig.getStagingExpiryMs());
+            staging.start();
+            return staging;
+        } catch (IOException e) {
+            throw new ServerException("Cannot create staging directory " + serverConfig.getStagingDir(), e);
+        }
+    }
+
+    private static HistoryJournal openHistoryJournal(DatabaseConfig dbConfig) {
+        String dir = dbConfig.getHistoryJournalDir();
+        if (dir.isEmpty()) {
+            return null;
+        }
+        try {
+            return new HistoryJournal(Paths.get(dir), dbConfig.getHistoryJournalSegmentSize());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Cannot open history journal in " + dir
+                    + ", writing operation history to the database directly", e);
+            return null;
+        }
     }
 
     public IUserService getUserService() {
@@ -53,4 +148,83 @@ public class ServiceFactory {
     public ServerConfig getServerConfig() {
         return serverConfig;
     }
+
+    /**
+     * @return The database connection pool, or null if the embedded metadata
+     *         store is used
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * @return The embedded metadata store, or null if MySQL is used
+     */
+    public MetadataStore getMetadataStore() {
+        return metadataStore;
+    }
+
+    public HistoryWriter getHistoryWriter() {
+        return historyWriter;
+    }
+
+    public HistoryRetention getHistoryRetention() {
+        return historyRetention;
+    }
+
+    public CpuTaskExecutor getCpuExecutor() {
+        return cpuExecutor;
+    }
+
+    /**
+     * @return The limit on LOGIN and REGISTER attempts per client IP
+     */
+    public RateLimiter getLoginIpLimiter() {
+        return loginIpLimiter;
+    }
+
+    /**
+     * @return The limit on LOGIN attempts per username
+     */
+    public RateLimiter getLoginUserLimiter() {
+        return loginUserLimiter;
+    }
+
+    public TransferExecutor getTransferExecutor() {
+        return transferExecutor;
+    }
+
+    public UploadStaging getUploadStaging() {
+        return uploadStaging;
+    }
+
+    /**
+     * @return The limit on concurrent DOWNLOADs per client id
+     */
+    public ConcurrencyLimiter<Integer> getDownloadLimiter() {
+        return downloadLimiter;
+    }
+
+    /**
+     * Releases resources held by the services. Called when the server stops.
+     * Queued operation history is written before the connection pool or the
+     * metadata store closes.
+     */
+    public void shutdown() {
+        cpuExecutor.shutdown();
+        transferExecutor.shutdown();
+        uploadStaging.shutdown();
+        historyRetention.shutdown();
+        historyWriter.shutdown();
+        if (connectionPool != null) {
+            connectionPool.shutdown();
+        }
+        if (metadataStore != null) {
+            try {
+                metadataStore.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Error closing metadata store", e);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -3,13 +3,50 @@ package ftp.gusamyky.server.service.impl;
 import ftp.gusamyky.server.common.model.ServerFileModel;
 import ftp.gusamyky.server.common.repository.IFileRepository;
 import ftp.gusamyky.server.common.service.IFileService;
+import ftp.gusamyky.server.util.LruCache;
+import ftp.gusamyky.server.util.SingleFlight;
 import java.util.List;
 
+/**
+ * File metadata service. Lookups of a client's file by name and of a client's
+ * file list are served from an in-process cache, so repeated DOWNLOAD and LIST
+ * commands do not query the database. Files that do not exist are remembered
+ * for a short time, and concurrent identical lookups share one query. Files
+ * only change through this service, which invalidates the affected entries
+ * after each change.
+ */
 public class FileServiceImpl implements IFileService {
     private final IFileRepository fileRepository;
+    private final LruCache<FileKey, ServerFileModel> fileCache;
+    private final LruCache<Integer, List<ServerFileModel>> listingCache;
+    private final LruCache<FileKey, Boolean> missingFiles;
+    private final LruCache<String, Boolean> missingNames;
+    private final SingleFlight<FileKey, ServerFileModel> fileLookups = new SingleFlight<>();
+    private final SingleFlight<String, ServerFileModel> nameLookups = new SingleFlight<>();
+    private final SingleFlight<Integer, List<ServerFileModel>> listingLookups = new SingleFlight<>();
 
     public FileServiceImpl(IFileRepository fileRepository) {
+        this(fileRepository, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param fileRepository The repository the cache is in front of
+     * @param cacheSize      Maximum number of cached files, and of cached file
+     *                       lists; 0 disables caching
+     * @param cacheTtlMs     How long a cached entry is used, in milliseconds; 0
+     *                       until it is evicted or invalidated
+     * @param missingSize    How many missing files are remembered; 0 disables
+     *                       this
+     * @param missingTtlMs   How long a missing file is remembered, in
+     *                       milliseconds
+     */
+    public FileServiceImpl(IFileRepository fileRepository, int cacheSize, long cacheTtlMs, int missingSize,
+            long missingTtlMs) {
         this.fileRepository = fileRepository;
+        this.fileCache = new LruCache<>(cacheSize, cacheTtlMs);
+        this.listingCache = new LruCache<>(cacheSize, cacheTtlMs);
+        this.missingFiles = new LruCache<>(missingSize, missingTtlMs);
+        this.missingNames = new LruCache<>(missingSize, missingTtlMs);
     }
 
     @Override
@@ -19,13 +56,31 @@ public class FileServiceImpl implements IFileService {
 
     @Override
     public List<ServerFileModel> listFilesByOwner(int ownerId) {
-        return fileRepository.findByOwnerId(ownerId);
+        List<ServerFileModel> files = listingCache.isEnabled() ? listingCache.get(ownerId) : null;
+        if (files != null) {
+            return files;
+        }
+        return listingLookups.load(ownerId, () -> {
+            long version = listingCache.version();
+            List<ServerFileModel> loaded = List.copyOf(fileRepository.findByOwnerId(ownerId));
+            listingCache.put(ownerId, loaded, version);
+            return loaded;
+        });
     }
 
     @Override
     public boolean deleteFile(int id) {
         try {
+            ServerFileModel file = fileRepository.findById(id);
             fileRepository.delete(id);
+            if (file != null) {
+                invalidate(file.getOwnerId(), file.getFilename());
+            } else {
+                fileCache.invalidateAll();
+                listingCache.invalidateAll();
+                missingFiles.invalidateAll();
+                missingNames.invalidateAll();
+            }
             return true;
         } catch (Exception e) {
             return false;
@@ -34,16 +89,84 @@ public class FileServiceImpl implements IFileService {
 
     @Override
     public void saveFile(ServerFileModel file) {
+        ServerFileModel previous = file.getId() != 0 ? fileRepository.findById(file.getId()) : null;
         fileRepository.save(file);
+        invalidate(file.getOwnerId(), file.getFilename());
+        if (previous != null) {
+            invalidate(previous.getOwnerId(), previous.getFilename());
+        }
     }
 
     @Override
     public List<ServerFileModel> getFilesByOwnerId(int ownerId) {
-        return fileRepository.findByOwnerId(ownerId);
+        return listFilesByOwner(ownerId);
     }
 
     @Override
     public ServerFileModel getFileByName(String filename) {
-        return fileRepository.findByFilename(filename);
+        if (missingNames.isEnabled() && missingNames.get(filename) != null) {
+            return null;
+        }
+        return copy(nameLookups.load(filename, () -> {
+            long version = missingNames.version();
+            ServerFileModel file = fileRepository.findByFilename(filename);
+            if (file == null) {
+                missingNames.put(filename, Boolean.TRUE, version);
+            }
+            return file;
+        }));
+    }
+
+    @Override
+    public ServerFileModel getFileByOwnerAndName(int ownerId, String filename) {
+        FileKey key = new FileKey(ownerId, filename);
+        ServerFileModel file = fileCache.isEnabled() ? fileCache.get(key) : null;
+        if (file == null) {
+            if (missingFiles.isEnabled() && missingFiles.get(key) != null) {
+                return null;
+            }
+            file = fileLookups.load(key, () -> {
+                long version = fileCache.version();
+                long missingVersion = missingFiles.version();
+                ServerFileModel loaded = fileRepository.findByOwnerAndFilename(ownerId, filename);
+                if (loaded != null) {
+                    fileCache.put(key, loaded, version);
+                } else {
+                    missingFiles.put(key, Boolean.TRUE, missingVersion);
+                }
+                return loaded;
+            });
+        }
+        // Callers get their own copy, the cached or shared one must not change
+        return copy(file);
+    }
+
+    @Override
+    public String getCacheStatistics() {
+        return "files=" + fileCache + ", listings=" + listingCache + ", missingFiles=" + missingFiles
+                + ", missingNames=" + missingNames + ", lookups=" + fileLookups + ", nameLookups=" + nameLookups
+                + ", listingLookups=" + listingLookups;
+    }
+
+    private void invalidate(int ownerId, String filename) {
+        FileKey key = new FileKey(ownerId, filename);
+        fileLookups.forget(key);
+        nameLookups.forget(filename);
+        listingLookups.forget(ownerId);
+        fileCache.invalidate(key);
+        listingCache.invalidate(ownerId);
+        missingFiles.invalidate(key);
+        missingNames.invalidate(filename);
+    }
+
+    private static ServerFileModel copy(ServerFileModel file) {
+        if (file == null) {
+            return null;
+        }
+        return new ServerFileModel(file.getId(), file.getFilename(), file.getSize(), file.getOwnerId(),
+                file.getCreatedAt());
+    }
+
+    private record FileKey(int ownerId, String filename) {
     }
-}
\ No newline at end of file
+}
@@ -1,24 +1,79 @@
 package ftp.gusamyky.server.service.impl;
 
+import ftp.gusamyky.server.common.model.HistoryQuery;
 import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationSummaryModel;
 import ftp.gusamyky.server.common.repository.IHistoryRepository;
+import ftp.gusamyky.server.common.repository.IHistoryRepository.RowHandler;
 import ftp.gusamyky.server.common.service.IHistoryService;
+import ftp.gusamyky.server.history.HistoryWriter;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.logging.Logger;
 
+/**
+ * Records operations through the asynchronous {@link HistoryWriter} and reads
+ * them back from the repository.
+ */
 public class HistoryServiceImpl implements IHistoryService {
+    private static final Logger LOGGER = Logger.getLogger(HistoryServiceImpl.class.getName());
+    private static final long READ_FLUSH_TIMEOUT_MS = 5000;
+    private static final int MAX_FILENAME_LENGTH = 255;
+    private static final int MAX_CLIENT_IP_LENGTH = 45;
     private final IHistoryRepository historyRepository;
+    private final HistoryWriter historyWriter;
 
-    public HistoryServiceImpl(IHistoryRepository historyRepository) {
+    public HistoryServiceImpl(IHistoryRepository historyRepository, HistoryWriter historyWriter) {
         this.historyRepository = historyRepository;
+        this.historyWriter = historyWriter;
     }
 
+    /**
+     * Waits for queued entries to be written first, so a client sees the
+     * operations it has just performed. Later pages continue below the cursor
+     * and do not need to wait.
+     */
     @Override
-    public List<OperationHistoryModel> getHistoryByClientId(int clientId) {
-        return historyRepository.findByClientId(clientId);
+    public void streamHistory(HistoryQuery query, RowHandler handler) throws IOException {
+        if (query.getAfter() == null) {
+            awaitPendingWrites(query.getClientId());
+        }
+        historyRepository.streamByClientId(query, handler);
     }
 
+    @Override
+    public List<OperationSummaryModel> getSummaryByClientId(int clientId, LocalDate from, LocalDate to) {
+        awaitPendingWrites(clientId);
+        return historyRepository.summarizeByClientId(clientId, from, to);
+    }
+
+    /**
+     * Cuts values to the length of their columns first; the database would
+     * reject the entry otherwise.
+     */
     @Override
     public void addOperation(OperationHistoryModel operation) {
-        historyRepository.save(operation);
+        operation.setFilename(truncate(operation.getFilename(), MAX_FILENAME_LENGTH));
+        operation.setClientIp(truncate(operation.getClientIp(), MAX_CLIENT_IP_LENGTH));
+        historyWriter.submit(operation);
+    }
+
+    private void awaitPendingWrites(int clientId) {
+        if (!historyWriter.flush(clientId, READ_FLUSH_TIMEOUT_MS)) {
+            LOGGER.warning("History writer did not catch up, history for client ID " + clientId
+                    + " may be incomplete");
+        }
+    }
+
+    /**
+     * @return The value cut to at most {@code maxLength} characters, counting
+     *         supplementary characters once like the database does
+     */
+    private static String truncate(String value, int maxLength) {
+        if (value == null || value.codePointCount(0, value.length()) <= maxLength) {
+            return value;
+        }
+        return value.substring(0, value.offsetByCodePoints(0, maxLength));
     }
-}
\ No newline at end of file
+}
@@ -3,47 +3,95 @@ package ftp.gusamyky.server.service.impl;
 import ftp.gusamyky.server.common.model.ClientModel;
 import ftp.gusamyky.server.common.repository.IClientRepository;
 import ftp.gusamyky.server.common.service.IUserService;
+import ftp.gusamyky.server.util.CpuTaskExecutor;
+import ftp.gusamyky.server.util.LruCache;
 import ftp.gusamyky.server.util.PasswordUtil;
+import ftp.gusamyky.server.util.SingleFlight;
 
+/**
+ * User service. Concurrent lookups of the same username, as in a login storm
+ * after a restart, share one database query, and usernames that do not exist
+ * are remembered for a short time so repeated lookups of them do not reach the
+ * database. Registering a username forgets that it was missing.
+ */
 public class UserServiceImpl implements IUserService {
     private final IClientRepository clientRepository;
+    private final CpuTaskExecutor cpuExecutor;
+    private final SingleFlight<String, ClientModel> lookups = new SingleFlight<>();
+    private final LruCache<String, Boolean> missingUsers;
 
-    public UserServiceImpl(IClientRepository clientRepository) {
+    public UserServiceImpl(IClientRepository clientRepository, CpuTaskExecutor cpuExecutor) {
+        this(clientRepository, cpuExecutor, 0, 0);
+    }
+
+    /**
+     * @param clientRepository  The repository to read clients from
+     * @param cpuExecutor       Runs password hashing
+     * @param missingCacheSize  How many missing usernames are remembered; 0
+     *                          disables this
+     * @param missingCacheTtlMs How long a missing username is remembered, in
+     *                          milliseconds
+     */
+    public UserServiceImpl(IClientRepository clientRepository, CpuTaskExecutor cpuExecutor, int missingCacheSize,
+            long missingCacheTtlMs) {
         this.clientRepository = clientRepository;
+        this.cpuExecutor = cpuExecutor;
+        this.missingUsers = new LruCache<>(missingCacheSize, missingCacheTtlMs);
     }
 
     @Override
     public ClientModel findUserByUsername(String username) {
-        return clientRepository.findByUsername(username);
+        return lookup(username);
     }
 
     @Override
     public boolean checkPassword(String username, String password) {
-        ClientModel client = clientRepository.findByUsername(username);
+        ClientModel client = lookup(username);
         if (client == null)
             return false;
-        return PasswordUtil.verifyPassword(password, client.getPassword());
+        return cpuExecutor.call(() -> PasswordUtil.verifyPassword(password, client.getPassword()));
     }
 
     public String register(String username, String password) {
-        if (clientRepository.findByUsername(username) != null) {
+        if (lookup(username) != null) {
             return "REGISTER ERROR: Username already exists";
         }
-        String hash = PasswordUtil.hashPassword(password);
+        String hash = cpuExecutor.call(() -> PasswordUtil.hashPassword(password));
         ClientModel client = new ClientModel(0, username, hash);
         clientRepository.save(client);
+        lookups.forget(username);
+        missingUsers.invalidate(username);
         return "REGISTER OK";
     }
 
     public String login(String username, String password) {
-        ClientModel client = clientRepository.findByUsername(username);
+        ClientModel client = lookup(username);
         if (client == null) {
             return "LOGIN ERROR: User not found";
         }
-        if (!PasswordUtil.verifyPassword(password, client.getPassword())) {
+        if (!cpuExecutor.call(() -> PasswordUtil.verifyPassword(password, client.getPassword()))) {
             return "LOGIN ERROR: Invalid password";
         }
         clientRepository.updateLastLogin(client.getId());
         return "LOGIN OK";
     }
-}
\ No newline at end of file
+
+    @Override
+    public String getLookupStatistics() {
+        return "lookups=" + lookups + ", missing=" + missingUsers;
+    }
+
+    private ClientModel lookup(String username) {
+        if (missingUsers.isEnabled() && missingUsers.get(username) != null) {
+            return null;
+        }
+        return lookups.load(username, () -> {
+            long version = missingUsers.version();
+            ClientModel client = clientRepository.findByUsername(username);
+            if (client == null) {
+                missingUsers.put(username, Boolean.TRUE, version);
+            }
+            return client;
+        });
+    }
+}
@@ -0,0 +1,195 @@
+package ftp.gusamyky.server.store;
+
+import ftp.gusamyky.server.common.model.ClientModel;
+import ftp.gusamyky.server.common.repository.IClientRepository;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Clients of a {@link MetadataStore}, indexed by ID and by username. As in the
+ * database, usernames are unique and a client that still owns files or history
+ * cannot be deleted.
+ */
+public class EmbeddedClientRepository implements IClientRepository, MetadataTable {
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedClientRepository.class.getName());
+
+    private final MetadataStore store;
+    private final Map<Integer, StoredClient> byId = new HashMap<>();
+    private final Map<String, StoredClient> byUsername = new HashMap<>();
+    private int nextId = 1;
+
+    EmbeddedClientRepository(MetadataStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public ClientModel findById(int id) {
+        return store.read(() -> toModel(byId.get(id)));
+    }
+
+    @Override
+    public ClientModel findByUsername(String username) {
+        return store.read(() -> toModel(byUsername.get(username)));
+    }
+
+    @Override
+    public void save(ClientModel client) {
+        if (client == null) {
+            LOGGER.warning("Attempted to save null client");
+            return;
+        }
+
+        try {
+            String error = store.write(records -> {
+                StoredClient existing = byId.get(client.getId());
+                if (client.getId() != 0 && existing == null) {
+                    return "No client found with ID: " + client.getId();
+                }
+                StoredClient sameName = byUsername.get(client.getUsername());
+                if (sameName != null && sameName.id() != client.getId()) {
+                    return "Username already exists: " + client.getUsername();
+                }
+                DataOutputStream out = records.begin(MetadataStore.CLIENT);
+                out.writeInt(existing != null ? existing.id() : nextId);
+                RecordWriter.writeString(out, client.getUsername());
+                RecordWriter.writeString(out, client.getPassword());
+                RecordWriter.writeTime(out, existing != null ? existing.createdAt() : LocalDateTime.now());
+                RecordWriter.writeTime(out, existing != null ? existing.lastLogin() : null);
+                records.end();
+                return null;
+            });
+            if (error != null) {
+                LOGGER.severe("Error saving client: " + error);
+                return;
+            }
+            LOGGER.info("Successfully saved client: " + client.getUsername());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error saving client: " + client.getUsername(), e);
+        }
+    }
+
+    @Override
+    public void delete(int id) {
+        try {
+            String error = store.write(records -> {
+                if (!byId.containsKey(id)) {
+                    return "No client found with ID: " + id;
+                }
+                if (store.files().hasOwner(id) || store.history().hasClient(id)) {
+                    return "Client with ID " + id + " still has files or history";
+                }
+                records.begin(MetadataStore.CLIENT_DELETE).writeInt(id);
+                records.end();
+                return null;
+            });
+            if (error != null) {
+                LOGGER.warning(error);
+                return;
+            }
+            LOGGER.info("Successfully deleted client with ID: " + id);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error deleting client with ID: " + id, e);
+        }
+    }
+
+    @Override
+    public void updateLastLogin(int clientId) {
+        try {
+            boolean found = store.write(records -> {
+                if (!byId.containsKey(clientId)) {
+                    return false;
+                }
+                DataOutputStream out = records.begin(MetadataStore.CLIENT_LOGIN);
+                out.writeInt(clientId);
+                RecordWriter.writeTime(out, LocalDateTime.now());
+                records.end();
+                return true;
+            });
+            if (found) {
+                LOGGER.info("Updated last login for client ID: " + clientId);
+            } else {
+                LOGGER.warning("No client found with ID: " + clientId);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error updating last login for client ID: " + clientId, e);
+        }
+    }
+
+    @Override
+    public boolean apply(int type, DataInputStream in) throws IOException {
+        switch (type) {
+            case MetadataStore.CLIENT -> {
+                StoredClient client = new StoredClient(in.readInt(), RecordWriter.readString(in),
+                        RecordWriter.readString(in), RecordWriter.readTime(in), RecordWriter.readTime(in));
+                StoredClient previous = byId.put(client.id(), client);
+                if (previous != null) {
+                    byUsername.remove(previous.username());
+                }
+                byUsername.put(client.username(), client);
+                nextId = Math.max(nextId, client.id() + 1);
+            }
+            case MetadataStore.CLIENT_DELETE -> {
+                StoredClient removed = byId.remove(in.readInt());
+                if (removed != null) {
+                    byUsername.remove(removed.username());
+                }
+            }
+            case MetadataStore.CLIENT_LOGIN -> {
+                int id = in.readInt();
+                LocalDateTime time = RecordWriter.readTime(in);
+                StoredClient client = byId.get(id);
+                if (client != null) {
+                    StoredClient updated = new StoredClient(id, client.username(), client.password(),
+                            client.createdAt(), time);
+                    byId.put(id, updated);
+                    byUsername.put(updated.username(), updated);
+                }
+            }
+            case MetadataStore.CLIENT_SEQUENCE -> nextId = Math.max(nextId, in.readInt());
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void snapshot(RecordWriter out) throws IOException {
+        out.begin(MetadataStore.CLIENT_SEQUENCE).writeInt(nextId);
+        out.end();
+        for (StoredClient client : byId.values()) {
+            DataOutputStream record = out.begin(MetadataStore.CLIENT);
+            record.writeInt(client.id());
+            RecordWriter.writeString(record, client.username());
+            RecordWriter.writeString(record, client.password());
+            RecordWriter.writeTime(record, client.createdAt());
+            RecordWriter.writeTime(record, client.lastLogin());
+            out.end();
+        }
+    }
+
+    /**
+     * @return Whether the client exists; called with the store's lock held
+     */
+    boolean contains(int id) {
+        return byId.containsKey(id);
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    private static ClientModel toModel(StoredClient client) {
+        return client != null ? new ClientModel(client.id(), client.username(), client.password()) : null;
+    }
+
+    private record StoredClient(int id, String username, String password, LocalDateTime createdAt,
+            LocalDateTime lastLogin) {
+    }
+}
@@ -0,0 +1,205 @@
+package ftp.gusamyky.server.store;
+
+import ftp.gusamyky.server.common.model.ServerFileModel;
+import ftp.gusamyky.server.common.repository.IFileRepository;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Files of a {@link MetadataStore}, indexed by ID, by owner and filename, and
+ * by filename alone. A file's owner must exist and an owner cannot have two
+ * files of the same name.
+ */
+public class EmbeddedFileRepository implements IFileRepository, MetadataTable {
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedFileRepository.class.getName());
+
+    private final MetadataStore store;
+    private final Map<Integer, StoredFile> byId = new HashMap<>();
+    private final Map<Integer, Map<String, StoredFile>> byOwner = new HashMap<>();
+    private final Map<String, NavigableMap<Integer, StoredFile>> byFilename = new HashMap<>();
+    private int nextId = 1;
+
+    EmbeddedFileRepository(MetadataStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public ServerFileModel findById(int id) {
+        return store.read(() -> toModel(byId.get(id)));
+    }
+
+    @Override
+    public List<ServerFileModel> findByOwnerId(int ownerId) {
+        return store.read(() -> {
+            List<ServerFileModel> files = new ArrayList<>();
+            Map<String, StoredFile> owned = byOwner.get(ownerId);
+            if (owned != null) {
+                owned.values().stream()
+                        .sorted(Comparator.comparingInt(StoredFile::id))
+                        .forEach(file -> files.add(toModel(file)));
+            }
+            return files;
+        });
+    }
+
+    /**
+     * Returns the oldest file of that name, whoever owns it.
+     */
+    @Override
+    public ServerFileModel findByFilename(String filename) {
+        return store.read(() -> {
+            NavigableMap<Integer, StoredFile> files = byFilename.get(filename);
+            return files != null ? toModel(files.firstEntry().getValue()) : null;
+        });
+    }
+
+    @Override
+    public ServerFileModel findByOwnerAndFilename(int ownerId, String filename) {
+        return store.read(() -> {
+            Map<String, StoredFile> owned = byOwner.get(ownerId);
+            return owned != null ? toModel(owned.get(filename)) : null;
+        });
+    }
+
+    @Override
+    public void save(ServerFileModel file) {
+        if (file == null) {
+            LOGGER.warning("Attempted to save null file");
+            return;
+        }
+
+        try {
+            String error = store.write(records -> {
+                StoredFile existing = byId.get(file.getId());
+                if (file.getId() != 0 && existing == null) {
+                    return "No file found with ID: " + file.getId();
+                }
+                if (!store.clients().contains(file.getOwnerId())) {
+                    return "No client found with ID: " + file.getOwnerId();
+                }
+                Map<String, StoredFile> owned = byOwner.get(file.getOwnerId());
+                StoredFile sameName = owned != null ? owned.get(file.getFilename()) : null;
+                if (sameName != null && sameName.id() != file.getId()) {
+                    return "Client " + file.getOwnerId() + " already has a file named " + file.getFilename();
+                }
+                DataOutputStream out = records.begin(MetadataStore.FILE);
+                out.writeInt(existing != null ? existing.id() : nextId);
+                RecordWriter.writeString(out, file.getFilename());
+                out.writeLong(file.getSize());
+                out.writeInt(file.getOwnerId());
+                RecordWriter.writeTime(out, file.getCreatedAt() != null ? file.getCreatedAt() : LocalDateTime.now());
+                records.end();
+                return null;
+            });
+            if (error != null) {
+                LOGGER.severe("Error saving file " + file.getFilename() + ": " + error);
+                return;
+            }
+            LOGGER.info("Successfully saved file: " + file.getFilename());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error saving file: " + file.getFilename(), e);
+        }
+    }
+
+    @Override
+    public void delete(int id) {
+        try {
+            boolean found = store.write(records -> {
+                if (!byId.containsKey(id)) {
+                    return false;
+                }
+                records.begin(MetadataStore.FILE_DELETE).writeInt(id);
+                records.end();
+                return true;
+            });
+            if (found) {
+                LOGGER.info("Successfully deleted file with ID: " + id);
+            } else {
+                LOGGER.warning("No file found with ID: " + id);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error deleting file with ID: " + id, e);
+        }
+    }
+
+    @Override
+    public boolean apply(int type, DataInputStream in) throws IOException {
+        switch (type) {
+            case MetadataStore.FILE -> {
+                StoredFile file = new StoredFile(in.readInt(), RecordWriter.readString(in), in.readLong(),
+                        in.readInt(), RecordWriter.readTime(in));
+                unindex(byId.put(file.id(), file));
+                byOwner.computeIfAbsent(file.ownerId(), k -> new HashMap<>()).put(file.filename(), file);
+                byFilename.computeIfAbsent(file.filename(), k -> new TreeMap<>()).put(file.id(), file);
+                nextId = Math.max(nextId, file.id() + 1);
+            }
+            case MetadataStore.FILE_DELETE -> unindex(byId.remove(in.readInt()));
+            case MetadataStore.FILE_SEQUENCE -> nextId = Math.max(nextId, in.readInt());
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void snapshot(RecordWriter out) throws IOException {
+        out.begin(MetadataStore.FILE_SEQUENCE).writeInt(nextId);
+        out.end();
+        for (StoredFile file : byId.values()) {
+            DataOutputStream record = out.begin(MetadataStore.FILE);
+            record.writeInt(file.id());
+            RecordWriter.writeString(record, file.filename());
+            record.writeLong(file.size());
+            record.writeInt(file.ownerId());
+            RecordWriter.writeTime(record, file.createdAt());
+            out.end();
+        }
+    }
+
+    /**
+     * @return Whether the client owns any file; called with the store's lock
+     *         held
+     */
+    boolean hasOwner(int ownerId) {
+        return byOwner.containsKey(ownerId);
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    private void unindex(StoredFile file) {
+        if (file == null) {
+            return;
+        }
+        Map<String, StoredFile> owned = byOwner.get(file.ownerId());
+        if (owned != null && owned.remove(file.filename(), file) && owned.isEmpty()) {
+            byOwner.remove(file.ownerId());
+        }
+        NavigableMap<Integer, StoredFile> named = byFilename.get(file.filename());
+        if (named != null && named.remove(file.id(), file) && named.isEmpty()) {
+            byFilename.remove(file.filename());
+        }
+    }
+
+    private static ServerFileModel toModel(StoredFile file) {
+        return file != null
+                ? new ServerFileModel(file.id(), file.filename(), file.size(), file.ownerId(), file.createdAt())
+                : null;
+    }
+
+    private record StoredFile(int id, String filename, long size, int ownerId, LocalDateTime createdAt) {
+    }
+}
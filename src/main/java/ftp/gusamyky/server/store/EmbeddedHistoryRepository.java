@@ -0,0 +1,367 @@
+package ftp.gusamyky.server.store;
+
+import ftp.gusamyky.server.common.exception.DatabaseException;
+import ftp.gusamyky.server.common.model.HistoryCursor;
+import ftp.gusamyky.server.common.model.HistoryQuery;
+import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationSummaryModel;
+import ftp.gusamyky.server.common.model.OperationType;
+import ftp.gusamyky.server.common.repository.IHistoryRepository;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Operation history of a {@link MetadataStore}: individual operations ordered
+ * by {@code (timestamp, id)}, globally and per client, and the daily totals of
+ * purged operations per client, day, type and result.
+ * <p>
+ * A history page is a range of the client's ordered map, so it costs the same
+ * however deep the cursor is. Purging is logged as the cutoff and limit only;
+ * replay removes and rolls up the same operations again.
+ */
+public class EmbeddedHistoryRepository implements IHistoryRepository, MetadataTable {
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedHistoryRepository.class.getName());
+
+    private final MetadataStore store;
+    private final NavigableMap<HistoryKey, StoredOperation> byTime = new TreeMap<>();
+    private final Map<Integer, NavigableMap<HistoryKey, StoredOperation>> byClient = new HashMap<>();
+    private final Map<Integer, Map<DailyKey, DailyTotals>> daily = new HashMap<>();
+    private int nextId = 1;
+
+    EmbeddedHistoryRepository(MetadataStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Copies the page under the read lock and hands it to the handler after
+     * releasing it, so a slow client never holds up writers.
+     */
+    @Override
+    public void streamByClientId(HistoryQuery query, RowHandler handler) throws IOException {
+        List<OperationHistoryModel> page = store.read(() -> {
+            List<OperationHistoryModel> rows = new ArrayList<>();
+            NavigableMap<HistoryKey, StoredOperation> operations = byClient.get(query.getClientId());
+            if (operations == null) {
+                return rows;
+            }
+            if (query.getFrom() != null) {
+                operations = operations.tailMap(HistoryKey.first(query.getFrom()), true);
+            }
+            if (query.getTo() != null) {
+                operations = operations.headMap(HistoryKey.first(query.getTo()), false);
+            }
+            HistoryCursor after = query.getAfter();
+            if (after != null) {
+                operations = operations.headMap(new HistoryKey(after.getTimestamp(), after.getId()), false);
+            }
+            for (StoredOperation operation : operations.descendingMap().values()) {
+                if (query.getType() == null || operation.type() == query.getType()) {
+                    rows.add(operation.toModel());
+                    if (rows.size() == query.getLimit()) {
+                        break;
+                    }
+                }
+            }
+            return rows;
+        });
+        for (OperationHistoryModel operation : page) {
+            handler.accept(operation);
+        }
+    }
+
+    @Override
+    public List<OperationSummaryModel> summarizeByClientId(int clientId, LocalDate from, LocalDate to) {
+        return store.read(() -> {
+            Map<String, Map<String, DailyTotals>> totals = new TreeMap<>();
+            NavigableMap<HistoryKey, StoredOperation> operations = byClient.get(clientId);
+            if (operations != null) {
+                if (from != null) {
+                    operations = operations.tailMap(HistoryKey.first(from.atStartOfDay()), true);
+                }
+                if (to != null) {
+                    operations = operations.headMap(HistoryKey.first(to.atStartOfDay()), false);
+                }
+                for (StoredOperation operation : operations.values()) {
+                    totals.computeIfAbsent(operation.type().name(), k -> new TreeMap<>())
+                            .computeIfAbsent(operation.result().name(), k -> new DailyTotals())
+                            .add(operation);
+                }
+            }
+            for (Map.Entry<DailyKey, DailyTotals> entry : daily.getOrDefault(clientId, Map.of()).entrySet()) {
+                DailyKey key = entry.getKey();
+                if ((from == null || !key.day().isBefore(from)) && (to == null || key.day().isBefore(to))) {
+                    totals.computeIfAbsent(key.type(), k -> new TreeMap<>())
+                            .computeIfAbsent(key.result(), k -> new DailyTotals())
+                            .merge(entry.getValue());
+                }
+            }
+
+            List<OperationSummaryModel> summary = new ArrayList<>();
+            totals.forEach((type, results) -> results.forEach((result, total) -> summary.add(
+                    new OperationSummaryModel(parseType(type), OperationResult.fromName(result), total.operations,
+                            total.bytes,
+                            total.timedOperations > 0 ? (double) total.durationMs / total.timedOperations : null,
+                            total.last))));
+            return summary;
+        });
+    }
+
+    @Override
+    public int rollUpAndPurge(LocalDateTime cutoff, int limit) {
+        try {
+            return store.write(records -> {
+                int count = 0;
+                Iterator<HistoryKey> expired = byTime.headMap(HistoryKey.first(cutoff), false).keySet().iterator();
+                while (count < limit && expired.hasNext()) {
+                    expired.next();
+                    count++;
+                }
+                if (count > 0) {
+                    DataOutputStream out = records.begin(MetadataStore.HISTORY_PURGE);
+                    RecordWriter.writeTime(out, cutoff);
+                    out.writeInt(limit);
+                    records.end();
+                }
+                return count;
+            });
+        } catch (IOException e) {
+            throw new DatabaseException("Error purging operation history recorded before " + cutoff, e);
+        }
+    }
+
+    @Override
+    public void save(OperationHistoryModel history) {
+        if (history == null) {
+            LOGGER.warning("Attempted to save null history record");
+            return;
+        }
+
+        try {
+            insert(List.of(history));
+            LOGGER.info("Successfully saved operation history for client ID: " + history.getClientId());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error saving operation history for client ID: " + history.getClientId(), e);
+        }
+    }
+
+    /**
+     * Inserts the operations as one commit, made durable with a single sync.
+     */
+    @Override
+    public void saveBatch(List<OperationHistoryModel> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        try {
+            insert(operations);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Saved batch of " + operations.size() + " operation history records");
+            }
+        } catch (IOException e) {
+            throw new DatabaseException("Error saving batch of " + operations.size() + " operation history records",
+                    e);
+        }
+    }
+
+    @Override
+    public boolean apply(int type, DataInputStream in) throws IOException {
+        switch (type) {
+            case MetadataStore.HISTORY -> {
+                StoredOperation operation = readOperation(in);
+                HistoryKey key = new HistoryKey(operation.timestamp(), operation.id());
+                byTime.put(key, operation);
+                byClient.computeIfAbsent(operation.clientId(), k -> new TreeMap<>()).put(key, operation);
+                nextId = Math.max(nextId, operation.id() + 1);
+            }
+            case MetadataStore.HISTORY_PURGE -> purge(RecordWriter.readTime(in), in.readInt());
+            case MetadataStore.HISTORY_DAILY -> {
+                int clientId = in.readInt();
+                DailyKey key = new DailyKey(LocalDate.ofEpochDay(in.readLong()), in.readUTF(), in.readUTF());
+                DailyTotals totals = new DailyTotals();
+                totals.operations = in.readLong();
+                totals.bytes = in.readLong();
+                totals.durationMs = in.readLong();
+                totals.timedOperations = in.readLong();
+                totals.last = RecordWriter.readTime(in);
+                daily.computeIfAbsent(clientId, k -> new HashMap<>()).put(key, totals);
+            }
+            case MetadataStore.HISTORY_SEQUENCE -> nextId = Math.max(nextId, in.readInt());
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void snapshot(RecordWriter out) throws IOException {
+        out.begin(MetadataStore.HISTORY_SEQUENCE).writeInt(nextId);
+        out.end();
+        for (Map.Entry<Integer, Map<DailyKey, DailyTotals>> client : daily.entrySet()) {
+            for (Map.Entry<DailyKey, DailyTotals> entry : client.getValue().entrySet()) {
+                DailyKey key = entry.getKey();
+                DailyTotals totals = entry.getValue();
+                DataOutputStream record = out.begin(MetadataStore.HISTORY_DAILY);
+                record.writeInt(client.getKey());
+                record.writeLong(key.day().toEpochDay());
+                record.writeUTF(key.type());
+                record.writeUTF(key.result());
+                record.writeLong(totals.operations);
+                record.writeLong(totals.bytes);
+                record.writeLong(totals.durationMs);
+                record.writeLong(totals.timedOperations);
+                RecordWriter.writeTime(record, totals.last);
+                out.end();
+            }
+        }
+        for (StoredOperation operation : byTime.values()) {
+            writeOperation(out.begin(MetadataStore.HISTORY), operation);
+            out.end();
+        }
+    }
+
+    /**
+     * @return Whether the client has any history; called with the store's lock
+     *         held
+     */
+    boolean hasClient(int clientId) {
+        return byClient.containsKey(clientId) || daily.containsKey(clientId);
+    }
+
+    int size() {
+        return byTime.size();
+    }
+
+    private void insert(List<OperationHistoryModel> operations) throws IOException {
+        store.write(records -> {
+            int id = nextId;
+            for (OperationHistoryModel history : operations) {
+                LocalDateTime timestamp = history.getTimestamp() != null ? history.getTimestamp()
+                        : LocalDateTime.now();
+                writeOperation(records.begin(MetadataStore.HISTORY), new StoredOperation(id++,
+                        history.getClientId(), history.getType(), history.getResult(), history.getFilename(),
+                        history.getBytes(), history.getDurationMs(), history.getClientIp(), timestamp));
+                records.end();
+            }
+            return null;
+        });
+    }
+
+    private void purge(LocalDateTime cutoff, int limit) {
+        Iterator<StoredOperation> expired = byTime.headMap(HistoryKey.first(cutoff), false).values().iterator();
+        for (int i = 0; i < limit && expired.hasNext(); i++) {
+            StoredOperation operation = expired.next();
+            expired.remove();
+            NavigableMap<HistoryKey, StoredOperation> operations = byClient.get(operation.clientId());
+            operations.remove(new HistoryKey(operation.timestamp(), operation.id()));
+            if (operations.isEmpty()) {
+                byClient.remove(operation.clientId());
+            }
+            DailyKey key = new DailyKey(operation.timestamp().toLocalDate(), operation.type().name(),
+                    operation.result().name());
+            daily.computeIfAbsent(operation.clientId(), k -> new HashMap<>())
+                    .computeIfAbsent(key, k -> new DailyTotals())
+                    .add(operation);
+        }
+    }
+
+    private static void writeOperation(DataOutputStream out, StoredOperation operation) throws IOException {
+        out.writeInt(operation.id());
+        out.writeInt(operation.clientId());
+        out.writeUTF(operation.type().name());
+        out.writeUTF(operation.result().name());
+        RecordWriter.writeString(out, operation.filename());
+        out.writeLong(operation.bytes() != null ? operation.bytes() : -1);
+        out.writeLong(operation.durationMs() != null ? operation.durationMs() : -1);
+        RecordWriter.writeString(out, operation.clientIp());
+        RecordWriter.writeTime(out, operation.timestamp());
+    }
+
+    private static StoredOperation readOperation(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        int clientId = in.readInt();
+        OperationType type = parseType(in.readUTF());
+        OperationResult result = OperationResult.fromName(in.readUTF());
+        String filename = RecordWriter.readString(in);
+        long bytes = in.readLong();
+        long durationMs = in.readLong();
+        return new StoredOperation(id, clientId, type, result, filename, bytes >= 0 ? bytes : null,
+                durationMs >= 0 ? durationMs : null, RecordWriter.readString(in), RecordWriter.readTime(in));
+    }
+
+    private static OperationType parseType(String name) {
+        OperationType type = OperationType.fromName(name);
+        return type != null ? type : OperationType.OTHER;
+    }
+
+    private record HistoryKey(LocalDateTime timestamp, int id) implements Comparable<HistoryKey> {
+        /**
+         * @return A key ordered before every operation recorded at that time
+         */
+        static HistoryKey first(LocalDateTime timestamp) {
+            return new HistoryKey(timestamp, Integer.MIN_VALUE);
+        }
+
+        @Override
+        public int compareTo(HistoryKey other) {
+            int byTimestamp = timestamp.compareTo(other.timestamp);
+            return byTimestamp != 0 ? byTimestamp : Integer.compare(id, other.id);
+        }
+    }
+
+    private record StoredOperation(int id, int clientId, OperationType type, OperationResult result,
+            String filename, Long bytes, Long durationMs, String clientIp, LocalDateTime timestamp) {
+        OperationHistoryModel toModel() {
+            return new OperationHistoryModel(id, clientId, type, result, filename, bytes, durationMs, clientIp,
+                    timestamp);
+        }
+    }
+
+    private record DailyKey(LocalDate day, String type, String result) {
+    }
+
+    private static final class DailyTotals {
+        private long operations;
+        private long bytes;
+        private long durationMs;
+        private long timedOperations;
+        private LocalDateTime last;
+
+        private void add(StoredOperation operation) {
+            operations++;
+            if (operation.bytes() != null) {
+                bytes += operation.bytes();
+            }
+            if (operation.durationMs() != null) {
+                durationMs += operation.durationMs();
+                timedOperations++;
+            }
+            if (last == null || operation.timestamp().isAfter(last)) {
+                last = operation.timestamp();
+            }
+        }
+
+        private void merge(DailyTotals other) {
+            operations += other.operations;
+            bytes += other.bytes;
+            durationMs += other.durationMs;
+            timedOperations += other.timedOperations;
+            if (last == null || (other.last != null && other.last.isAfter(last))) {
+                last = other.last;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ftp.gusamyky.server.store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * One file of framed metadata records, see {@link RecordWriter}. Records are
+ * appended at the end; {@link #force()} makes them durable.
+ */
+final class MetadataLog implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(MetadataLog.class.getName());
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 65536;
+
+    private final Path path;
+    private final FileChannel channel;
+    private long size;
+
+    private MetadataLog(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.size = channel.size();
+        channel.position(size);
+    }
+
+    /**
+     * Opens a log for appending, creating it if it does not exist.
+     */
+    static MetadataLog open(Path path) throws IOException {
+        return new MetadataLog(path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Reads every intact record of a file in order. A record torn by a crash
+     * ends the file: when {@code truncate} is set the file is cut off before it,
+     * otherwise the damage is reported as an exception.
+     *
+     * @return The number of records read
+     */
+    static long replay(Path path, RecordHandler handler, boolean truncate) throws IOException {
+        long offset = 0;
+        long records = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), READ_BUFFER_SIZE))) {
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 1 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    payload = in.readNBytes(length);
+                    crc.reset();
+                    crc.update(payload);
+                    if (payload.length < length || (int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                handler.accept(payload[0] & 0xFF,
+                        new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1)));
+                offset += RecordWriter.HEADER_SIZE + payload.length;
+                records++;
+            }
+        }
+        long fileSize = Files.size(path);
+        if (offset < fileSize) {
+            if (!truncate) {
+                throw new IOException(String.format("%s is damaged at byte %d of %d", path, offset, fileSize));
+            }
+            LOGGER.warning(String.format("Truncating metadata log %s at byte %d of %d",
+                    path.getFileName(), offset, fileSize));
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+                channel.force(true);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Appends framed records. They are durable after the next {@link #force()}.
+     *
+     * @return The number of bytes written
+     */
+    int write(ByteBuffer frames) throws IOException {
+        int written = frames.remaining();
+        try {
+            while (frames.hasRemaining()) {
+                channel.write(frames);
+            }
+        } catch (IOException e) {
+            // Cut off a partially written record so later appends stay readable
+            channel.truncate(size);
+            channel.position(size);
+            throw e;
+        }
+        size += written;
+        return written;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    long size() {
+        return size;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
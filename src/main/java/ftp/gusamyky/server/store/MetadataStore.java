@@ -0,0 +1,456 @@
+package ftp.gusamyky.server.store;
+
+import ftp.gusamyky.server.common.repository.IClientRepository;
+import ftp.gusamyky.server.common.repository.IFileRepository;
+import ftp.gusamyky.server.common.repository.IHistoryRepository;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Embedded, single-node store for clients, files and operation history, used
+ * instead of MySQL when {@code db.metadata_store} is {@code embedded}.
+ * <p>
+ * The whole state is held in memory, indexed for the lookups the server makes,
+ * so reads take no I/O. Every change is appended to a log file named
+ * {@code metadata-<generation>.log} as framed, checksummed records and then
+ * applied to memory by the same code that replays the log on startup. Writers
+ * return once their records are on disk; concurrent writers share one
+ * {@code fsync}.
+ * <p>
+ * Once the log exceeds the compaction threshold, a new log generation is
+ * started and the state is written to {@code metadata.snapshot}, replacing the
+ * previous snapshot atomically; older logs are then deleted. Writers wait while
+ * the snapshot is written, readers do not. On startup the snapshot is loaded
+ * and the logs of its generation and later are replayed; a record torn by a
+ * crash ends the log and is discarded.
+ * <p>
+ * Once writing or forcing the log has failed, the store refuses further
+ * changes: the log may end in a partial record, and a later {@code fsync}
+ * succeeding would not prove the earlier data durable. Reads keep working and
+ * a restart recovers from the log.
+ */
+public class MetadataStore implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(MetadataStore.class.getName());
+    static final int SNAPSHOT_HEADER = 0;
+    static final int CLIENT = 1;
+    static final int CLIENT_DELETE = 2;
+    static final int CLIENT_LOGIN = 3;
+    static final int CLIENT_SEQUENCE = 4;
+    static final int FILE = 5;
+    static final int FILE_DELETE = 6;
+    static final int FILE_SEQUENCE = 7;
+    static final int HISTORY = 8;
+    static final int HISTORY_PURGE = 9;
+    static final int HISTORY_DAILY = 10;
+    static final int HISTORY_SEQUENCE = 11;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String LOG_PREFIX = "metadata-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_FILE = "metadata.snapshot";
+    private static final String SNAPSHOT_TEMP_FILE = "metadata.snapshot.tmp";
+    private static final long COMPACTION_CHECK_MS = 30000;
+
+    /**
+     * A change to the store: checks the current state and encodes the records
+     * that carry out the change, if any.
+     */
+    @FunctionalInterface
+    interface Change<T> {
+        T encode(RecordWriter records) throws IOException;
+    }
+
+    private final Path directory;
+    private final long compactionThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RecordWriter pending = new RecordWriter();
+    // Held around every fsync; a lock rather than a monitor, so a virtual
+    // thread blocked in force() does not pin its carrier
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final EmbeddedClientRepository clients;
+    private final EmbeddedFileRepository files;
+    private final EmbeddedHistoryRepository history;
+    private final MetadataTable[] tables;
+    private final ScheduledExecutorService compactor;
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong compactionCount = new AtomicLong();
+    private volatile MetadataLog log;
+    private long generation;
+    private volatile long writtenBytes;
+    private volatile long durableBytes;
+    private boolean closed;
+    private volatile boolean failed;
+
+    private MetadataStore(Path directory, long compactionThreshold) {
+        this.directory = directory;
+        this.compactionThreshold = compactionThreshold;
+        this.clients = new EmbeddedClientRepository(this);
+        this.files = new EmbeddedFileRepository(this);
+        this.history = new EmbeddedHistoryRepository(this);
+        this.tables = new MetadataTable[] { clients, files, history };
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "MetadataCompactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Opens the store, creating the directory if necessary, loads its state
+     * and starts compacting it in the background.
+     *
+     * @param directory           The directory holding the snapshot and logs
+     * @param compactionThreshold Log size in bytes after which a snapshot is
+     *                            written
+     * @return The opened store
+     * @throws IOException If the store cannot be read or its snapshot is
+     *                     damaged
+     */
+    public static MetadataStore open(Path directory, long compactionThreshold) throws IOException {
+        MetadataStore store = new MetadataStore(directory, compactionThreshold);
+        try {
+            store.recover();
+        } catch (IOException e) {
+            store.compactor.shutdownNow();
+            throw e;
+        }
+        store.compactor.scheduleWithFixedDelay(store::compactIfNeeded, COMPACTION_CHECK_MS, COMPACTION_CHECK_MS,
+                TimeUnit.MILLISECONDS);
+        return store;
+    }
+
+    public IClientRepository getClientRepository() {
+        return clients;
+    }
+
+    public IFileRepository getFileRepository() {
+        return files;
+    }
+
+    public IHistoryRepository getHistoryRepository() {
+        return history;
+    }
+
+    /**
+     * Writes a snapshot of the current state and deletes the logs it replaces.
+     *
+     * @throws IOException If the snapshot could not be written; the logs are
+     *                     kept and the previous snapshot stays valid
+     */
+    public void compact() throws IOException {
+        long start = System.nanoTime();
+        long snapshotGeneration;
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            syncLock.lock();
+            try {
+                checkNotFailed();
+                force();
+                durableBytes = writtenBytes;
+                MetadataLog previous = log;
+                snapshotGeneration = generation + 1;
+                log = MetadataLog.open(logPath(snapshotGeneration));
+                generation = snapshotGeneration;
+                previous.close();
+            } finally {
+                syncLock.unlock();
+            }
+            // Downgrade: the snapshot must match the end of the previous log, but
+            // readers may go on while it is written
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            writeSnapshot(snapshotGeneration);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Long old : listLogs().headSet(snapshotGeneration)) {
+            Files.deleteIfExists(logPath(old));
+        }
+        compactionCount.incrementAndGet();
+        LOGGER.info(String.format("Compacted metadata store to snapshot generation %d in %d ms",
+                snapshotGeneration, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Stops compaction and closes the log. Changes after this fail.
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            syncLock.lock();
+            try {
+                if (!failed) {
+                    log.force();
+                }
+                log.close();
+            } finally {
+                syncLock.unlock();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * @return The number of fsync calls made for commits; lower than the
+     *         commit count when concurrent commits shared one
+     */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    public long getCompactionCount() {
+        return compactionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataStore{" +
+                "generation=" + generation +
+                ", logBytes=" + log.size() +
+                ", commits=" + commitCount.get() +
+                ", syncs=" + syncCount.get() +
+                ", compactions=" + compactionCount.get() +
+                ", failed=" + failed +
+                '}';
+    }
+
+    /**
+     * Runs a query against the in-memory state under the read lock.
+     */
+    <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a change under the write lock: the records it encodes are appended to
+     * the log and applied, and the call returns once they are durable.
+     *
+     * @return What the change returned
+     * @throws IOException If the records could not be written, in which case
+     *                     nothing is applied, or could not be forced to disk,
+     *                     in which case the change is visible in memory but
+     *                     may not be durable. Either way the store refuses
+     *                     further changes.
+     */
+    <T> T write(Change<T> change) throws IOException {
+        long ticket = 0;
+        T result;
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                throw new IOException("Metadata store is closed");
+            }
+            checkNotFailed();
+            pending.reset();
+            result = change.encode(pending);
+            if (!pending.isEmpty()) {
+                try {
+                    writtenBytes += log.write(pending.frames());
+                } catch (IOException e) {
+                    failed = true;
+                    throw e;
+                }
+                ticket = writtenBytes;
+                pending.forEach(this::apply);
+                commitCount.incrementAndGet();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(ticket);
+        return result;
+    }
+
+    EmbeddedClientRepository clients() {
+        return clients;
+    }
+
+    EmbeddedFileRepository files() {
+        return files;
+    }
+
+    EmbeddedHistoryRepository history() {
+        return history;
+    }
+
+    /**
+     * Waits until everything written up to the ticket is on disk. The first
+     * waiter forces the log for everyone who wrote before it.
+     */
+    private void sync(long ticket) throws IOException {
+        if (ticket <= durableBytes) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (ticket <= durableBytes) {
+                return;
+            }
+            checkNotFailed();
+            long target = writtenBytes;
+            force();
+            durableBytes = target;
+            syncCount.incrementAndGet();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the log to disk; a failure fails the store.
+     */
+    private void force() throws IOException {
+        try {
+            log.force();
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    private void checkNotFailed() throws IOException {
+        if (failed) {
+            throw new IOException("Metadata store failed to write its log and refuses changes until restarted");
+        }
+    }
+
+    private void apply(int type, DataInputStream in) throws IOException {
+        for (MetadataTable table : tables) {
+            if (table.apply(type, in)) {
+                return;
+            }
+        }
+        throw new IOException("Unknown metadata record type " + type);
+    }
+
+    private void compactIfNeeded() {
+        if (log.size() < compactionThreshold) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Metadata store compaction failed, retrying later", e);
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_TEMP_FILE));
+        long snapshotGeneration = 0;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            long[] header = { -1 };
+            MetadataLog.replay(snapshot, (type, in) -> {
+                if (type != SNAPSHOT_HEADER) {
+                    apply(type, in);
+                    return;
+                }
+                int version = in.readUnsignedByte();
+                if (version != SNAPSHOT_VERSION) {
+                    throw new IOException("Unsupported metadata snapshot version " + version);
+                }
+                header[0] = in.readLong();
+            }, false);
+            if (header[0] < 0) {
+                throw new IOException(snapshot + " has no header");
+            }
+            snapshotGeneration = header[0];
+        }
+
+        long replayed = 0;
+        generation = snapshotGeneration;
+        for (Long logGeneration : listLogs()) {
+            if (logGeneration < snapshotGeneration) {
+                Files.delete(logPath(logGeneration));
+            } else {
+                replayed += MetadataLog.replay(logPath(logGeneration), this::apply, true);
+                generation = logGeneration;
+            }
+        }
+        log = MetadataLog.open(logPath(generation));
+        LOGGER.info(String.format("Opened metadata store in %s at generation %d with %d clients, %d files and "
+                + "%d history entries, replayed %d log records", directory, generation, clients.size(), files.size(),
+                history.size(), replayed));
+    }
+
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            RecordWriter out = new RecordWriter(channel);
+            DataOutputStream header = out.begin(SNAPSHOT_HEADER);
+            header.writeByte(SNAPSHOT_VERSION);
+            header.writeLong(snapshotGeneration);
+            out.end();
+            for (MetadataTable table : tables) {
+                table.snapshot(out);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private NavigableSet<Long> listLogs() throws IOException {
+        NavigableSet<Long> generations = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(
+                            name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Ignoring unexpected file in metadata store: " + name);
+                }
+            }
+        }
+        return generations;
+    }
+
+    private Path logPath(long logGeneration) {
+        return directory.resolve(String.format("%s%020d%s", LOG_PREFIX, logGeneration, LOG_SUFFIX));
+    }
+}
@@ -0,0 +1,27 @@
+package ftp.gusamyky.server.store;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * A part of the {@link MetadataStore} state together with the records that
+ * change it. Tables are only changed by applying records, both when a change
+ * is committed and when the log is replayed, so replay rebuilds exactly the
+ * state that was committed.
+ */
+interface MetadataTable {
+    /**
+     * Applies a record if it belongs to this table. Called with the store's
+     * write lock held.
+     *
+     * @return false if the record type belongs to another table
+     * @throws IOException If the record is malformed
+     */
+    boolean apply(int type, DataInputStream in) throws IOException;
+
+    /**
+     * Writes records that recreate the table's current state. Called with the
+     * store's read lock held.
+     */
+    void snapshot(RecordWriter out) throws IOException;
+}
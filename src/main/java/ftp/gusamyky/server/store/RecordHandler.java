@@ -0,0 +1,17 @@
+package ftp.gusamyky.server.store;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Receives the records read from a metadata log or snapshot.
+ */
+@FunctionalInterface
+interface RecordHandler {
+    /**
+     * @param type The record type
+     * @param in   The rest of the record payload
+     * @throws IOException If the payload is malformed
+     */
+    void accept(int type, DataInputStream in) throws IOException;
+}
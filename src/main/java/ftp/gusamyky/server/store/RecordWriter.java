@@ -0,0 +1,155 @@
+package ftp.gusamyky.server.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes metadata records and frames them as
+ * {@code length (i32) | CRC32 of payload (i32) | payload}, the payload being a
+ * record type (u8) followed by the record's fields. Strings may be null and
+ * times are written as epoch second and nanosecond.
+ * <p>
+ * A writer either collects the records of one commit, or, when created with a
+ * channel, streams them to that channel in chunks, which is how snapshots are
+ * written.
+ */
+final class RecordWriter {
+    static final int HEADER_SIZE = 8;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+    private static final int SPILL_SIZE = 65536;
+
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(payload);
+    private final ByteArrayOutputStream frames = new ByteArrayOutputStream(4096);
+    private final List<byte[]> records = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private final FileChannel spill;
+
+    RecordWriter() {
+        this.spill = null;
+    }
+
+    /**
+     * @param spill The channel records are streamed to
+     */
+    RecordWriter(FileChannel spill) {
+        this.spill = spill;
+    }
+
+    /**
+     * Starts a record.
+     *
+     * @param type The record type
+     * @return The stream to write the record's fields to
+     */
+    DataOutputStream begin(int type) throws IOException {
+        payload.reset();
+        out.writeByte(type);
+        return out;
+    }
+
+    /**
+     * Completes the record started with {@link #begin(int)}.
+     */
+    void end() throws IOException {
+        byte[] bytes = payload.toByteArray();
+        crc.reset();
+        crc.update(bytes);
+        writeInt(bytes.length);
+        writeInt((int) crc.getValue());
+        frames.write(bytes, 0, bytes.length);
+        if (spill == null) {
+            records.add(bytes);
+        } else if (frames.size() >= SPILL_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the records still buffered to the spill channel.
+     */
+    void flush() throws IOException {
+        ByteBuffer buffer = frames();
+        while (buffer.hasRemaining()) {
+            spill.write(buffer);
+        }
+        frames.reset();
+    }
+
+    boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    int size() {
+        return frames.size();
+    }
+
+    /**
+     * @return The framed records written since the last {@link #reset()}
+     */
+    ByteBuffer frames() {
+        return ByteBuffer.wrap(frames.toByteArray());
+    }
+
+    /**
+     * Hands the records written since the last {@link #reset()} to the handler
+     * in order.
+     */
+    void forEach(RecordHandler handler) throws IOException {
+        for (byte[] record : records) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1));
+            handler.accept(record[0] & 0xFF, in);
+        }
+    }
+
+    void reset() {
+        frames.reset();
+        records.clear();
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeTime(DataOutput out, LocalDateTime time) throws IOException {
+        if (time == null) {
+            out.writeLong(NULL_TIME);
+            return;
+        }
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    static LocalDateTime readTime(DataInputStream in) throws IOException {
+        long epochSecond = in.readLong();
+        if (epochSecond == NULL_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(epochSecond, in.readInt(), ZoneOffset.UTC);
+    }
+
+    private void writeInt(int value) {
+        frames.write(value >>> 24);
+        frames.write(value >>> 16);
+        frames.write(value >>> 8);
+        frames.write(value);
+    }
+}
@@ -0,0 +1,117 @@
+package ftp.gusamyky.server.transfer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An upload whose chunks arrive independently, possibly over several sessions
+ * and in any order. The part file is extended to the full size up front and
+ * every chunk is written at its own position through one shared channel.
+ * Only chunks whose checksum has been verified are written, and the upload
+ * tracks which byte ranges they cover, so it can tell when the file is
+ * complete and where the first gap is.
+ */
+public class ChunkedUpload {
+    private final Path partPath;
+    private final long size;
+    private final FileChannel channel;
+    /** Verified ranges, start mapped to end (exclusive); adjacent ranges are merged. */
+    private final TreeMap<Long, Long> received = new TreeMap<>();
+    private long receivedBytes;
+    /** Sessions using the upload; guarded by the owning {@link UploadStaging}. */
+    int users;
+    long lastUsedMillis = System.currentTimeMillis();
+
+    ChunkedUpload(Path partPath, long size) throws IOException {
+        this.partPath = partPath;
+        this.size = size;
+        this.channel = FileChannel.open(partPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            // Nothing is known about bytes left from an earlier run, start from an empty file
+            channel.truncate(0);
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPartPath() {
+        return partPath;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Writes a verified chunk and records its range as received.
+     *
+     * @param chunk    The chunk's bytes
+     * @param position Offset in the file of the chunk's first byte
+     * @throws IOException If the chunk could not be written; its range is not
+     *                     recorded then
+     */
+    public void write(byte[] chunk, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        markReceived(position, position + chunk.length);
+    }
+
+    /**
+     * Records a chunk as received and verified.
+     *
+     * @param start Offset of the chunk's first byte
+     * @param end   Offset just past the chunk's last byte
+     */
+    synchronized void markReceived(long start, long end) {
+        Map.Entry<Long, Long> before = received.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+            remove(before.getKey());
+        }
+        Map.Entry<Long, Long> next;
+        while ((next = received.ceilingEntry(start)) != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            remove(next.getKey());
+        }
+        received.put(start, end);
+        receivedBytes += end - start;
+    }
+
+    /**
+     * @return The number of distinct bytes received and verified
+     */
+    public synchronized long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * @return The offset of the first byte not received yet, or -1 if the file
+     *         is complete
+     */
+    public synchronized long getFirstGap() {
+        Map.Entry<Long, Long> first = received.firstEntry();
+        if (first == null || first.getKey() > 0) {
+            return 0;
+        }
+        return first.getValue() >= size ? -1 : first.getValue();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    private void remove(long start) {
+        receivedBytes -= received.remove(start) - start;
+    }
+}
@@ -0,0 +1,302 @@
+package ftp.gusamyky.server.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives an upload payload into a file.
+ * Bytes the session stream has already buffered are written first. The rest
+ * is moved with {@link FileChannel#transferFrom} straight from the socket
+ * channel, which is switched to non-blocking mode for the duration so that an
+ * idle client is detected by a selector timeout rather than by reading the
+ * clock after every chunk. Sockets without a channel are read through their
+ * stream into a pooled buffer; there the socket's SO_TIMEOUT bounds each read.
+ * <p>
+ * Large uploads can instead be received through an {@link UploadPipeline}: the
+ * calling thread then only reads from the client while a writer thread writes
+ * to disk, so a transfer runs at the speed of the slower of the two rather
+ * than paying for both in turn.
+ */
+public final class FileReceiver {
+    private static final Logger LOGGER = Logger.getLogger(FileReceiver.class.getName());
+    private static final long MAX_TRANSFER_CHUNK = 8L * 1024 * 1024;
+    private static final BufferPool BUFFER_POOL = new BufferPool(256 * 1024, 32, false);
+
+    private FileReceiver() {
+    }
+
+    /**
+     * Receives exactly {@code count} bytes and writes them to the file starting
+     * at {@code position}. The file is cut to {@code position} first, so bytes
+     * beyond it are replaced. If the transfer ends early, what was received is
+     * forced to disk, so a resumed transfer can rely on the file's length.
+     *
+     * @param filePath  The file to write
+     * @param position  Offset in the file of the first received byte
+     * @param count     Number of bytes to receive
+     * @param in        The session input stream; any bytes it has buffered are
+     *                  consumed before the channel is read
+     * @param channel   The client socket's channel, or null if it has none
+     * @param timeoutMs How long to wait for data before giving up
+     * @param depth     Number of buffers that may be received ahead of the
+     *                  disk writes; 0 receives and writes on the calling
+     *                  thread
+     * @return The number of bytes received; less than {@code count} if the
+     *         client closed the connection early
+     * @throws IOException If the transfer failed or timed out
+     */
+    public static long receive(Path filePath, long position, long count, InputStream in, SocketChannel channel,
+            int timeoutMs, int depth) throws IOException {
+        try (FileChannel file = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            file.truncate(position);
+            long end = position + count;
+            Progress progress = new Progress(position, count);
+            long written = position;
+            try {
+                if (depth > 0 && count > UploadPipeline.BUFFER_SIZE) {
+                    written = receivePipelined(file, position, count, in, channel, timeoutMs, depth, progress);
+                    return written - position;
+                }
+                written = copyFromStream(in, file, written, Math.min(count, in.available()), progress);
+                if (written < end) {
+                    written = channel != null && channel.isBlocking()
+                            ? copyFromChannel(channel, file, written, end, timeoutMs, progress)
+                            : copyFromStream(in, file, written, end - written, progress);
+                }
+            } finally {
+                if (written < end) {
+                    file.force(false);
+                }
+            }
+            return written - position;
+        }
+    }
+
+    /**
+     * Receives into an {@link UploadPipeline}. Buffers are filled completely
+     * before they are handed over, so the writer writes in large sequential
+     * pieces.
+     *
+     * @return The offset just past the last byte written
+     */
+    private static long receivePipelined(FileChannel file, long position, long count, InputStream in,
+            SocketChannel channel, int timeoutMs, int depth, Progress progress) throws IOException {
+        boolean useChannel = channel != null && channel.isBlocking();
+        Selector selector = null;
+        try (UploadPipeline pipeline = new UploadPipeline(file, position, depth)) {
+            long remaining = count;
+            boolean endOfStream = false;
+            while (remaining > 0 && !endOfStream) {
+                ByteBuffer buffer = pipeline.take();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                while (buffer.hasRemaining()) {
+                    int read;
+                    if (!useChannel || in.available() > 0) {
+                        read = readStream(in, buffer);
+                    } else {
+                        if (selector == null) {
+                            selector = register(channel);
+                        }
+                        read = readChannel(channel, selector, buffer, timeoutMs);
+                    }
+                    if (read < 0) {
+                        LOGGER.severe("End of stream reached before file transfer completed");
+                        endOfStream = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                remaining -= buffer.remaining();
+                pipeline.put(buffer);
+                progress.update(position + count - remaining);
+            }
+            long written = pipeline.finish();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(String.format("Upload pipeline wrote %d bytes, waited for the disk %d times",
+                        written - position, pipeline.getStalls()));
+            }
+            return written;
+        } finally {
+            if (selector != null) {
+                selector.close();
+                channel.configureBlocking(true);
+            }
+        }
+    }
+
+    private static int readStream(InputStream in, ByteBuffer buffer) throws IOException {
+        int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read > 0) {
+            buffer.position(buffer.position() + read);
+        }
+        return read;
+    }
+
+    private static Selector register(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        Selector selector = Selector.open();
+        try {
+            channel.register(selector, SelectionKey.OP_READ);
+            return selector;
+        } catch (IOException e) {
+            selector.close();
+            channel.configureBlocking(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads from a non-blocking channel, waiting up to the timeout if no data
+     * is available.
+     *
+     * @return The number of bytes read, possibly 0, or -1 at end of stream
+     * @throws SocketTimeoutException If no data arrived in time
+     */
+    private static int readChannel(SocketChannel channel, Selector selector, ByteBuffer buffer, int timeoutMs)
+            throws IOException {
+        int read = channel.read(buffer);
+        if (read != 0) {
+            return read;
+        }
+        if (selector.select(timeoutMs) == 0) {
+            throw new SocketTimeoutException("Upload timeout - no data for " + (timeoutMs / 1000) + " seconds");
+        }
+        selector.selectedKeys().clear();
+        return 0;
+    }
+
+    private static long copyFromChannel(SocketChannel channel, FileChannel file, long position, long end,
+            int timeoutMs, Progress progress) throws IOException {
+        channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_READ);
+            boolean readable = false;
+            while (position < end) {
+                long transferred = file.transferFrom(channel, position, Math.min(MAX_TRANSFER_CHUNK, end - position));
+                if (transferred > 0) {
+                    position += transferred;
+                    progress.update(position);
+                    readable = false;
+                    continue;
+                }
+                if (readable) {
+                    // Readable but nothing transferred: transferFrom cannot report end of stream
+                    int probed = probe(channel, file, position);
+                    if (probed < 0) {
+                        LOGGER.severe("End of stream reached before file transfer completed");
+                        break;
+                    }
+                    position += probed;
+                }
+                if (selector.select(timeoutMs) == 0) {
+                    throw new SocketTimeoutException("Upload timeout - no data for " + (timeoutMs / 1000) + " seconds");
+                }
+                selector.selectedKeys().clear();
+                readable = true;
+            }
+        } finally {
+            channel.configureBlocking(true);
+        }
+        return position;
+    }
+
+    /**
+     * Reads at most one byte directly from the channel.
+     *
+     * @return -1 at end of stream, otherwise the number of bytes written to the
+     *         file
+     */
+    private static int probe(SocketChannel channel, FileChannel file, long position) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(1);
+        int read = channel.read(probe);
+        if (read > 0) {
+            probe.flip();
+            file.write(probe, position);
+        }
+        return read;
+    }
+
+    /**
+     * Receives exactly {@code count} bytes through the session stream and
+     * writes them to an open file at {@code position}. Used for the chunks of
+     * streamed uploads, which are read between their length lines; the file is
+     * not cut or extended beyond the written range.
+     *
+     * @param file     The file to write; only positional writes are used
+     * @param position Offset in the file of the first received byte
+     * @param count    Number of bytes to receive
+     * @param in       The session input stream
+     * @return The number of bytes received; less than {@code count} if the
+     *         client closed the connection early
+     * @throws IOException If the transfer failed
+     */
+    public static long receive(FileChannel file, long position, long count, InputStream in) throws IOException {
+        return copyFromStream(in, file, position, count, null) - position;
+    }
+
+    private static long copyFromStream(InputStream in, FileChannel file, long position, long count,
+            Progress progress) throws IOException {
+        if (count <= 0) {
+            return position;
+        }
+        ByteBuffer buffer = BUFFER_POOL.acquire();
+        try {
+            byte[] array = buffer.array();
+            long remaining = count;
+            while (remaining > 0) {
+                int read = in.read(array, 0, (int) Math.min(array.length, remaining));
+                if (read == -1) {
+                    LOGGER.severe("End of stream reached before file transfer completed");
+                    break;
+                }
+                buffer.clear().limit(read);
+                while (buffer.hasRemaining()) {
+                    position += file.write(buffer, position);
+                }
+                remaining -= read;
+                if (progress != null) {
+                    progress.update(position);
+                }
+            }
+            return position;
+        } finally {
+            BUFFER_POOL.release(buffer);
+        }
+    }
+
+    /**
+     * Logs transfer progress every 10%.
+     */
+    private static final class Progress {
+        private final long start;
+        private final long total;
+        private long lastPercent;
+
+        private Progress(long start, long total) {
+            this.start = start;
+            this.total = total;
+        }
+
+        private void update(long position) {
+            if (total == 0) {
+                return;
+            }
+            long received = position - start;
+            long currentPercent = (received * 100) / total;
+            if (currentPercent >= lastPercent + 10) {
+                LOGGER.info(String.format("Upload progress: %d%% (%d/%d bytes)", currentPercent, received, total));
+                lastPercent = currentPercent;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ftp.gusamyky.server.transfer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Sends file contents to a client.
+ * When the client socket is backed by a blocking {@link SocketChannel} the file
+ * is pushed with {@link FileChannel#transferTo}, which the JDK maps to
+ * {@code sendfile} on Linux: the bytes never enter the Java heap and large
+ * ranges go out in a single system call. The server accepts every connection
+ * through a channel, and NIO sessions switch theirs to blocking mode while a
+ * command runs, so downloads take this path in both thread modes. Sockets
+ * without a channel fall back to a buffered copy loop. Both paths read the file
+ * by position, so any number of sessions can send different segments of the
+ * same file at once.
+ */
+public final class FileSender {
+    private static final Logger LOGGER = Logger.getLogger(FileSender.class.getName());
+    private static final long MAX_TRANSFER_CHUNK = 8L * 1024 * 1024;
+    private static final BufferPool BUFFER_POOL = new BufferPool(64 * 1024, 32, false);
+
+    private FileSender() {
+    }
+
+    /**
+     * Sends {@code count} bytes of the file starting at {@code position}.
+     *
+     * @param filePath The file to send
+     * @param position Offset of the first byte to send
+     * @param count    Number of bytes to send
+     * @param channel  The client socket's channel, or null if it has none
+     * @param out      The client socket's output stream, used when the channel
+     *                 cannot be
+     * @return The number of bytes sent; less than {@code count} only if the file
+     *         is shorter than expected
+     * @throws IOException If reading the file or writing to the client fails
+     */
+    public static long send(Path filePath, long position, long count, SocketChannel channel, OutputStream out)
+            throws IOException {
+        if (channel != null && channel.isBlocking()) {
+            return sendZeroCopy(filePath, position, count, channel);
+        }
+        return sendBuffered(filePath, position, count, out);
+    }
+
+    private static long sendZeroCopy(Path filePath, long position, long count, SocketChannel channel)
+            throws IOException {
+        try (FileChannel file = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long sent = 0;
+            Progress progress = new Progress(count);
+            while (sent < count) {
+                long transferred = file.transferTo(position + sent, Math.min(MAX_TRANSFER_CHUNK, count - sent),
+                        channel);
+                if (transferred <= 0 && position + sent >= file.size()) {
+                    LOGGER.severe("End of file reached before file transfer completed");
+                    break;
+                }
+                sent += transferred;
+                progress.update(sent);
+            }
+            return sent;
+        }
+    }
+
+    private static long sendBuffered(Path filePath, long position, long count, OutputStream out)
+            throws IOException {
+        ByteBuffer buffer = BUFFER_POOL.acquire();
+        try (FileChannel file = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long sent = 0;
+            Progress progress = new Progress(count);
+            while (sent < count) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), count - sent));
+                int read = file.read(buffer, position + sent);
+                if (read == -1) {
+                    LOGGER.severe("End of file reached before file transfer completed");
+                    break;
+                }
+                out.write(buffer.array(), 0, read);
+                sent += read;
+                progress.update(sent);
+            }
+            out.flush();
+            return sent;
+        } finally {
+            BUFFER_POOL.release(buffer);
+        }
+    }
+
+    /**
+     * Logs transfer progress every 10%.
+     */
+    private static final class Progress {
+        private final long total;
+        private long lastPercent;
+
+        private Progress(long total) {
+            this.total = total;
+        }
+
+        private void update(long sent) {
+            if (total == 0) {
+                return;
+            }
+            long currentPercent = (sent * 100) / total;
+            if (currentPercent >= lastPercent + 10) {
+                LOGGER.info(String.format("Download progress: %d%% (%d/%d bytes)", currentPercent, sent, total));
+                lastPercent = currentPercent;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ftp.gusamyky.server.transfer;
+
+import ftp.gusamyky.server.handler.command.Command;
+import ftp.gusamyky.server.handler.command.CommandContext;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Size-bounded pool that runs the data movement of UPLOAD and DOWNLOAD.
+ * Keeping bulk transfers on their own threads with their own queue caps how
+ * much CPU, disk and socket bandwidth they can take, so cheap control commands
+ * such as LOGIN or LIST stay responsive while many large transfers are in
+ * flight. When both the pool and its queue are full new transfers are refused
+ * instead of piling up.
+ */
+public class TransferExecutor {
+    private static final Logger LOGGER = Logger.getLogger(TransferExecutor.class.getName());
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+
+    public TransferExecutor(int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r);
+                    t.setName("Transfer-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        LOGGER.info(String.format("Created transfer executor with %d threads, queue capacity %d", threads,
+                queueCapacity));
+    }
+
+    /**
+     * Runs the transfer command on the pool and waits until it finishes. The
+     * calling session thread stays blocked for the duration, which preserves the
+     * sequential request/response order of the connection.
+     *
+     * @param command The transfer command to execute
+     * @param context The session the command was received on
+     * @param args    The command arguments
+     * @throws RejectedExecutionException If the pool and its queue are full
+     * @throws IOException                If the command failed with an I/O error
+     */
+    public void execute(Command command, CommandContext context, String args) throws IOException {
+        long enqueuedAt = System.nanoTime();
+        Future<?> future;
+        try {
+            future = executor.submit(() -> {
+                totalQueueWaitNanos.addAndGet(System.nanoTime() - enqueuedAt);
+                command.execute(context, args);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            LOGGER.warning("Transfer pool saturated, rejected " + command.getCommandName());
+            throw e;
+        }
+        submittedCount.incrementAndGet();
+
+        try {
+            future.get();
+            completedCount.incrementAndGet();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            failedCount.incrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + command.getCommandName(), e);
+        } catch (ExecutionException e) {
+            failedCount.incrementAndGet();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(command.getCommandName() + " failed", cause);
+        }
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return The average time transfers spent waiting for a pool thread, in
+     *         milliseconds
+     */
+    public double getAverageQueueWaitMs() {
+        long submitted = submittedCount.get();
+        return submitted == 0 ? 0 : totalQueueWaitNanos.get() / 1_000_000.0 / submitted;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "TransferExecutor{" +
+                "active=" + getActiveCount() +
+                ", queued=" + getQueueDepth() +
+                ", submitted=" + submittedCount.get() +
+                ", completed=" + completedCount.get() +
+                ", failed=" + failedCount.get() +
+                ", rejected=" + rejectedCount.get() +
+                ", avgQueueWaitMs=" + String.format("%.2f", getAverageQueueWaitMs()) +
+                '}';
+    }
+}
@@ -0,0 +1,174 @@
+package ftp.gusamyky.server.transfer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Two-stage pipeline that overlaps receiving an upload with writing it to
+ * disk. The receiving thread takes an empty buffer from a fixed ring, fills it
+ * from the client and hands it over; a writer thread writes full buffers to
+ * the file in order and returns them to the ring. When the disk falls behind
+ * and every buffer is waiting to be written, the receiving thread blocks on the
+ * ring, so an upload never holds more than {@code depth} buffers and TCP flow
+ * control slows the client down.
+ * <p>
+ * If a write fails, the writer keeps returning buffers without writing them
+ * and the failure is thrown to the receiving thread the next time it takes a
+ * buffer. Everything written before stays in the file, so the upload can be
+ * resumed.
+ */
+final class UploadPipeline implements AutoCloseable {
+    static final int BUFFER_SIZE = 1024 * 1024;
+    private static final BufferPool BUFFER_POOL = new BufferPool(BUFFER_SIZE, 32, false);
+    private static final long WRITER_CHECK_MS = 100;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final AtomicInteger WRITER_COUNT = new AtomicInteger();
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "UploadWriter-" + WRITER_COUNT.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final FileChannel file;
+    private final BlockingQueue<ByteBuffer> empty;
+    private final BlockingQueue<ByteBuffer> full;
+    private final Future<?> writer;
+    /** Offset just past the last byte written; only touched by the writer until it has finished. */
+    private long position;
+    private volatile IOException failure;
+    private boolean ended;
+    private int stalls;
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param file     The file to write; only positional writes are used
+     * @param position Offset in the file of the first byte handed over
+     * @param depth    Number of buffers in the ring
+     */
+    UploadPipeline(FileChannel file, long position, int depth) {
+        this.file = file;
+        this.position = position;
+        this.empty = new ArrayBlockingQueue<>(depth);
+        this.full = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i < depth; i++) {
+            empty.add(BUFFER_POOL.acquire());
+        }
+        this.writer = WRITERS.submit(this::drain);
+    }
+
+    /**
+     * Takes an empty buffer, waiting while every buffer is still to be
+     * written.
+     *
+     * @return A cleared buffer to fill and hand back with {@link #put(ByteBuffer)}
+     * @throws IOException If writing an earlier buffer failed
+     */
+    ByteBuffer take() throws IOException {
+        try {
+            ByteBuffer buffer = empty.poll();
+            if (buffer == null) {
+                stalls++;
+                while ((buffer = empty.poll(WRITER_CHECK_MS, TimeUnit.MILLISECONDS)) == null) {
+                    if (writer.isDone()) {
+                        throw new IOException("Upload writer stopped");
+                    }
+                }
+            }
+            if (failure != null) {
+                empty.add(buffer);
+                throw failure;
+            }
+            return buffer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the upload writer");
+        }
+    }
+
+    /**
+     * Hands over a buffer taken with {@link #take()}, flipped for reading, to
+     * be written after the buffers handed over before it. An empty buffer is
+     * returned to the ring without a write.
+     */
+    void put(ByteBuffer buffer) {
+        // Never blocks: the queue has room for every buffer and the end marker
+        full.add(buffer.hasRemaining() ? buffer : buffer.clear());
+    }
+
+    /**
+     * Waits until every buffer handed over has been written.
+     *
+     * @return The offset just past the last byte written
+     * @throws IOException If a write failed
+     */
+    long finish() throws IOException {
+        awaitWriter();
+        if (failure != null) {
+            throw failure;
+        }
+        return position;
+    }
+
+    /**
+     * @return How often the receiving thread had to wait for the writer
+     */
+    int getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Waits for the writer to write what was handed over and returns the
+     * buffers to the pool. Failures are left to {@link #finish()}.
+     */
+    @Override
+    public void close() throws IOException {
+        awaitWriter();
+        ByteBuffer buffer;
+        while ((buffer = empty.poll()) != null) {
+            BUFFER_POOL.release(buffer);
+        }
+    }
+
+    private void awaitWriter() throws IOException {
+        if (!ended) {
+            ended = true;
+            full.add(END);
+        }
+        try {
+            writer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the upload writer");
+        } catch (ExecutionException e) {
+            throw new IOException("Upload writer failed", e.getCause());
+        }
+    }
+
+    private Void drain() throws InterruptedException {
+        ByteBuffer buffer;
+        while ((buffer = full.take()) != END) {
+            if (failure == null) {
+                try {
+                    while (buffer.hasRemaining()) {
+                        position += file.write(buffer, position);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            empty.add(buffer.clear());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,434 @@
+package ftp.gusamyky.server.transfer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Staging area for uploads in progress.
+ * An upload is received into a part file and moved to the files directory only
+ * once it is complete, so a broken connection leaves the part file behind
+ * instead of a truncated file. The client can ask how many bytes the part file
+ * holds and resume the upload from there. Part files untouched for longer than
+ * the expiry time are deleted in the background.
+ * <p>
+ * Part files are named after the owner, a hash of the file name and the
+ * announced size, so resuming with a different size starts over. Only one
+ * session at a time may write a given part file.
+ * <p>
+ * Chunked uploads, whose chunks may arrive over several sessions at once, are
+ * kept open in a registry until they are committed or expire. Which of their
+ * chunks have arrived is only known in memory, so their part files are not
+ * resumable across restarts and are simply left to expire.
+ * <p>
+ * Streamed uploads, whose size is only known once they end, cannot be resumed
+ * either; their part files are discarded when a transfer breaks off.
+ */
+public class UploadStaging {
+    private static final Logger LOGGER = Logger.getLogger(UploadStaging.class.getName());
+    private static final String PART_SUFFIX = ".part";
+    private static final String CHUNKED_SUFFIX = ".chunked";
+    private static final String STREAM_SUFFIX = ".stream";
+    private static final long MIN_SWEEP_INTERVAL_MS = 60000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+    private static final int RESERVE_LOCK_STRIPES = 64;
+
+    private final Path directory;
+    private final long expiryMs;
+    private final Set<Path> inUse = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Path, ChunkedUpload> chunkedUploads = new ConcurrentHashMap<>();
+    private final ReentrantLock[] reserveLocks = new ReentrantLock[RESERVE_LOCK_STRIPES];
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    /**
+     * A partial upload found in the staging area.
+     *
+     * @param size     The size the client announced for the whole file
+     * @param received The number of bytes received so far
+     */
+    public record PartialUpload(long size, long received) {
+    }
+
+    /**
+     * Creates the staging directory. The removal of expired part files is
+     * scheduled by {@link #start()}.
+     *
+     * @param directory The staging directory; it should be on the same file
+     *                  system as the files directory so completed uploads can
+     *                  be moved atomically
+     * @param expiryMs  How long an untouched part file is kept, in
+     *                  milliseconds; 0 keeps part files forever
+     * @throws IOException If the directory cannot be created
+     */
+    public UploadStaging(Path directory, long expiryMs) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.expiryMs = expiryMs;
+        for (int i = 0; i < reserveLocks.length; i++) {
+            reserveLocks[i] = new ReentrantLock();
+        }
+        if (expiryMs > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "UploadStagingSweeper");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Schedules the removal of expired part files, starting with a sweep right
+     * away; does nothing if part files are kept forever.
+     */
+    public void start() {
+        if (scheduler != null) {
+            long intervalMs = Math.max(MIN_SWEEP_INTERVAL_MS, expiryMs / 4);
+            scheduler.scheduleWithFixedDelay(this::sweep, 0, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reserves the part file of an upload for the calling session. Part files
+     * of the same file announced with a different size are deleted.
+     *
+     * @param ownerId  The uploading client
+     * @param filename The name of the uploaded file
+     * @param size     The announced size of the whole file
+     * @return The part file, which may not exist yet, or null if another
+     *         session is uploading the same file, with any size or mode
+     * @throws IOException If an outdated part file cannot be deleted
+     */
+    public Path acquire(int ownerId, String filename, long size) throws IOException {
+        return reserve(ownerId, filename, size + PART_SUFFIX);
+    }
+
+    /**
+     * Reserves the part file of a streamed upload, whose size is not known in
+     * advance, for the calling session. Other part files of the same file are
+     * deleted.
+     *
+     * @param ownerId  The uploading client
+     * @param filename The name of the uploaded file
+     * @return The part file, which may not exist yet, or null if another
+     *         session is uploading the same file, with any size or mode
+     * @throws IOException If an outdated part file cannot be deleted
+     */
+    public Path acquireStream(int ownerId, String filename) throws IOException {
+        return reserve(ownerId, filename, "stream" + STREAM_SUFFIX);
+    }
+
+    /**
+     * Holds the lock of the file's stripe, so that no other reservation of the
+     * same file can take a part file between the check that it is unused and
+     * its deletion. Reservations of other files mostly fall on other stripes
+     * and list and delete their part files in parallel.
+     */
+    private Path reserve(int ownerId, String filename, String suffix) throws IOException {
+        String prefix = prefix(ownerId, filename);
+        ReentrantLock reserveLock = reserveLocks[Math.floorMod(prefix.hashCode(), reserveLocks.length)];
+        reserveLock.lock();
+        try {
+            Path part = directory.resolve(prefix + suffix);
+            if (!inUse.add(part)) {
+                return null;
+            }
+            try (DirectoryStream<Path> parts = Files.newDirectoryStream(directory, prefix + "*")) {
+                for (Path other : parts) {
+                    if (!other.equals(part) && !deleteUnused(other)) {
+                        inUse.remove(part);
+                        return null;
+                    }
+                }
+            } catch (IOException e) {
+                inUse.remove(part);
+                throw e;
+            }
+            return part;
+        } finally {
+            reserveLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes a part file unless a session has reserved it or it belongs to an
+     * open chunked upload.
+     *
+     * @return false if the file is in use and was kept
+     * @throws IOException If the file cannot be deleted
+     */
+    private boolean deleteUnused(Path part) throws IOException {
+        if (inUse.contains(part)) {
+            return false;
+        }
+        boolean[] open = new boolean[1];
+        try {
+            // Deleting inside compute keeps openChunked from starting the upload meanwhile
+            chunkedUploads.compute(part, (key, upload) -> {
+                if (upload != null) {
+                    open[0] = true;
+                    return upload;
+                }
+                try {
+                    Files.deleteIfExists(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return !open[0];
+    }
+
+    /**
+     * Ends the calling session's reservation of a part file. The file itself
+     * is kept so the upload can be resumed.
+     */
+    public void release(Path part) {
+        inUse.remove(part);
+    }
+
+    /**
+     * Deletes a part file that cannot be resumed and ends the calling
+     * session's reservation of it.
+     *
+     * @throws IOException If the file cannot be deleted
+     */
+    public void discard(Path part) throws IOException {
+        try {
+            Files.deleteIfExists(part);
+        } finally {
+            inUse.remove(part);
+        }
+    }
+
+    /**
+     * @return The number of bytes in the part file, 0 if it does not exist
+     * @throws IOException If the size cannot be read
+     */
+    public long getReceivedLength(Path part) throws IOException {
+        return Files.exists(part) ? Files.size(part) : 0;
+    }
+
+    /**
+     * Looks up the partial upload of a file.
+     *
+     * @param ownerId  The uploading client
+     * @param filename The name of the uploaded file
+     * @return The partial upload, or null if there is none
+     * @throws IOException If the staging directory cannot be read
+     */
+    public PartialUpload find(int ownerId, String filename) throws IOException {
+        String prefix = prefix(ownerId, filename);
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(directory, prefix + "*" + PART_SUFFIX)) {
+            for (Path part : parts) {
+                String name = part.getFileName().toString();
+                try {
+                    long size = Long.parseLong(name.substring(prefix.length(), name.length() - PART_SUFFIX.length()));
+                    return new PartialUpload(size, Files.size(part));
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Ignoring unrecognized staging file " + part);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves a complete part file to its final location, replacing any file
+     * there.
+     *
+     * @throws IOException If the file cannot be moved
+     */
+    public void commit(Path part, Path target) throws IOException {
+        try {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the chunked upload of a file for use by the calling session,
+     * optionally starting it. Every returned upload must be handed back with
+     * {@link #release(ChunkedUpload)} or {@link #commit(ChunkedUpload, Path)}.
+     *
+     * @param ownerId  The uploading client
+     * @param filename The name of the uploaded file
+     * @param size     The size of the whole file
+     * @param create   Whether to start the upload if it does not exist
+     * @return The upload, or null if it does not exist and {@code create} is
+     *         false
+     * @throws IOException If the part file cannot be created
+     */
+    public ChunkedUpload openChunked(int ownerId, String filename, long size, boolean create) throws IOException {
+        Path part = directory.resolve(prefix(ownerId, filename) + size + CHUNKED_SUFFIX);
+        try {
+            return chunkedUploads.compute(part, (key, upload) -> {
+                if (upload == null) {
+                    if (!create) {
+                        return null;
+                    }
+                    try {
+                        upload = new ChunkedUpload(key, size);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                upload.users++;
+                upload.lastUsedMillis = System.currentTimeMillis();
+                return upload;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Hands back a chunked upload obtained from
+     * {@link #openChunked(int, String, long, boolean)}.
+     */
+    public void release(ChunkedUpload upload) {
+        chunkedUploads.computeIfPresent(upload.getPartPath(), (key, current) -> {
+            if (current == upload) {
+                current.users--;
+                current.lastUsedMillis = System.currentTimeMillis();
+            }
+            return current;
+        });
+    }
+
+    /**
+     * Ends a complete chunked upload and moves its part file to its final
+     * location. Hands back the calling session's use of the upload either way.
+     *
+     * @return false if other sessions are still writing chunks, in which case
+     *         nothing is done
+     * @throws IOException If the file cannot be moved
+     */
+    public boolean commit(ChunkedUpload upload, Path target) throws IOException {
+        boolean[] committed = new boolean[1];
+        chunkedUploads.computeIfPresent(upload.getPartPath(), (key, current) -> {
+            if (current != upload) {
+                return current;
+            }
+            current.users--;
+            committed[0] = current.users == 0;
+            return committed[0] ? null : current;
+        });
+        if (!committed[0]) {
+            return false;
+        }
+        upload.close();
+        commit(upload.getPartPath(), target);
+        return true;
+    }
+
+    /**
+     * Deletes part files that have not been written to for longer than the
+     * expiry time and are not in use.
+     *
+     * @return The number of part files deleted
+     */
+    public int sweep() {
+        FileTime cutoff = FileTime.fromMillis(System.currentTimeMillis() - expiryMs);
+        int deleted = expireChunkedUploads(cutoff.toMillis());
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(directory,
+                "*{" + PART_SUFFIX + "," + CHUNKED_SUFFIX + "," + STREAM_SUFFIX + "}")) {
+            for (Path part : parts) {
+                try {
+                    if (!inUse.contains(part) && !chunkedUploads.containsKey(part)
+                            && Files.getLastModifiedTime(part).compareTo(cutoff) < 0 && Files.deleteIfExists(part)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Cannot expire staging file " + part, e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot read staging directory " + directory, e);
+        }
+        if (deleted > 0) {
+            expiredCount.addAndGet(deleted);
+            LOGGER.info(String.format("Deleted %d expired partial uploads", deleted));
+        }
+        return deleted;
+    }
+
+    /**
+     * Closes and deletes chunked uploads no session has used since the cutoff.
+     */
+    private int expireChunkedUploads(long cutoffMillis) {
+        int deleted = 0;
+        for (Path part : chunkedUploads.keySet()) {
+            ChunkedUpload[] expired = new ChunkedUpload[1];
+            chunkedUploads.computeIfPresent(part, (key, upload) -> {
+                if (upload.users > 0 || upload.lastUsedMillis >= cutoffMillis) {
+                    return upload;
+                }
+                expired[0] = upload;
+                return null;
+            });
+            if (expired[0] == null) {
+                continue;
+            }
+            try {
+                expired[0].close();
+                Files.deleteIfExists(part);
+                deleted++;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot expire chunked upload " + part, e);
+            }
+        }
+        return deleted;
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * Stops the removal of expired part files.
+     */
+    public void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String prefix(int ownerId, String filename) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(filename.getBytes(StandardCharsets.UTF_8));
+            return ownerId + "-" + HexFormat.of().formatHex(hash) + "-";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
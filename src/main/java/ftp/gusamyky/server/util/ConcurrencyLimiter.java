@@ -0,0 +1,80 @@
+package ftp.gusamyky.server.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps how many operations one key, such as a client id, may run at the same
+ * time. Keys only take up memory while they have operations running.
+ */
+public class ConcurrencyLimiter<K> {
+    private final int maxPerKey;
+    private final ConcurrentHashMap<K, Integer> running = new ConcurrentHashMap<>();
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param maxPerKey Operations allowed to run at once per key; 0 disables
+     *                  the limit
+     */
+    public ConcurrencyLimiter(int maxPerKey) {
+        if (maxPerKey < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        this.maxPerKey = maxPerKey;
+    }
+
+    /**
+     * Starts an operation for the key if the limit allows it. Every successful
+     * call must be followed by {@link #release(Object)}.
+     *
+     * @return true if the operation may run
+     */
+    public boolean tryAcquire(K key) {
+        if (maxPerKey == 0) {
+            return true;
+        }
+        boolean[] acquired = new boolean[1];
+        running.compute(key, (k, count) -> {
+            int current = count != null ? count : 0;
+            if (current >= maxPerKey) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        (acquired[0] ? acquiredCount : rejectedCount).incrementAndGet();
+        return acquired[0];
+    }
+
+    /**
+     * Ends an operation started with {@link #tryAcquire(Object)}.
+     */
+    public void release(K key) {
+        if (maxPerKey == 0) {
+            return;
+        }
+        running.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * @return The number of operations the key is running
+     */
+    public int getRunning(K key) {
+        return running.getOrDefault(key, 0);
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter{" +
+                "maxPerKey=" + maxPerKey +
+                ", activeKeys=" + running.size() +
+                ", acquired=" + acquiredCount.get() +
+                ", rejected=" + rejectedCount.get() +
+                '}';
+    }
+}
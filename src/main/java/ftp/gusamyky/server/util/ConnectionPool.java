@@ -0,0 +1,348 @@
+package ftp.gusamyky.server.util;
+
+import ftp.gusamyky.server.config.DatabaseConfig;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of JDBC connections shared by all repositories.
+ * At most {@code db.max_connections} connections are handed out at a time;
+ * further callers wait up to {@code db.connection_timeout} milliseconds and
+ * then fail with a {@link SQLTransientConnectionException}. Connections that
+ * sat idle for a while are validated before reuse, and connections borrowed for
+ * longer than {@code db.leak_detection_threshold} are reported together with
+ * the stack trace of the code that borrowed them.
+ * <p>
+ * Callers use the returned connection as usual; closing it returns the
+ * underlying connection to the pool, rolled back and in auto-commit mode.
+ */
+public class ConnectionPool {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+    private static final long VALIDATION_INTERVAL_MS = 30000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long MAX_LEAK_CHECK_INTERVAL_MS = 10000;
+
+    private final DatabaseConfig config;
+    private final Semaphore permits;
+    private final Deque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService leakDetector;
+    private final long leakCheckIntervalMs;
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong borrowedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private volatile boolean closed;
+
+    public ConnectionPool(DatabaseConfig config) {
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxConnections(), true);
+        long leakThreshold = config.getLeakDetectionThresholdMs();
+        this.leakCheckIntervalMs = Math.min(leakThreshold, MAX_LEAK_CHECK_INTERVAL_MS);
+        if (leakThreshold > 0) {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ConnectionPool-LeakDetector");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            leakDetector = null;
+        }
+        LOGGER.info(String.format("Created connection pool with %d connections, timeout %d ms",
+                config.getMaxConnections(), config.getConnectionTimeoutMs()));
+    }
+
+    /**
+     * Schedules the check for connections borrowed longer than the leak
+     * detection threshold; does nothing if leak detection is disabled.
+     */
+    public void start() {
+        if (leakDetector != null) {
+            leakDetector.scheduleWithFixedDelay(this::detectLeaks, leakCheckIntervalMs, leakCheckIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Borrows a connection, waiting for one to become free if necessary.
+     *
+     * @return A connection that returns to the pool when closed
+     * @throws SQLTransientConnectionException If no connection became free in
+     *                                         time
+     * @throws SQLException                    If a new connection could not be
+     *                                         opened or the pool is shut down
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is shut down");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.getConnectionTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTransientConnectionException(String.format(
+                        "Timed out after %d ms waiting for a database connection (%s)",
+                        config.getConnectionTimeoutMs(), this));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+
+        try {
+            Connection connection = takeIdle();
+            if (connection == null) {
+                connection = open();
+            }
+            borrowedCount.incrementAndGet();
+            Lease lease = new Lease(connection);
+            leases.add(lease);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, lease);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of connections currently borrowed
+     */
+    public int getActiveCount() {
+        return leases.size();
+    }
+
+    /**
+     * @return The number of open connections waiting in the pool
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return The approximate number of callers waiting for a connection
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getBorrowedCount() {
+        return borrowedCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * @return The average time callers waited for a connection, in milliseconds
+     */
+    public double getAverageWaitMs() {
+        long borrowed = borrowedCount.get();
+        return borrowed == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / borrowed;
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are closed when they
+     * are returned.
+     */
+    public void shutdown() {
+        closed = true;
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+        drainIdle();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "open=" + openCount.get() +
+                ", active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", waiting=" + getWaitingCount() +
+                ", created=" + createdCount.get() +
+                ", borrowed=" + borrowedCount.get() +
+                ", timeouts=" + timeoutCount.get() +
+                ", validationFailures=" + validationFailureCount.get() +
+                ", leaks=" + leakCount.get() +
+                ", avgWaitMs=" + String.format("%.2f", getAverageWaitMs()) +
+                '}';
+    }
+
+    private Connection takeIdle() {
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - candidate.returnedAt < VALIDATION_INTERVAL_MS
+                    || isValid(candidate.connection)) {
+                return candidate.connection;
+            }
+            validationFailureCount.incrementAndGet();
+            LOGGER.warning("Discarding pooled connection that failed validation");
+            discard(candidate.connection);
+        }
+        return null;
+    }
+
+    private Connection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(config.getUrl(), config.getUser(),
+                config.getPassword());
+        openCount.incrementAndGet();
+        createdCount.incrementAndGet();
+        return connection;
+    }
+
+    private void release(Lease lease) {
+        leases.remove(lease);
+        Connection connection = lease.connection;
+        try {
+            if (closed || connection.isClosed()) {
+                discard(connection);
+                return;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            idle.offerFirst(new IdleConnection(connection, System.currentTimeMillis()));
+            if (closed) {
+                drainIdle();
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Discarding connection that could not be reset", e);
+            discard(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void drainIdle() {
+        IdleConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            discard(connection.connection);
+        }
+    }
+
+    private void discard(Connection connection) {
+        openCount.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Error closing discarded connection", e);
+        }
+    }
+
+    private static boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        long threshold = config.getLeakDetectionThresholdMs();
+        for (Lease lease : leases) {
+            long age = now - lease.borrowedAt;
+            if (age > threshold && !lease.reported) {
+                lease.reported = true;
+                leakCount.incrementAndGet();
+                LOGGER.log(Level.WARNING, String.format("Possible connection leak: borrowed by thread %s %d ms ago",
+                        lease.threadName, age), lease.origin);
+            }
+        }
+    }
+
+    private record IdleConnection(Connection connection, long returnedAt) {
+    }
+
+    /**
+     * A borrowed connection. Intercepts {@code close()} to return the
+     * underlying connection to the pool and forwards everything else.
+     */
+    private final class Lease implements InvocationHandler {
+        private final Connection connection;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final String threadName = Thread.currentThread().getName();
+        private final Throwable origin;
+        private final AtomicBoolean returned = new AtomicBoolean();
+        private volatile boolean reported;
+
+        private Lease(Connection connection) {
+            this.connection = connection;
+            this.origin = config.getLeakDetectionThresholdMs() > 0
+                    ? new Throwable("Connection borrowed here")
+                    : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (returned.compareAndSet(false, true)) {
+                        release(this);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned.get() || connection.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled" + connection;
+                }
+                default -> {
+                }
+            }
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ftp.gusamyky.server.util;
+
+import ftp.gusamyky.server.common.exception.ServerException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Fixed-size platform thread pool for CPU-heavy work such as password hashing.
+ * Session threads hand such work over and wait for the result, so a burst of
+ * expensive requests can occupy at most {@code threads} cores and, when
+ * sessions run on virtual threads, never monopolizes the carrier threads.
+ * <p>
+ * The queue in front of the pool is bounded. Once {@code threads} tasks run
+ * and {@code queueCapacity} wait, further tasks are rejected at once, so a
+ * login storm is answered with BUSY instead of building a backlog that delays
+ * every other session.
+ */
+public class CpuTaskExecutor {
+    private static final Logger LOGGER = Logger.getLogger(CpuTaskExecutor.class.getName());
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    public CpuTaskExecutor(int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread t = new Thread(r);
+                    t.setName("CpuTask-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        LOGGER.info(String.format("Created CPU task executor with %d threads, queue capacity %d", threads,
+                queueCapacity));
+    }
+
+    /**
+     * Runs the task on the pool and waits for its result.
+     *
+     * @param task The task to run
+     * @return The task's result
+     * @throws RejectedExecutionException If the pool and its queue are full
+     * @throws ServerException            If the task failed with a checked
+     *                                    exception or the caller was
+     *                                    interrupted
+     */
+    public <T> T call(Callable<T> task) {
+        long enqueuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                totalQueueWaitNanos.addAndGet(start - enqueuedAt);
+                try {
+                    return task.call();
+                } finally {
+                    long run = System.nanoTime() - start;
+                    totalRunNanos.addAndGet(run);
+                    maxRunNanos.accumulateAndGet(run, Math::max);
+                    completedCount.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            throw e;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServerException("Interrupted while waiting for CPU task", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ServerException("CPU task failed", cause);
+        }
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return The average time tasks waited for a pool thread, in milliseconds
+     */
+    public double getAverageQueueWaitMs() {
+        long completed = completedCount.get();
+        return completed == 0 ? 0 : totalQueueWaitNanos.get() / 1_000_000.0 / completed;
+    }
+
+    /**
+     * @return The average time tasks ran, such as one password verification, in
+     *         milliseconds
+     */
+    public double getAverageRunMs() {
+        long completed = completedCount.get();
+        return completed == 0 ? 0 : totalRunNanos.get() / 1_000_000.0 / completed;
+    }
+
+    public double getMaxRunMs() {
+        return maxRunNanos.get() / 1_000_000.0;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "CpuTaskExecutor{" +
+                "active=" + getActiveCount() +
+                ", queued=" + getQueueDepth() +
+                ", completed=" + completedCount.get() +
+                ", rejected=" + rejectedCount.get() +
+                ", avgQueueWaitMs=" + String.format("%.2f", getAverageQueueWaitMs()) +
+                ", avgRunMs=" + String.format("%.2f", getAverageRunMs()) +
+                ", maxRunMs=" + String.format("%.2f", getMaxRunMs()) +
+                '}';
+    }
+}
@@ -11,12 +11,27 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.io.InputStream;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import ftp.gusamyky.server.common.model.OperationResult;
+import ftp.gusamyky.server.common.model.OperationType;
 import ftp.gusamyky.server.config.DatabaseConfig;
 
 public class DatabaseInitializer {
     private static final Logger LOGGER = Logger.getLogger(DatabaseInitializer.class.getName());
     private static final String INIT_SCRIPT = "init.sql";
+    private static final String HISTORY_TABLE = "HistoriaOperacji";
+    private static final int MIGRATION_CHUNK = 1000;
+    private static final Pattern LEGACY_SUFFIX = Pattern.compile("\\s*\\[user:[^\\]]*\\]\\s*\\[[^\\]]*\\]\\s*$");
+    private static final Pattern LEGACY_OPERATION = Pattern.compile("([A-Z]+)(?:_(OK|FAIL))?(?::\\s*(.*))?");
 
     public static void initialize(DatabaseConfig config) {
         String url = config.getUrlNoDb();
@@ -40,11 +55,140 @@ public class DatabaseInitializer {
                     stmt.execute(sql);
                 }
             }
+            migrateHistoryTable(conn);
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize database schema", e);
         }
     }
 
+    /**
+     * Converts a history table created with the old free-text schema, in which
+     * each row held a string such as
+     * {@code UPLOAD_OK: name [user:x] [timestamp]}, to the typed columns of
+     * schema.sql and adds its indexes. Rows are converted in chunks of
+     * {@value #MIGRATION_CHUNK}, each in its own transaction; the free-text
+     * column is only dropped once every row has been converted, so an
+     * interrupted migration resumes on the next start.
+     */
+    private static void migrateHistoryTable(Connection conn) throws SQLException {
+        Set<String> columns = columnNames(conn, HISTORY_TABLE);
+        if (columns.contains("operation")) {
+            LOGGER.info("Migrating " + HISTORY_TABLE + " to typed history columns");
+            try (Statement stmt = conn.createStatement()) {
+                if (!columns.contains("op_type")) {
+                    stmt.execute("ALTER TABLE " + HISTORY_TABLE + " ADD COLUMN ("
+                            + "op_type VARCHAR(16) NOT NULL DEFAULT 'OTHER', "
+                            + "result_code VARCHAR(32) NOT NULL DEFAULT 'OK', "
+                            + "filename VARCHAR(255), bytes BIGINT, duration_ms BIGINT, client_ip VARCHAR(45))");
+                    stmt.execute("ALTER TABLE " + HISTORY_TABLE
+                            + " MODIFY COLUMN timestamp DATETIME(3) DEFAULT CURRENT_TIMESTAMP(3)");
+                }
+                long migrated = convertLegacyRows(conn);
+                stmt.execute("ALTER TABLE " + HISTORY_TABLE + " ALTER COLUMN op_type DROP DEFAULT");
+                stmt.execute("ALTER TABLE " + HISTORY_TABLE + " ALTER COLUMN result_code DROP DEFAULT");
+                stmt.execute("ALTER TABLE " + HISTORY_TABLE + " DROP COLUMN operation");
+                LOGGER.info("Migrated " + migrated + " operation history rows");
+            }
+        }
+        createIndexIfMissing(conn, "idx_history_client_time", "client_id, timestamp, id");
+        createIndexIfMissing(conn, "idx_history_client_type_time", "client_id, op_type, timestamp, id");
+        createIndexIfMissing(conn, "idx_history_time", "timestamp, id");
+    }
+
+    private static long convertLegacyRows(Connection conn) throws SQLException {
+        String select = "SELECT id, operation FROM " + HISTORY_TABLE + " WHERE id > ? ORDER BY id LIMIT "
+                + MIGRATION_CHUNK;
+        String update = "UPDATE " + HISTORY_TABLE + " SET op_type = ?, result_code = ?, filename = ? WHERE id = ?";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        long migrated = 0;
+        try (PreparedStatement selectStmt = conn.prepareStatement(select);
+                PreparedStatement updateStmt = conn.prepareStatement(update)) {
+            int lastId = 0;
+            while (true) {
+                int rows = 0;
+                selectStmt.setInt(1, lastId);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getInt(1);
+                        LegacyOperation operation = parseLegacyOperation(rs.getString(2));
+                        updateStmt.setString(1, operation.type().name());
+                        updateStmt.setString(2, operation.result().name());
+                        updateStmt.setString(3, operation.filename());
+                        updateStmt.setInt(4, lastId);
+                        updateStmt.addBatch();
+                        rows++;
+                    }
+                }
+                if (rows == 0) {
+                    break;
+                }
+                updateStmt.executeBatch();
+                conn.commit();
+                migrated += rows;
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return migrated;
+    }
+
+    /**
+     * Parses a free-text history entry. Entries that are not recognized become
+     * {@link OperationType#OTHER} and keep their text in the filename column.
+     */
+    private static LegacyOperation parseLegacyOperation(String text) {
+        String operation = LEGACY_SUFFIX.matcher(text).replaceFirst("").trim();
+        Matcher matcher = LEGACY_OPERATION.matcher(operation);
+        OperationType type = matcher.matches() ? OperationType.fromName(matcher.group(1)) : null;
+        if (type == null) {
+            return new LegacyOperation(OperationType.OTHER, OperationResult.OK, operation);
+        }
+        if ("FAIL".equals(matcher.group(2))) {
+            // FileNotFoundOnServer -> FILE_NOT_FOUND_ON_SERVER, IOError -> IO_ERROR
+            String reason = matcher.group(3) == null ? "" : matcher.group(3).trim()
+                    .replaceAll("([A-Z])([A-Z][a-z])", "$1_$2")
+                    .replaceAll("([a-z])([A-Z])", "$1_$2");
+            return new LegacyOperation(type, OperationResult.fromName(reason), null);
+        }
+        String filename = matcher.group(3);
+        return new LegacyOperation(type, OperationResult.OK,
+                filename == null || filename.isBlank() ? null : filename.trim());
+    }
+
+    private static Set<String> columnNames(Connection conn, String table) throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                names.add(meta.getColumnName(i).toLowerCase(Locale.ROOT));
+            }
+        }
+        return names;
+    }
+
+    private static void createIndexIfMissing(Connection conn, String name, String columns) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, HISTORY_TABLE, false, true)) {
+            while (rs.next()) {
+                if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return;
+                }
+            }
+        }
+        LOGGER.info("Creating index " + name + " on " + HISTORY_TABLE);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX " + name + " ON " + HISTORY_TABLE + " (" + columns + ")");
+        }
+    }
+
+    private record LegacyOperation(OperationType type, OperationResult result, String filename) {
+    }
+
     public void initializeDatabase(Connection connection) {
         List<String> statements = loadInitScript();
         executeStatements(connection, statements);
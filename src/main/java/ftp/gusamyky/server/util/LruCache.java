@@ -0,0 +1,139 @@
+package ftp.gusamyky.server.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Bounded in-process cache that evicts the least recently used entry once it
+ * is full and drops entries older than a time to live.
+ * <p>
+ * The cache is written through: whoever changes the data behind an entry
+ * invalidates it afterwards. A value loaded from the source while an
+ * invalidation happens may already be stale, so loaders read
+ * {@link #version()} before loading and store the value with
+ * {@link #put(Object, Object, long)}, which discards it if anything was
+ * invalidated in between.
+ */
+public class LruCache<K, V> {
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private long version;
+
+    /**
+     * @param maxSize The maximum number of entries; 0 disables the cache
+     * @param ttlMs   How long an entry stays valid, in milliseconds; 0 keeps
+     *                entries until they are evicted or invalidated
+     */
+    public LruCache(int maxSize, long ttlMs) {
+        if (maxSize < 0 || ttlMs < 0) {
+            throw new IllegalArgumentException("Cache size and time to live must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMs * 1_000_000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @return The cached value, or null if there is none or it has expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.loadedAt >= ttlNanos) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * @return The invalidation counter to pass to {@link #put(Object, Object, long)}
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Stores a value unless an invalidation happened after the given version
+     * was read.
+     */
+    public synchronized void put(K key, V value, long loadedVersion) {
+        if (maxSize > 0 && value != null && loadedVersion == version) {
+            entries.put(key, new Entry<>(value, System.nanoTime()));
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        version++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateIf(Predicate<K> predicate) {
+        version++;
+        Iterator<K> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (predicate.test(keys.next())) {
+                keys.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LruCache{" +
+                "size=" + size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hitCount.get() +
+                ", misses=" + missCount.get() +
+                ", evictions=" + evictionCount.get() +
+                '}';
+    }
+
+    private record Entry<V>(V value, long loadedAt) {
+    }
+}
@@ -0,0 +1,102 @@
+package ftp.gusamyky.server.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-key token bucket: each key, such as a client IP or a username, may make
+ * a burst of up to {@code attemptsPerMinute} attempts, after which attempts
+ * are allowed again at that rate. Keys whose bucket has refilled are dropped
+ * from time to time, so the limiter only holds recently active keys.
+ */
+public class RateLimiter {
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final int PRUNE_EVERY = 1024;
+
+    private final int attemptsPerMinute;
+    private final long nanosPerToken;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong limitedCount = new AtomicLong();
+
+    /**
+     * @param attemptsPerMinute Attempts allowed per key and minute; 0 disables
+     *                          the limit
+     */
+    public RateLimiter(int attemptsPerMinute) {
+        if (attemptsPerMinute < 0) {
+            throw new IllegalArgumentException("Attempts per minute must not be negative");
+        }
+        this.attemptsPerMinute = attemptsPerMinute;
+        this.nanosPerToken = attemptsPerMinute > 0 ? NANOS_PER_MINUTE / attemptsPerMinute : 0;
+    }
+
+    /**
+     * Takes one attempt from the key's bucket.
+     *
+     * @return 0 if the attempt is allowed, otherwise the time in milliseconds
+     *         until the next one will be
+     */
+    public long tryAcquire(String key) {
+        if (attemptsPerMinute == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (callCount.incrementAndGet() % PRUNE_EVERY == 0) {
+            buckets.values().removeIf(bucket -> bucket.isFull(now));
+        }
+        long waitNanos = buckets.computeIfAbsent(key, k -> new Bucket(now)).take(now);
+        if (waitNanos == 0) {
+            return 0;
+        }
+        limitedCount.incrementAndGet();
+        return Math.max(1, waitNanos / 1_000_000);
+    }
+
+    public long getLimitedCount() {
+        return limitedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter{" +
+                "attemptsPerMinute=" + attemptsPerMinute +
+                ", trackedKeys=" + buckets.size() +
+                ", limited=" + limitedCount.get() +
+                '}';
+    }
+
+    private final class Bucket {
+        private double tokens = attemptsPerMinute;
+        private long refilledAt;
+
+        private Bucket(long now) {
+            this.refilledAt = now;
+        }
+
+        /**
+         * @return 0 if a token was taken, otherwise the nanoseconds until one is
+         *         available
+         */
+        private synchronized long take(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return (long) ((1 - tokens) * nanosPerToken);
+        }
+
+        private synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= attemptsPerMinute;
+        }
+
+        private void refill(long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(attemptsPerMinute, tokens + (double) (now - refilledAt) / nanosPerToken);
+                refilledAt = now;
+            }
+        }
+    }
+}
@@ -5,24 +5,26 @@ import java.util.logging.Level;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
-import ftp.gusamyky.server.common.model.OperationHistoryModel;
+import ftp.gusamyky.server.common.model.OperationSummaryModel;
 
 public class ReportExportUtil {
     private static final Logger LOGGER = Logger.getLogger(ReportExportUtil.class.getName());
-    private static final String CSV_HEADER = "ID,Client ID,Operation,Timestamp";
+    private static final String CSV_HEADER = "Operation,Result,Count,Total Bytes,Average Duration (ms),Last Performed";
 
-    public static void exportToCsv(List<OperationHistoryModel> history, String filePath) {
+    public static void exportSummaryToCsv(List<OperationSummaryModel> summary, String filePath) {
         try (FileWriter writer = new FileWriter(filePath)) {
             // Write header
             writer.write(CSV_HEADER + "\n");
 
             // Write data
-            for (OperationHistoryModel record : history) {
-                writer.write(String.format("%d,%d,%s,%s\n",
-                        record.getId(),
-                        record.getClientId(),
-                        record.getOperation(),
-                        record.getTimestamp()));
+            for (OperationSummaryModel row : summary) {
+                writer.write(String.format("%s,%s,%d,%d,%s,%s\n",
+                        row.getType(),
+                        row.getResult(),
+                        row.getCount(),
+                        row.getTotalBytes(),
+                        row.getAverageDurationMs() != null ? String.format("%.1f", row.getAverageDurationMs()) : "",
+                        row.getLastTimestamp()));
             }
 
             LOGGER.info("Successfully exported report to: " + filePath);
@@ -31,4 +33,4 @@ public class ReportExportUtil {
             throw new IllegalStateException("Failed to export report to CSV", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,84 @@
+package ftp.gusamyky.server.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Merges concurrent loads of the same key: the first caller runs the loader,
+ * callers arriving while it runs wait for and share its result instead of
+ * running the loader again. Nothing is kept once the load completes; caching
+ * the result is up to the loader.
+ * <p>
+ * Waiting callers block on a future, which parks virtual threads instead of
+ * pinning their carrier.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * Returns the result of the load of the key in progress, or runs the loader
+     * if there is none.
+     *
+     * @throws RuntimeException What the loader threw, also to callers sharing
+     *                          its load
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            sharedCount.incrementAndGet();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        loadCount.incrementAndGet();
+        try {
+            V value = loader.get();
+            own.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * Makes callers arriving from now on start a new load of the key instead of
+     * sharing one that may have read the data before it changed.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * @return The number of loads run
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * @return The number of callers that shared another caller's load
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight{" +
+                "inFlight=" + inFlight.size() +
+                ", loads=" + loadCount.get() +
+                ", shared=" + sharedCount.get() +
+                '}';
+    }
+}
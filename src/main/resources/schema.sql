@@ -16,11 +16,38 @@ CREATE TABLE IF NOT EXISTS Klienci (
 );
 
 -- Operation history table
+-- Tables created with the old free-text operation column are converted by
+-- DatabaseInitializer on startup.
 CREATE TABLE IF NOT EXISTS HistoriaOperacji (
     id INT PRIMARY KEY AUTO_INCREMENT,
     client_id INT,
-    operation VARCHAR(255) NOT NULL,
-    timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
+    op_type VARCHAR(16) NOT NULL,
+    result_code VARCHAR(32) NOT NULL,
+    filename VARCHAR(255),
+    bytes BIGINT,
+    duration_ms BIGINT,
+    client_ip VARCHAR(45),
+    timestamp DATETIME(3) DEFAULT CURRENT_TIMESTAMP(3),
+    FOREIGN KEY (client_id) REFERENCES Klienci(id),
+    INDEX idx_history_client_time (client_id, timestamp, id),
+    INDEX idx_history_client_type_time (client_id, op_type, timestamp, id),
+    INDEX idx_history_time (timestamp, id)
+);
+
+-- Daily operation totals per client, operation type and result.
+-- History older than db.history_retention_days is folded into this table and
+-- deleted from HistoriaOperacji.
+CREATE TABLE IF NOT EXISTS HistoriaDzienna (
+    client_id INT NOT NULL,
+    op_day DATE NOT NULL,
+    op_type VARCHAR(16) NOT NULL,
+    result_code VARCHAR(32) NOT NULL,
+    operations BIGINT NOT NULL,
+    total_bytes BIGINT NOT NULL,
+    total_duration_ms BIGINT NOT NULL,
+    timed_operations BIGINT NOT NULL,
+    last_timestamp DATETIME(3) NOT NULL,
+    PRIMARY KEY (client_id, op_day, op_type, result_code),
     FOREIGN KEY (client_id) REFERENCES Klienci(id)
 );
 